@@ -22,37 +22,51 @@ public class ClientCommandRunner implements CommandLineRunner {
         switch (command) {
             case "upload" -> handleUpload(args, false);
             case "resume-upload" -> handleUpload(args, true);
-            case "download" -> handleDownload(args);
+            case "download" -> handleDownload(args, false);
+            case "resume-download" -> handleDownload(args, true);
             default -> printUsage();
         }
     }
 
     private void handleUpload(String[] args, boolean resume) throws Exception {
-        if (args.length != 3) {
+        int parallelism = parseParallelism(args);
+        if (parallelism < 1) {
             printUsage();
             return;
         }
         String remotePath = args[1];
         String localPath = args[2];
-        storageClient.upload(remotePath, localPath, resume);
+        storageClient.upload(remotePath, localPath, resume, parallelism);
     }
 
-    private void handleDownload(String[] args) throws Exception {
-        if (args.length != 3) {
+    private void handleDownload(String[] args, boolean resume) throws Exception {
+        int parallelism = parseParallelism(args);
+        if (parallelism < 1) {
             printUsage();
             return;
         }
         String remotePath = args[1];
         String localPath = args[2];
-        storageClient.download(remotePath, localPath);
+        storageClient.download(remotePath, localPath, parallelism, resume);
+    }
+
+    private int parseParallelism(String[] args) {
+        if (args.length == 3) {
+            return 1;
+        }
+        if (args.length == 5 && "--parallel".equals(args[3])) {
+            return Integer.parseInt(args[4]);
+        }
+        return -1;
     }
 
     private void printUsage() {
         System.out.println("""
                 Usage:
-                  upload <remotePath> <localPath>
-                  resume-upload <remotePath> <localPath>
-                  download <remotePath> <localPath>
+                  upload <remotePath> <localPath> [--parallel N]
+                  resume-upload <remotePath> <localPath> [--parallel N]
+                  download <remotePath> <localPath> [--parallel N]
+                  resume-download <remotePath> <localPath> [--parallel N]
                 """);
     }
 
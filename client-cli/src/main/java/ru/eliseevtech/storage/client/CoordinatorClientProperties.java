@@ -9,5 +9,6 @@ public class CoordinatorClientProperties {
 
     private String host;
     private int port;
+    private long hedgeDelayMs;
 
 }
\ No newline at end of file
@@ -0,0 +1,135 @@
+package ru.eliseevtech.storage.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+class DownloadProgress implements Closeable {
+
+    private static final int MAGIC = 0x444C5052;
+    private static final int RANGE_BYTES = 3 * Long.BYTES;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final List<Range> ranges;
+    private final long rangesOffset;
+
+    private DownloadProgress(Path path, FileChannel channel, List<Range> ranges, long rangesOffset) {
+        this.path = path;
+        this.channel = channel;
+        this.ranges = ranges;
+        this.rangesOffset = rangesOffset;
+    }
+
+    static DownloadProgress create(Path path, String uploadId, long fileSize,
+                                   int chunkSize, int parallelism) throws IOException {
+        List<Range> ranges = new ArrayList<>();
+        long totalChunks = (fileSize + chunkSize - 1) / chunkSize;
+        long chunksPerRange = Math.max(1, (totalChunks + parallelism - 1) / parallelism);
+        for (long firstChunk = 0; firstChunk < totalChunks; firstChunk += chunksPerRange) {
+            long start = firstChunk * chunkSize;
+            long end = Math.min(fileSize, (firstChunk + chunksPerRange) * chunkSize);
+            ranges.add(new Range(start, end, 0));
+        }
+
+        byte[] id = uploadId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 3 + id.length + Long.BYTES + ranges.size() * RANGE_BYTES);
+        buffer.putInt(MAGIC).putInt(id.length).put(id).putLong(fileSize).putInt(ranges.size());
+        long rangesOffset = buffer.position();
+        for (Range range : ranges) {
+            buffer.putLong(range.start).putLong(range.end).putLong(0L);
+        }
+        buffer.flip();
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        return new DownloadProgress(path, channel, ranges, rangesOffset);
+    }
+
+    static Optional<DownloadProgress> open(Path path, String uploadId, long fileSize) throws IOException {
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        try {
+            if (buffer.getInt() != MAGIC) {
+                return Optional.empty();
+            }
+            byte[] id = new byte[buffer.getInt()];
+            buffer.get(id);
+            if (!uploadId.equals(new String(id, StandardCharsets.UTF_8)) || buffer.getLong() != fileSize) {
+                return Optional.empty();
+            }
+            int count = buffer.getInt();
+            long rangesOffset = buffer.position();
+            List<Range> ranges = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ranges.add(new Range(buffer.getLong(), buffer.getLong(), buffer.getLong()));
+            }
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            return Optional.of(new DownloadProgress(path, channel, ranges, rangesOffset));
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    List<Range> ranges() {
+        return ranges;
+    }
+
+    long completedBytes() {
+        long total = 0;
+        for (Range range : ranges) {
+            total += range.written;
+        }
+        return total;
+    }
+
+    void record(int rangeIndex, long written) throws IOException {
+        Range range = ranges.get(rangeIndex);
+        range.written = written;
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(0, written);
+        channel.write(buffer, rangesOffset + (long) rangeIndex * RANGE_BYTES + 2 * Long.BYTES);
+    }
+
+    void complete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    static final class Range {
+
+        final long start;
+        final long end;
+        volatile long written;
+
+        Range(long start, long end, long written) {
+            this.start = start;
+            this.end = end;
+            this.written = written;
+        }
+
+        long remaining() {
+            return end - start - written;
+        }
+
+    }
+
+}
@@ -9,7 +9,7 @@ public class ProgressBar {
         this.totalBytes = totalBytes;
     }
 
-    public void update(long currentBytes) {
+    public synchronized void update(long currentBytes) {
         if (totalBytes <= 0) {
             return;
         }
@@ -0,0 +1,182 @@
+package ru.eliseevtech.storage.client;
+
+import java.util.Arrays;
+
+final class ReedSolomon {
+
+    private static final int POLYNOMIAL = 0x11D;
+
+    private static final byte[] EXP = new byte[510];
+    private static final int[] LOG = new int[256];
+    private static final byte[][] MUL = new byte[256][256];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = (byte) x;
+            EXP[i + 255] = (byte) x;
+            LOG[x] = i;
+            x <<= 1;
+            if (x >= 256) {
+                x ^= POLYNOMIAL;
+            }
+        }
+        for (int a = 1; a < 256; a++) {
+            for (int b = 1; b < 256; b++) {
+                MUL[a][b] = EXP[LOG[a] + LOG[b]];
+            }
+        }
+    }
+
+    private final int dataShards;
+    private final int parityShards;
+    private final byte[][] matrix;
+    private final byte[][][] parityTables;
+
+    private int[] decodeSources;
+    private byte[][][] decodeTables;
+
+    ReedSolomon(int dataShards, int parityShards) {
+        if (dataShards < 1 || parityShards < 1 || dataShards + parityShards > 256) {
+            throw new IllegalArgumentException("Unsupported stripe " + dataShards + "+" + parityShards);
+        }
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+        this.matrix = new byte[dataShards + parityShards][dataShards];
+        for (int i = 0; i < dataShards; i++) {
+            matrix[i][i] = 1;
+        }
+        for (int p = 0; p < parityShards; p++) {
+            for (int d = 0; d < dataShards; d++) {
+                matrix[dataShards + p][d] = inverse((dataShards + p) ^ d);
+            }
+        }
+        this.parityTables = new byte[parityShards][dataShards][];
+        for (int p = 0; p < parityShards; p++) {
+            for (int d = 0; d < dataShards; d++) {
+                parityTables[p][d] = MUL[matrix[dataShards + p][d] & 0xFF];
+            }
+        }
+    }
+
+    int dataShards() {
+        return dataShards;
+    }
+
+    int totalShards() {
+        return dataShards + parityShards;
+    }
+
+    void encode(byte[][] shards, int length) {
+        for (int p = 0; p < parityShards; p++) {
+            combine(parityTables[p], shards, null, shards[dataShards + p], length);
+        }
+    }
+
+    void reconstruct(byte[][] shards, int[] sources, int length) {
+        if (sources.length != dataShards) {
+            throw new IllegalArgumentException("Reconstruction needs exactly " + dataShards + " shards");
+        }
+        if (!Arrays.equals(sources, decodeSources)) {
+            decodeTables = decodeTables(sources);
+            decodeSources = sources.clone();
+        }
+        for (int d = 0; d < dataShards; d++) {
+            if (decodeTables[d] != null) {
+                combine(decodeTables[d], shards, sources, shards[d], length);
+            }
+        }
+    }
+
+    private static void combine(byte[][] tables, byte[][] shards, int[] sources, byte[] output, int length) {
+        byte[] table = tables[0];
+        byte[] input = shards[sources == null ? 0 : sources[0]];
+        for (int i = 0; i < length; i++) {
+            output[i] = table[input[i] & 0xFF];
+        }
+        for (int j = 1; j < tables.length; j++) {
+            table = tables[j];
+            input = shards[sources == null ? j : sources[j]];
+            for (int i = 0; i < length; i++) {
+                output[i] ^= table[input[i] & 0xFF];
+            }
+        }
+    }
+
+    private byte[][][] decodeTables(int[] sources) {
+        byte[][] sub = new byte[dataShards][];
+        for (int j = 0; j < dataShards; j++) {
+            if (sources[j] < 0 || sources[j] >= totalShards()) {
+                throw new IllegalArgumentException("Unknown shard " + sources[j]);
+            }
+            sub[j] = matrix[sources[j]].clone();
+        }
+        byte[][] inverted = invert(sub);
+        byte[][][] tables = new byte[dataShards][][];
+        for (int d = 0; d < dataShards; d++) {
+            if (indexOf(sources, d) >= 0) {
+                continue;
+            }
+            tables[d] = new byte[dataShards][];
+            for (int j = 0; j < dataShards; j++) {
+                tables[d][j] = MUL[inverted[d][j] & 0xFF];
+            }
+        }
+        return tables;
+    }
+
+    private static byte[][] invert(byte[][] matrix) {
+        int n = matrix.length;
+        byte[][] result = new byte[n][n];
+        for (int i = 0; i < n; i++) {
+            result[i][i] = 1;
+        }
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            while (pivot < n && matrix[pivot][col] == 0) {
+                pivot++;
+            }
+            if (pivot == n) {
+                throw new IllegalArgumentException("Shards are linearly dependent");
+            }
+            swap(matrix, col, pivot);
+            swap(result, col, pivot);
+            byte[] scale = MUL[inverse(matrix[col][col] & 0xFF) & 0xFF];
+            for (int j = 0; j < n; j++) {
+                matrix[col][j] = scale[matrix[col][j] & 0xFF];
+                result[col][j] = scale[result[col][j] & 0xFF];
+            }
+            for (int row = 0; row < n; row++) {
+                int factor = matrix[row][col] & 0xFF;
+                if (row == col || factor == 0) {
+                    continue;
+                }
+                for (int j = 0; j < n; j++) {
+                    matrix[row][j] ^= MUL[factor][matrix[col][j] & 0xFF];
+                    result[row][j] ^= MUL[factor][result[col][j] & 0xFF];
+                }
+            }
+        }
+        return result;
+    }
+
+    private static byte inverse(int value) {
+        return EXP[255 - LOG[value]];
+    }
+
+    private static void swap(byte[][] rows, int i, int j) {
+        byte[] row = rows[i];
+        rows[i] = rows[j];
+        rows[j] = row;
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
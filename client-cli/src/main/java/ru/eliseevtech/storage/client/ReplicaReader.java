@@ -0,0 +1,166 @@
+package ru.eliseevtech.storage.client;
+
+import io.grpc.Context;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import lombok.extern.slf4j.Slf4j;
+import ru.eliseevtech.storage.datanode.proto.DataNodeServiceGrpc;
+import ru.eliseevtech.storage.datanode.proto.DownloadChunk;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@Slf4j
+class ReplicaReader implements AutoCloseable {
+
+    private final List<String> addresses;
+    private final Map<String, ManagedChannel> channels = new LinkedHashMap<>();
+    private final Map<String, DataNodeServiceGrpc.DataNodeServiceBlockingStub> stubs = new LinkedHashMap<>();
+    private final long hedgeDelayMs;
+    private final ExecutorService hedgeExecutor;
+
+    ReplicaReader(List<String> addresses, long hedgeDelayMs) {
+        this.addresses = List.copyOf(addresses);
+        this.hedgeDelayMs = hedgeDelayMs;
+        for (String address : this.addresses) {
+            String[] parts = address.split(":");
+            ManagedChannel channel = ManagedChannelBuilder
+                    .forAddress(parts[0], Integer.parseInt(parts[1]))
+                    .usePlaintext()
+                    .build();
+            channels.put(address, channel);
+            stubs.put(address, DataNodeServiceGrpc.newBlockingStub(channel));
+        }
+        this.hedgeExecutor = hedgeDelayMs > 0 && this.addresses.size() > 1 ? Executors.newCachedThreadPool() : null;
+    }
+
+    void read(long from, long end, ChunkRequest request, ChunkSink sink) {
+        Deque<String> candidates = new ArrayDeque<>(addresses);
+        long position = from;
+        while (true) {
+            RangeCall call = open(candidates, position, end, request);
+            RuntimeException failure;
+            try {
+                boolean more = call.awaitFirst();
+                while (more) {
+                    DownloadChunk chunk = call.chunks.next();
+                    sink.accept(chunk, position);
+                    position += chunk.getData().size();
+                    more = call.chunks.hasNext();
+                }
+                if (position >= end) {
+                    return;
+                }
+                failure = new IllegalStateException("Replica " + call.address + " ended stream at offset "
+                        + position + " of " + end);
+            } catch (IOException e) {
+                call.cancel();
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                call.cancel();
+                failure = e;
+            }
+            if (candidates.isEmpty()) {
+                throw failure;
+            }
+            log.warn("Download from {} failed at offset {}, failing over to {}", call.address, position,
+                    candidates.peek(), failure);
+        }
+    }
+
+    private RangeCall open(Deque<String> candidates, long position, long end, ChunkRequest request) {
+        if (hedgeExecutor == null || candidates.size() < 2) {
+            return start(candidates.poll(), position, end, request, false);
+        }
+        RangeCall primary = start(candidates.poll(), position, end, request, true);
+        try {
+            primary.first.get(hedgeDelayMs, TimeUnit.MILLISECONDS);
+            return primary;
+        } catch (ExecutionException e) {
+            return primary;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            primary.cancel();
+            throw new IllegalStateException("Download interrupted", e);
+        } catch (TimeoutException e) {
+            log.debug("Replica {} did not respond within {} ms, hedging to {}", primary.address, hedgeDelayMs,
+                    candidates.peek());
+        }
+        RangeCall hedge = start(candidates.poll(), position, end, request, true);
+        CompletableFuture.anyOf(primary.first, hedge.first).handle((result, error) -> null).join();
+        RangeCall done = primary.first.isDone() ? primary : hedge;
+        RangeCall other = done == primary ? hedge : primary;
+        if (done.first.isCompletedExceptionally()) {
+            return other;
+        }
+        other.cancel();
+        candidates.addLast(other.address);
+        return done;
+    }
+
+    private RangeCall start(String address, long position, long end, ChunkRequest request, boolean async) {
+        Context.CancellableContext context = Context.current().withCancellation();
+        Context previous = context.attach();
+        Iterator<DownloadChunk> chunks;
+        try {
+            chunks = request.open(stubs.get(address), position, end);
+        } finally {
+            context.detach(previous);
+        }
+        CompletableFuture<Boolean> first = async ? CompletableFuture.supplyAsync(chunks::hasNext, hedgeExecutor) : null;
+        return new RangeCall(address, context, chunks, first);
+    }
+
+    @Override
+    public void close() {
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+        }
+        channels.values().forEach(ManagedChannel::shutdown);
+    }
+
+    interface ChunkRequest {
+        Iterator<DownloadChunk> open(DataNodeServiceGrpc.DataNodeServiceBlockingStub stub, long offset, long end);
+    }
+
+    interface ChunkSink {
+        void accept(DownloadChunk chunk, long position) throws IOException;
+    }
+
+    private record RangeCall(String address, Context.CancellableContext context, Iterator<DownloadChunk> chunks,
+                             CompletableFuture<Boolean> first) {
+
+        boolean awaitFirst() {
+            if (first == null) {
+                return chunks.hasNext();
+            }
+            try {
+                return first.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        void cancel() {
+            context.cancel(null);
+        }
+
+    }
+
+}
@@ -3,7 +3,6 @@ package ru.eliseevtech.storage.client;
 import com.google.protobuf.ByteString;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
-import io.grpc.stub.StreamObserver;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
@@ -14,7 +13,10 @@ import ru.eliseevtech.storage.coordinator.proto.InitiateDownloadRequest;
 import ru.eliseevtech.storage.coordinator.proto.InitiateDownloadResponse;
 import ru.eliseevtech.storage.coordinator.proto.InitiateUploadRequest;
 import ru.eliseevtech.storage.coordinator.proto.InitiateUploadResponse;
+import ru.eliseevtech.storage.coordinator.proto.StripeLayout;
 import ru.eliseevtech.storage.datanode.proto.DataNodeServiceGrpc;
+import ru.eliseevtech.storage.datanode.proto.DownloadChunk;
+import ru.eliseevtech.storage.datanode.proto.DownloadRangeRequest;
 import ru.eliseevtech.storage.datanode.proto.DownloadRequest;
 import ru.eliseevtech.storage.datanode.proto.UploadChunk;
 import ru.eliseevtech.storage.datanode.proto.UploadResponse;
@@ -25,15 +27,31 @@ import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class StorageClient {
 
+    private static final int IN_FLIGHT_CHUNKS = 4;
+
     private final CoordinatorClientProperties properties;
 
     public void upload(String remotePath, String localPath, boolean resume) throws IOException {
+        upload(remotePath, localPath, resume, 1);
+    }
+
+    public void upload(String remotePath, String localPath, boolean resume, int parallelism) throws IOException {
         long fileSize = Files.size(Path.of(localPath));
 
         ManagedChannel coordChannel = ManagedChannelBuilder
@@ -55,75 +73,205 @@ public class StorageClient {
         String host = addrParts[0];
         int port = Integer.parseInt(addrParts[1]);
         int chunkSize = init.getChunkSize();
+        List<String> pipeline = init.getPipelineAddressesList();
 
-        long bytesAlreadyUploaded = init.getBytesUploaded();
-        int lastChunkIndex = init.getLastChunkIndex();
+        BitSet storedChunks = BitSet.valueOf(init.getChunkBitmap().asReadOnlyByteBuffer());
+        if (init.getResumed()) {
+            log.info("Resuming upload {}: {} chunks already stored on datanode", uploadId, storedChunks.cardinality());
+        }
 
-        long remaining = fileSize - bytesAlreadyUploaded;
-        long position = bytesAlreadyUploaded;
-        int nextChunkIndex = lastChunkIndex + 1;
+        if (init.hasStripe()) {
+            try {
+                uploadStriped(init.getStripe(), uploadId, Path.of(localPath), fileSize, storedChunks);
+                finalizeUpload(coordStub, uploadId, remotePath);
+            } finally {
+                coordChannel.shutdown();
+            }
+            return;
+        }
 
         ManagedChannel dataNodeChannel = ManagedChannelBuilder
                 .forAddress(host, port)
                 .usePlaintext()
+                .intercept(UploadStreamWriter.onReadyThreshold(chunkSize * IN_FLIGHT_CHUNKS))
                 .build();
         DataNodeServiceGrpc.DataNodeServiceStub dataNodeStub =
                 DataNodeServiceGrpc.newStub(dataNodeChannel);
 
         ProgressBar progressBar = new ProgressBar(fileSize);
+        long totalChunks = (fileSize + chunkSize - 1) / chunkSize;
+        long chunksPerRange = parallelism > 1 ? Math.max(1, (totalChunks + parallelism - 1) / parallelism) : totalChunks;
+        AtomicLong sentBytes = new AtomicLong(storedBytes(storedChunks, fileSize, chunkSize));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        try (FileChannel fileChannel = FileChannel.open(Path.of(localPath), StandardOpenOption.READ)) {
+            List<CompletableFuture<Void>> ranges = new ArrayList<>();
+            for (long firstChunk = 0; firstChunk < totalChunks; firstChunk += chunksPerRange) {
+                int first = (int) firstChunk;
+                int last = (int) Math.min(totalChunks, firstChunk + chunksPerRange);
+                if (storedChunks.nextClearBit(first) >= last) {
+                    continue;
+                }
+                ranges.add(CompletableFuture.runAsync(() -> uploadRange(dataNodeStub, uploadId, pipeline, fileChannel,
+                        fileSize, chunkSize, first, last, storedChunks, sentBytes, progressBar), executor));
+            }
+            CompletableFuture.allOf(ranges.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Upload " + uploadId + " failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            dataNodeChannel.shutdown();
+        }
 
-        StreamObserver<UploadChunk> requestObserver = dataNodeStub.uploadFileStream(
-                new StreamObserver<>() {
-                    @Override
-                    public void onNext(UploadResponse value) {
-                        log.info("Upload completed: chunks={}, bytes={}",
-                                value.getUploadedChunks(), value.getUploadedBytes());
-                    }
-
-                    @Override
-                    public void onError(Throwable t) {
-                        log.error("Upload error", t);
-                    }
+        finalizeUpload(coordStub, uploadId, remotePath);
+        coordChannel.shutdown();
+    }
 
-                    @Override
-                    public void onCompleted() {
-                        log.info("Upload stream completed");
-                    }
-                });
+    private void uploadRange(DataNodeServiceGrpc.DataNodeServiceStub dataNodeStub, String uploadId,
+                             List<String> pipeline, FileChannel fileChannel, long fileSize, int chunkSize, int firstChunk, int lastChunk,
+                             BitSet storedChunks, AtomicLong sentBytes, ProgressBar progressBar) {
+        UploadStreamWriter writer = new UploadStreamWriter();
+        dataNodeStub.uploadFileStream(writer);
 
-        try (FileChannel fileChannel = FileChannel.open(Path.of(localPath), StandardOpenOption.READ)) {
-            fileChannel.position(position);
+        long rangeBytes = 0;
+        try {
             ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
-
-            while (remaining > 0) {
+            CRC32C crc = new CRC32C();
+            for (int chunkIndex = storedChunks.nextClearBit(firstChunk); chunkIndex < lastChunk;
+                 chunkIndex = storedChunks.nextClearBit(chunkIndex + 1)) {
+                long position = (long) chunkIndex * chunkSize;
                 buffer.clear();
-                int toRead = (int) Math.min(chunkSize, remaining);
-                buffer.limit(toRead);
-                int read = fileChannel.read(buffer);
-                if (read <= 0) {
-                    break;
+                buffer.limit((int) Math.min(chunkSize, fileSize - position));
+                while (buffer.hasRemaining()) {
+                    if (fileChannel.read(buffer, position + buffer.position()) < 0) {
+                        throw new IOException("Unexpected end of file at " + (position + buffer.position()));
+                    }
                 }
                 buffer.flip();
-                byte[] data = new byte[read];
-                buffer.get(data);
-
-                UploadChunk chunk = UploadChunk.newBuilder()
+                int length = buffer.remaining();
+                crc.reset();
+                crc.update(buffer.duplicate());
+                UploadChunk.Builder chunk = UploadChunk.newBuilder()
                         .setUploadId(uploadId)
-                        .setChunkIndex(nextChunkIndex)
-                        .setData(ByteString.copyFrom(data))
-                        .build();
-                requestObserver.onNext(chunk);
-
-                remaining -= read;
-                position += read;
-                nextChunkIndex++;
-                progressBar.update(position);
+                        .setChunkIndex(chunkIndex)
+                        .setChunkSize(chunkSize)
+                        .setOffset(position)
+                        .setData(ByteString.copyFrom(buffer))
+                        .setCrc32C((int) crc.getValue());
+                if (rangeBytes == 0) {
+                    chunk.addAllPipeline(pipeline);
+                }
+                writer.send(chunk.build());
+                rangeBytes += length;
+                progressBar.update(sentBytes.addAndGet(length));
             }
+        } catch (IOException | RuntimeException e) {
+            writer.fail(e);
+            throw new IllegalStateException("Failed to upload chunks [" + firstChunk + ", " + lastChunk + ")", e);
+        }
+        writer.complete();
+
+        UploadResponse response = writer.awaitResponse();
+        if (!response.getSuccess() || response.getUploadedBytes() != rangeBytes) {
+            throw new IllegalStateException("Chunks [" + firstChunk + ", " + lastChunk
+                    + ") incomplete: datanode acknowledged " + response.getUploadedBytes() + " of "
+                    + rangeBytes + " bytes" + (response.getErrorMessage().isEmpty() ? "" : ": "
+                    + response.getErrorMessage()));
         }
+        log.debug("Uploaded chunks [{}, {}): {} chunks, {} bytes", firstChunk, lastChunk,
+                response.getUploadedChunks(), rangeBytes);
+    }
 
-        requestObserver.onCompleted();
-        dataNodeChannel.shutdown();
+    private void uploadStriped(StripeLayout stripe, String uploadId, Path localPath, long fileSize,
+                               BitSet storedStripes) throws IOException {
+        ReedSolomon codec = new ReedSolomon(stripe.getDataShards(), stripe.getParityShards());
+        int cellSize = stripe.getCellSize();
+        long stripeSize = (long) codec.dataShards() * cellSize;
+        int stripes = (int) ((fileSize + stripeSize - 1) / stripeSize);
+        log.info("Striping {} into {}+{} shards", uploadId, stripe.getDataShards(), stripe.getParityShards());
+
+        List<ManagedChannel> channels = new ArrayList<>(codec.totalShards());
+        UploadStreamWriter[] writers = new UploadStreamWriter[codec.totalShards()];
+        for (int shard = 0; shard < writers.length; shard++) {
+            String[] parts = stripe.getShardAddresses(shard).split(":");
+            ManagedChannel channel = ManagedChannelBuilder
+                    .forAddress(parts[0], Integer.parseInt(parts[1]))
+                    .usePlaintext()
+                    .intercept(UploadStreamWriter.onReadyThreshold(cellSize * IN_FLIGHT_CHUNKS))
+                    .build();
+            channels.add(channel);
+            writers[shard] = new UploadStreamWriter();
+            DataNodeServiceGrpc.newStub(channel).uploadFileStream(writers[shard]);
+        }
+
+        ProgressBar progressBar = new ProgressBar(fileSize);
+        byte[][] cells = new byte[codec.totalShards()][cellSize];
+        CRC32C crc = new CRC32C();
+        long shardBytes = 0;
+        try (FileChannel fileChannel = FileChannel.open(localPath, StandardOpenOption.READ)) {
+            for (int index = storedStripes.nextClearBit(0); index < stripes; index = storedStripes.nextClearBit(index + 1)) {
+                long position = index * stripeSize;
+                for (int d = 0; d < codec.dataShards(); d++) {
+                    long cellPosition = position + (long) d * cellSize;
+                    ByteBuffer buffer = ByteBuffer.wrap(cells[d], 0,
+                            (int) Math.max(0, Math.min(cellSize, fileSize - cellPosition)));
+                    while (buffer.hasRemaining()) {
+                        if (fileChannel.read(buffer, cellPosition + buffer.position()) < 0) {
+                            throw new IOException("Unexpected end of file at " + (cellPosition + buffer.position()));
+                        }
+                    }
+                    Arrays.fill(cells[d], buffer.position(), cellSize, (byte) 0);
+                }
+                codec.encode(cells, cellSize);
+                for (int shard = 0; shard < writers.length; shard++) {
+                    crc.reset();
+                    crc.update(cells[shard]);
+                    writers[shard].send(UploadChunk.newBuilder()
+                            .setUploadId(stripe.getShardUploadIds(shard))
+                            .setChunkIndex(index)
+                            .setChunkSize(cellSize)
+                            .setOffset((long) index * cellSize)
+                            .setData(ByteString.copyFrom(cells[shard]))
+                            .setCrc32C((int) crc.getValue())
+                            .build());
+                }
+                shardBytes += cellSize;
+                progressBar.update(Math.min(fileSize, position + stripeSize));
+            }
+        } catch (IOException | RuntimeException e) {
+            for (UploadStreamWriter writer : writers) {
+                writer.fail(e);
+            }
+            channels.forEach(ManagedChannel::shutdown);
+            throw new IllegalStateException("Striped upload " + uploadId + " failed", e);
+        }
 
+        try {
+            for (UploadStreamWriter writer : writers) {
+                writer.complete();
+            }
+            for (int shard = 0; shard < writers.length; shard++) {
+                UploadResponse response = writers[shard].awaitResponse();
+                if (!response.getSuccess() || response.getUploadedBytes() != shardBytes) {
+                    throw new IllegalStateException("Shard " + shard + " on " + stripe.getShardAddresses(shard)
+                            + " acknowledged " + response.getUploadedBytes() + " of " + shardBytes + " bytes"
+                            + (response.getErrorMessage().isEmpty() ? "" : ": " + response.getErrorMessage()));
+                }
+            }
+        } finally {
+            channels.forEach(ManagedChannel::shutdown);
+        }
+    }
+
+    private static long storedBytes(BitSet storedChunks, long fileSize, int chunkSize) {
+        long total = 0;
+        for (int i = storedChunks.nextSetBit(0); i >= 0; i = storedChunks.nextSetBit(i + 1)) {
+            total += Math.max(0, Math.min(chunkSize, fileSize - (long) i * chunkSize));
+        }
+        return total;
+    }
+
+    private void finalizeUpload(CoordinatorServiceGrpc.CoordinatorServiceBlockingStub coordStub,
+                                String uploadId, String remotePath) {
         FinalizeUploadResponse finalize = coordStub.finalizeUpload(
                 FinalizeUploadRequest.newBuilder()
                         .setUploadId(uploadId)
@@ -134,11 +282,13 @@ public class StorageClient {
         } else {
             log.info("Finalize succeeded");
         }
-
-        coordChannel.shutdown();
     }
 
     public void download(String remotePath, String localPath) throws IOException {
+        download(remotePath, localPath, 1, false);
+    }
+
+    public void download(String remotePath, String localPath, int parallelism, boolean resume) throws IOException {
         ManagedChannel coordChannel = ManagedChannelBuilder
                 .forAddress(properties.getHost(), properties.getPort())
                 .usePlaintext()
@@ -152,43 +302,182 @@ public class StorageClient {
                         .build());
 
         String uploadId = init.getUploadId();
-        String[] addrParts = init.getDataNodeAddress().split(":");
-        String host = addrParts[0];
-        int port = Integer.parseInt(addrParts[1]);
         long fileSize = init.getFileSize();
+        Path target = Path.of(localPath);
+        if (init.hasStripe()) {
+            try (StripedReader reader = new StripedReader(init.getStripe(), fileSize);
+                 FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                reader.read(channel, new ProgressBar(fileSize));
+            } finally {
+                coordChannel.shutdown();
+            }
+            return;
+        }
+        List<String> replicas = init.getReplicaAddressesCount() > 0
+                ? init.getReplicaAddressesList()
+                : List.of(init.getDataNodeAddress());
 
-        ManagedChannel dataNodeChannel = ManagedChannelBuilder
-                .forAddress(host, port)
-                .usePlaintext()
-                .build();
-        DataNodeServiceGrpc.DataNodeServiceBlockingStub dataNodeStub =
-                DataNodeServiceGrpc.newBlockingStub(dataNodeChannel);
+        ReplicaReader reader = new ReplicaReader(replicas, properties.getHedgeDelayMs());
 
         ProgressBar progressBar = new ProgressBar(fileSize);
 
-        Path target = Path.of(localPath);
+        if (parallelism > 1 || resume) {
+            try {
+                downloadRanges(reader, uploadId, target, fileSize, init.getChunkSize(),
+                        parallelism, resume, progressBar);
+                verifyComposite(init, target);
+            } finally {
+                reader.close();
+                coordChannel.shutdown();
+            }
+            return;
+        }
         Files.deleteIfExists(target);
         Files.createFile(target);
 
         try (FileChannel channel = FileChannel.open(target,
                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
-
-            dataNodeStub.downloadFileStream(DownloadRequest.newBuilder()
-                            .setUploadId(uploadId)
-                            .build())
-                    .forEachRemaining(chunk -> {
-                        try {
-                            byte[] data = chunk.getData().toByteArray();
-                            channel.write(ByteBuffer.wrap(data));
-                            progressBar.update(channel.position());
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
+            reader.read(0, fileSize, (stub, offset, end) -> offset == 0
+                            ? stub.downloadFileStream(DownloadRequest.newBuilder()
+                                    .setUploadId(uploadId)
+                                    .build())
+                            : stub.downloadRange(DownloadRangeRequest.newBuilder()
+                                    .setUploadId(uploadId)
+                                    .setOffset(offset)
+                                    .setLength(end - offset)
+                                    .build()),
+                    (chunk, position) -> {
+                        verifyChunk(chunk);
+                        for (ByteBuffer data : chunk.getData().asReadOnlyByteBufferList()) {
+                            while (data.hasRemaining()) {
+                                position += channel.write(data, position);
+                            }
                         }
+                        progressBar.update(position);
                     });
+        } finally {
+            reader.close();
+            coordChannel.shutdown();
         }
 
-        dataNodeChannel.shutdown();
-        coordChannel.shutdown();
+        verifyComposite(init, target);
+    }
+
+    static void verifyChunk(DownloadChunk chunk) {
+        if (!chunk.hasCrc32C()) {
+            return;
+        }
+        CRC32C crc = new CRC32C();
+        for (ByteBuffer data : chunk.getData().asReadOnlyByteBufferList()) {
+            crc.update(data);
+        }
+        if ((int) crc.getValue() != chunk.getCrc32C()) {
+            throw new IllegalStateException("Checksum mismatch in chunk at offset " + chunk.getOffset());
+        }
+    }
+
+    private static void verifyComposite(InitiateDownloadResponse init, Path target) throws IOException {
+        if (!init.hasCompositeCrc32C()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.READ)) {
+            if (compositeCrc32c(channel, init.getChunkSize()) != init.getCompositeCrc32C()) {
+                throw new IllegalStateException("Checksum mismatch for downloaded file " + target);
+            }
+        }
+    }
+
+    static int compositeCrc32c(FileChannel channel, int chunkSize) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(chunkSize);
+        ByteBuffer chunkCrc = ByteBuffer.allocate(Integer.BYTES);
+        CRC32C crc = new CRC32C();
+        CRC32C composite = new CRC32C();
+        long size = channel.size();
+        for (long position = 0; position < size; position += chunkSize) {
+            buffer.clear();
+            buffer.limit((int) Math.min(chunkSize, size - position));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file at " + (position + buffer.position()));
+                }
+            }
+            crc.reset();
+            crc.update(buffer.flip());
+            composite.update(chunkCrc.clear().putInt((int) crc.getValue()).flip());
+        }
+        return (int) composite.getValue();
+    }
+
+    private void downloadRanges(ReplicaReader reader, String uploadId,
+                                Path target, long fileSize, int chunkSize, int parallelism, boolean resume,
+                                ProgressBar progressBar) throws IOException {
+        Path progressPath = target.resolveSibling(target.getFileName() + ".progress");
+        DownloadProgress progress = null;
+        if (resume && Files.exists(target)) {
+            progress = DownloadProgress.open(progressPath, uploadId, fileSize).orElse(null);
+        }
+        if (progress == null) {
+            progress = DownloadProgress.create(progressPath, uploadId, fileSize, chunkSize, parallelism);
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (fileSize > 0) {
+                    channel.write(ByteBuffer.allocate(1), fileSize - 1);
+                }
+            }
+        } else {
+            log.info("Resuming download of {} from {} bytes", uploadId, progress.completedBytes());
+        }
+
+        AtomicLong receivedBytes = new AtomicLong(progress.completedBytes());
+        progressBar.update(receivedBytes.get());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            List<CompletableFuture<Void>> ranges = new ArrayList<>();
+            List<DownloadProgress.Range> rangeList = progress.ranges();
+            for (int i = 0; i < rangeList.size(); i++) {
+                int rangeIndex = i;
+                if (rangeList.get(i).remaining() > 0) {
+                    DownloadProgress current = progress;
+                    ranges.add(CompletableFuture.runAsync(() -> downloadRange(reader, uploadId, channel,
+                            current, rangeIndex, receivedBytes, progressBar), executor));
+                }
+            }
+            CompletableFuture.allOf(ranges.toArray(CompletableFuture[]::new)).join();
+            channel.force(false);
+        } catch (CompletionException e) {
+            progress.close();
+            throw new IllegalStateException("Download of " + uploadId + " interrupted, use resume-download to continue",
+                    e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        progress.complete();
+    }
+
+    private void downloadRange(ReplicaReader reader, String uploadId,
+                               FileChannel channel, DownloadProgress progress, int rangeIndex,
+                               AtomicLong receivedBytes, ProgressBar progressBar) {
+        DownloadProgress.Range range = progress.ranges().get(rangeIndex);
+        reader.read(range.start + range.written, range.end, (stub, offset, end) -> stub.downloadRange(
+                        DownloadRangeRequest.newBuilder()
+                                .setUploadId(uploadId)
+                                .setOffset(offset)
+                                .setLength(end - offset)
+                                .build()),
+                (chunk, position) -> {
+                    verifyChunk(chunk);
+                    ByteBuffer data = chunk.getData().asReadOnlyByteBuffer();
+                    while (data.hasRemaining()) {
+                        position += channel.write(data, position);
+                    }
+                    progress.record(rangeIndex, position - range.start);
+                    progressBar.update(receivedBytes.addAndGet(chunk.getData().size()));
+                });
+        if (range.remaining() != 0) {
+            throw new IllegalStateException("Range [" + range.start + ", " + range.end + ") ended after "
+                    + range.written + " bytes");
+        }
     }
 
 }
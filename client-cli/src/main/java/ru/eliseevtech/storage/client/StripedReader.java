@@ -0,0 +1,238 @@
+package ru.eliseevtech.storage.client;
+
+import io.grpc.Context;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import lombok.extern.slf4j.Slf4j;
+import ru.eliseevtech.storage.coordinator.proto.StripeLayout;
+import ru.eliseevtech.storage.datanode.proto.DataNodeServiceGrpc;
+import ru.eliseevtech.storage.datanode.proto.DownloadChunk;
+import ru.eliseevtech.storage.datanode.proto.DownloadRangeRequest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+@Slf4j
+class StripedReader implements AutoCloseable {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final int READ_AHEAD_STRIPES = 2;
+
+    private final StripeLayout layout;
+    private final ReedSolomon codec;
+    private final int cellSize;
+    private final long fileSize;
+    private final long stripes;
+    private final long shardSize;
+    private final Map<String, ManagedChannel> channels = new LinkedHashMap<>();
+    private final Map<String, DataNodeServiceGrpc.DataNodeServiceBlockingStub> stubs = new LinkedHashMap<>();
+    private final byte[][] scratch;
+    private final byte[][] cells;
+    private final List<ShardStream> active = new ArrayList<>();
+    private final Deque<Integer> spare = new ArrayDeque<>();
+    private final BlockingQueue<Cell> arrivals = new LinkedBlockingQueue<>();
+    private final List<Cell> early = new ArrayList<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    StripedReader(StripeLayout layout, long fileSize) {
+        this.layout = layout;
+        this.codec = new ReedSolomon(layout.getDataShards(), layout.getParityShards());
+        this.cellSize = layout.getCellSize();
+        this.fileSize = fileSize;
+        long stripeSize = (long) layout.getDataShards() * cellSize;
+        this.stripes = (fileSize + stripeSize - 1) / stripeSize;
+        this.shardSize = stripes * cellSize;
+        this.scratch = new byte[codec.dataShards()][cellSize];
+        this.cells = new byte[codec.totalShards()][];
+        for (String address : layout.getShardAddressesList()) {
+            stubs.computeIfAbsent(address, key -> DataNodeServiceGrpc.newBlockingStub(channel(key)));
+        }
+        for (int shard = codec.dataShards() + 1; shard < codec.totalShards(); shard++) {
+            spare.add(shard);
+        }
+    }
+
+    void read(FileChannel channel, ProgressBar progressBar) throws IOException {
+        int dataShards = codec.dataShards();
+        int[] sources = new int[dataShards];
+        for (int shard = 0; shard <= dataShards && shard < codec.totalShards(); shard++) {
+            start(shard, 0);
+        }
+        long position = 0;
+        for (long stripe = 0; stripe < stripes; stripe++) {
+            List<Cell> received = collect(stripe);
+            received.sort(Comparator.comparingInt(cell -> cell.stream().shard));
+            System.arraycopy(scratch, 0, cells, 0, dataShards);
+            for (int slot = 0; slot < dataShards; slot++) {
+                Cell cell = received.get(slot);
+                sources[slot] = cell.stream().shard;
+                cells[sources[slot]] = cell.data();
+            }
+            if (sources[dataShards - 1] >= dataShards) {
+                codec.reconstruct(cells, sources, cellSize);
+            }
+            for (int d = 0; d < dataShards && position < fileSize; d++) {
+                ByteBuffer data = ByteBuffer.wrap(cells[d], 0, (int) Math.min(cellSize, fileSize - position));
+                while (data.hasRemaining()) {
+                    position += channel.write(data, position);
+                }
+            }
+            received.forEach(Cell::recycle);
+            progressBar.update(position);
+        }
+    }
+
+    private List<Cell> collect(long stripe) {
+        List<Cell> received = new ArrayList<>(codec.dataShards());
+        for (Iterator<Cell> it = early.iterator(); it.hasNext(); ) {
+            Cell cell = it.next();
+            if (cell.stripe() == stripe) {
+                received.add(cell);
+                it.remove();
+            }
+        }
+        while (received.size() < codec.dataShards()) {
+            Cell cell;
+            try {
+                cell = arrivals.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Download interrupted", e);
+            }
+            if (cell.failure() != null) {
+                failOver(cell.stream(), stripe, cell.failure());
+            } else if (cell.stripe() == stripe) {
+                received.add(cell);
+            } else if (cell.stripe() > stripe) {
+                early.add(cell);
+            } else {
+                cell.recycle();
+            }
+        }
+        return received;
+    }
+
+    private void failOver(ShardStream failed, long stripe, RuntimeException failure) {
+        active.remove(failed);
+        Integer shard = spare.poll();
+        if (shard == null) {
+            if (active.size() < codec.dataShards()) {
+                throw new IllegalStateException("Fewer than " + codec.dataShards() + " of " + codec.totalShards()
+                        + " shards are readable", failure);
+            }
+            log.warn("Shard {} on {} failed at stripe {}, continuing with {} shards", failed.shard,
+                    layout.getShardAddresses(failed.shard), stripe, active.size(), failure);
+            return;
+        }
+        log.warn("Shard {} on {} failed at stripe {}, reconstructing from shard {} on {}", failed.shard,
+                layout.getShardAddresses(failed.shard), stripe, shard, layout.getShardAddresses(shard), failure);
+        start(shard, stripe);
+    }
+
+    private void start(int shard, long firstStripe) {
+        ShardStream stream = new ShardStream(shard, firstStripe);
+        active.add(stream);
+        executor.execute(() -> stream.context.run(stream::pump));
+    }
+
+    private ManagedChannel channel(String address) {
+        return channels.computeIfAbsent(address, key -> {
+            String[] parts = key.split(":");
+            return ManagedChannelBuilder.forAddress(parts[0], Integer.parseInt(parts[1]))
+                    .usePlaintext()
+                    .build();
+        });
+    }
+
+    @Override
+    public void close() {
+        active.forEach(ShardStream::cancel);
+        executor.shutdownNow();
+        channels.values().forEach(ManagedChannel::shutdown);
+    }
+
+    private record Cell(ShardStream stream, long stripe, byte[] data, RuntimeException failure) {
+
+        void recycle() {
+            stream.free.offer(data);
+        }
+
+    }
+
+    private final class ShardStream {
+
+        private final int shard;
+        private final long firstStripe;
+        private final Context.CancellableContext context = Context.current().withCancellation();
+        private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(READ_AHEAD_STRIPES);
+        private ByteBuffer pending = EMPTY;
+
+        private ShardStream(int shard, long firstStripe) {
+            this.shard = shard;
+            this.firstStripe = firstStripe;
+            for (int i = 0; i < READ_AHEAD_STRIPES; i++) {
+                free.add(new byte[cellSize]);
+            }
+        }
+
+        void pump() {
+            try {
+                long offset = firstStripe * cellSize;
+                Iterator<DownloadChunk> chunks = stubs.get(layout.getShardAddresses(shard))
+                        .downloadRange(DownloadRangeRequest.newBuilder()
+                                .setUploadId(layout.getShardUploadIds(shard))
+                                .setOffset(offset)
+                                .setLength(shardSize - offset)
+                                .build());
+                for (long stripe = firstStripe; stripe < stripes; stripe++) {
+                    byte[] cell = free.take();
+                    readCell(chunks, cell);
+                    arrivals.add(new Cell(this, stripe, cell, null));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                if (!context.isCancelled()) {
+                    arrivals.add(new Cell(this, -1, null, e));
+                }
+            }
+        }
+
+        private void readCell(Iterator<DownloadChunk> chunks, byte[] cell) {
+            int filled = 0;
+            while (filled < cellSize) {
+                if (!pending.hasRemaining()) {
+                    if (!chunks.hasNext()) {
+                        throw new IllegalStateException("Shard " + shard + " ended before " + shardSize + " bytes");
+                    }
+                    DownloadChunk chunk = chunks.next();
+                    StorageClient.verifyChunk(chunk);
+                    pending = chunk.getData().asReadOnlyByteBuffer();
+                }
+                int length = Math.min(pending.remaining(), cellSize - filled);
+                pending.get(cell, filled, length);
+                filled += length;
+            }
+        }
+
+        void cancel() {
+            context.cancel(null);
+        }
+
+    }
+
+}
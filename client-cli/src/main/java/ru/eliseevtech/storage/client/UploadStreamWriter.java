@@ -0,0 +1,106 @@
+package ru.eliseevtech.storage.client;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.MethodDescriptor;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import ru.eliseevtech.storage.datanode.proto.UploadChunk;
+import ru.eliseevtech.storage.datanode.proto.UploadResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+class UploadStreamWriter implements ClientResponseObserver<UploadChunk, UploadResponse> {
+
+    private static final long READY_POLL_MS = 1000;
+
+    private final CompletableFuture<UploadResponse> response = new CompletableFuture<>();
+    private final Object readyLock = new Object();
+    private ClientCallStreamObserver<UploadChunk> requestStream;
+
+    static ClientInterceptor onReadyThreshold(int bytes) {
+        return new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                                       CallOptions callOptions, Channel next) {
+                return next.newCall(method, callOptions.withOnReadyThreshold(bytes));
+            }
+        };
+    }
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<UploadChunk> requestStream) {
+        this.requestStream = requestStream;
+        requestStream.setOnReadyHandler(this::signal);
+    }
+
+    void send(UploadChunk chunk) {
+        synchronized (readyLock) {
+            while (!requestStream.isReady()) {
+                if (response.isDone()) {
+                    throw new IllegalStateException("Datanode closed upload stream early", failureOf(response));
+                }
+                try {
+                    readyLock.wait(READY_POLL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    requestStream.cancel("Upload interrupted", e);
+                    throw new IllegalStateException("Upload interrupted", e);
+                }
+            }
+        }
+        requestStream.onNext(chunk);
+    }
+
+    void complete() {
+        requestStream.onCompleted();
+    }
+
+    void fail(Throwable t) {
+        requestStream.onError(t);
+    }
+
+    UploadResponse awaitResponse() {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Upload stream failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void onNext(UploadResponse value) {
+        response.complete(value);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        response.completeExceptionally(t);
+        signal();
+    }
+
+    @Override
+    public void onCompleted() {
+        response.completeExceptionally(new IllegalStateException("Upload stream closed without response"));
+        signal();
+    }
+
+    private void signal() {
+        synchronized (readyLock) {
+            readyLock.notifyAll();
+        }
+    }
+
+    private static Throwable failureOf(CompletableFuture<UploadResponse> future) {
+        try {
+            future.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause();
+        }
+    }
+
+}
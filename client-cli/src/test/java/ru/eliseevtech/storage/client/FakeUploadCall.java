@@ -0,0 +1,98 @@
+package ru.eliseevtech.storage.client;
+
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import ru.eliseevtech.storage.datanode.proto.UploadChunk;
+import ru.eliseevtech.storage.datanode.proto.UploadResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+@SuppressWarnings("unchecked")
+class FakeUploadCall extends ClientCallStreamObserver<UploadChunk> {
+
+    private final StreamObserver<UploadResponse> responseObserver;
+    private final Consumer<UploadChunk> sink;
+    private final Function<List<UploadChunk>, UploadResponse> responder;
+    private final List<UploadChunk> received = new ArrayList<>();
+
+    private volatile boolean ready = true;
+    private volatile Runnable onReadyHandler;
+
+    FakeUploadCall(StreamObserver<UploadResponse> responseObserver, Consumer<UploadChunk> sink,
+                   Function<List<UploadChunk>, UploadResponse> responder) {
+        this.responseObserver = responseObserver;
+        this.sink = sink;
+        this.responder = responder;
+    }
+
+    static FakeUploadCall start(Object responseObserver, Consumer<UploadChunk> sink,
+                                Function<List<UploadChunk>, UploadResponse> responder) {
+        FakeUploadCall call = new FakeUploadCall((StreamObserver<UploadResponse>) responseObserver, sink, responder);
+        if (responseObserver instanceof ClientResponseObserver<?, ?> clientObserver) {
+            ((ClientResponseObserver<UploadChunk, UploadResponse>) clientObserver).beforeStart(call);
+        }
+        return call;
+    }
+
+    void setReady(boolean ready) {
+        this.ready = ready;
+        if (ready && onReadyHandler != null) {
+            onReadyHandler.run();
+        }
+    }
+
+    List<UploadChunk> received() {
+        return received;
+    }
+
+    StreamObserver<UploadResponse> responseObserver() {
+        return responseObserver;
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void setOnReadyHandler(Runnable onReadyHandler) {
+        this.onReadyHandler = onReadyHandler;
+    }
+
+    @Override
+    public void onNext(UploadChunk value) {
+        received.add(value);
+        sink.accept(value);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+    }
+
+    @Override
+    public void onCompleted() {
+        responseObserver.onNext(responder.apply(received));
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void cancel(String message, Throwable cause) {
+    }
+
+    @Override
+    public void request(int count) {
+    }
+
+    @Override
+    public void disableAutoInboundFlowControl() {
+    }
+
+    @Override
+    public void setMessageCompression(boolean enable) {
+    }
+
+}
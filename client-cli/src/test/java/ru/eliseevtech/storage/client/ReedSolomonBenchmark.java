@@ -0,0 +1,73 @@
+package ru.eliseevtech.storage.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReedSolomonBenchmark {
+
+    private static final int[] ONE_LOST = {1, 2, 3, 4, 5, 6};
+    private static final int[] THREE_LOST = {3, 4, 5, 6, 7, 8};
+
+    @Param({"65536", "1048576"})
+    int cellSize;
+
+    ReedSolomon codec;
+    byte[][] shards;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        codec = new ReedSolomon(6, 3);
+        shards = new byte[codec.totalShards()][cellSize];
+        for (int d = 0; d < codec.dataShards(); d++) {
+            ThreadLocalRandom.current().nextBytes(shards[d]);
+        }
+        codec.encode(shards, cellSize);
+    }
+
+    @Benchmark
+    public byte[][] encode() {
+        codec.encode(shards, cellSize);
+        return shards;
+    }
+
+    @Benchmark
+    public byte[][] reconstructOneLostShard() {
+        codec.reconstruct(shards, ONE_LOST, cellSize);
+        return shards;
+    }
+
+    @Benchmark
+    public byte[][] reconstructThreeLostShards() {
+        codec.reconstruct(shards, THREE_LOST, cellSize);
+        return shards;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ReedSolomonBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,76 @@
+package ru.eliseevtech.storage.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReedSolomonTest {
+
+    private static byte[][] encodedStripe(ReedSolomon codec, int cellSize) {
+        Random random = new Random(42);
+        byte[][] shards = new byte[codec.totalShards()][cellSize];
+        for (int d = 0; d < codec.dataShards(); d++) {
+            random.nextBytes(shards[d]);
+        }
+        codec.encode(shards, cellSize);
+        return shards;
+    }
+
+    @Test
+    void anySixOfNineShardsShouldRestoreData() {
+        ReedSolomon codec = new ReedSolomon(6, 3);
+        byte[][] original = encodedStripe(codec, 1024);
+
+        // перебираем все сочетания из трёх потерянных ячеек
+        for (int a = 0; a < 9; a++) {
+            for (int b = a + 1; b < 9; b++) {
+                for (int c = b + 1; c < 9; c++) {
+                    int[] sources = new int[6];
+                    int slot = 0;
+                    byte[][] shards = new byte[9][];
+                    for (int shard = 0; shard < 9; shard++) {
+                        if (shard == a || shard == b || shard == c) {
+                            shards[shard] = new byte[1024];
+                        } else {
+                            shards[shard] = original[shard].clone();
+                            sources[slot++] = shard;
+                        }
+                    }
+
+                    codec.reconstruct(shards, sources, 1024);
+
+                    for (int d = 0; d < 6; d++) {
+                        assertThat(shards[d]).as("lost %d, %d, %d", a, b, c).isEqualTo(original[d]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void parityOfZeroDataShouldBeZero() {
+        ReedSolomon codec = new ReedSolomon(4, 2);
+        byte[][] shards = new byte[6][16];
+        shards[4][0] = 1;
+
+        codec.encode(shards, 16);
+
+        assertThat(shards[4]).containsOnly(0);
+        assertThat(shards[5]).containsOnly(0);
+    }
+
+    @Test
+    void reconstructionShouldRequireExactlyDataShards() {
+        ReedSolomon codec = new ReedSolomon(6, 3);
+        byte[][] shards = encodedStripe(codec, 8);
+
+        assertThatThrownBy(() -> codec.reconstruct(shards, new int[]{0, 1, 2, 3, 4}, 8))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ReedSolomon(200, 100))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
@@ -2,7 +2,7 @@ package ru.eliseevtech.storage.client;
 
 import com.google.protobuf.ByteString;
 import io.grpc.ManagedChannel;
-import io.grpc.stub.StreamObserver;
+import io.grpc.Status;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
@@ -15,8 +15,10 @@ import ru.eliseevtech.storage.coordinator.proto.InitiateDownloadRequest;
 import ru.eliseevtech.storage.coordinator.proto.InitiateDownloadResponse;
 import ru.eliseevtech.storage.coordinator.proto.InitiateUploadRequest;
 import ru.eliseevtech.storage.coordinator.proto.InitiateUploadResponse;
+import ru.eliseevtech.storage.coordinator.proto.StripeLayout;
 import ru.eliseevtech.storage.datanode.proto.DataNodeServiceGrpc;
 import ru.eliseevtech.storage.datanode.proto.DownloadChunk;
+import ru.eliseevtech.storage.datanode.proto.DownloadRangeRequest;
 import ru.eliseevtech.storage.datanode.proto.DownloadRequest;
 import ru.eliseevtech.storage.datanode.proto.UploadChunk;
 import ru.eliseevtech.storage.datanode.proto.UploadResponse;
@@ -27,14 +29,25 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -93,31 +106,13 @@ class StorageClientTest {
                     .thenReturn(finalizeResponse);
 
             when(dataNodeStub.uploadFileStream(any()))
-                    .thenAnswer(invocation -> {
-                        StreamObserver<UploadResponse> responseObserver = invocation.getArgument(0);
-
-                        return new StreamObserver<UploadChunk>() {
-                            @Override
-                            public void onNext(UploadChunk value) {
-                                sentChunks.add(value);
-                            }
-
-                            @Override
-                            public void onError(Throwable t) {
-                            }
-
-                            @Override
-                            public void onCompleted() {
-                                responseObserver.onNext(UploadResponse.newBuilder()
-                                        .setUploadId(uploadId)
-                                        .setUploadedBytes(data.length)
-                                        .setUploadedChunks(sentChunks.size())
-                                        .setSuccess(true)
-                                        .build());
-                                responseObserver.onCompleted();
-                            }
-                        };
-                    });
+                    .thenAnswer(invocation -> FakeUploadCall.start(invocation.getArgument(0), sentChunks::add,
+                            received -> UploadResponse.newBuilder()
+                                    .setUploadId(uploadId)
+                                    .setUploadedBytes(data.length)
+                                    .setUploadedChunks(received.size())
+                                    .setSuccess(true)
+                                    .build()));
 
             client.upload(remotePath, tempFile.toString(), false);
         }
@@ -143,6 +138,188 @@ class StorageClientTest {
         ));
     }
 
+    @Test
+    void parallelUploadShouldSendRangesWithOffsetsAndCallFinalize() throws Exception {
+        byte[] data = "parallel upload over several streams".getBytes();
+        Path tempFile = Files.createTempFile("upload-parallel-test", ".bin");
+        Files.write(tempFile, data);
+
+        when(properties.getHost()).thenReturn("localhost");
+        when(properties.getPort()).thenReturn(50060);
+
+        StorageClient client = new StorageClient(properties);
+
+        String uploadId = "u-parallel";
+        String remotePath = "/remote/parallel.txt";
+
+        InitiateUploadResponse initResponse = InitiateUploadResponse.newBuilder()
+                .setUploadId(uploadId)
+                .setDataNodeAddress("datanode1:50051")
+                .setChunkSize(4)
+                .setLastChunkIndex(-1)
+                .build();
+
+        CoordinatorServiceGrpc.CoordinatorServiceBlockingStub coordStub =
+                mock(CoordinatorServiceGrpc.CoordinatorServiceBlockingStub.class);
+        DataNodeServiceGrpc.DataNodeServiceStub dataNodeStub =
+                mock(DataNodeServiceGrpc.DataNodeServiceStub.class);
+
+        List<UploadChunk> sentChunks = new CopyOnWriteArrayList<>();
+        AtomicInteger streams = new AtomicInteger();
+
+        try (MockedStatic<CoordinatorServiceGrpc> coordStatic = mockStatic(CoordinatorServiceGrpc.class);
+             MockedStatic<DataNodeServiceGrpc> dataNodeStatic = mockStatic(DataNodeServiceGrpc.class)) {
+
+            coordStatic.when(() -> CoordinatorServiceGrpc.newBlockingStub(any(ManagedChannel.class)))
+                    .thenReturn(coordStub);
+            dataNodeStatic.when(() -> DataNodeServiceGrpc.newStub(any(ManagedChannel.class)))
+                    .thenReturn(dataNodeStub);
+
+            when(coordStub.initiateUpload(any(InitiateUploadRequest.class)))
+                    .thenReturn(initResponse);
+            when(coordStub.finalizeUpload(any(FinalizeUploadRequest.class)))
+                    .thenReturn(FinalizeUploadResponse.newBuilder().setSuccess(true).build());
+
+            when(dataNodeStub.uploadFileStream(any()))
+                    .thenAnswer(invocation -> {
+                        streams.incrementAndGet();
+                        return FakeUploadCall.start(invocation.getArgument(0), sentChunks::add,
+                                received -> UploadResponse.newBuilder()
+                                        .setUploadId(uploadId)
+                                        .setUploadedBytes(received.stream().mapToLong(c -> c.getData().size()).sum())
+                                        .setSuccess(true)
+                                        .build());
+                    });
+
+            client.upload(remotePath, tempFile.toString(), false, 3);
+        }
+
+        // каждый диапазон идёт своим потоком
+        assertThat(streams).hasValue(3);
+
+        // собираем файл по смещениям и сверяем с исходным
+        byte[] assembled = new byte[data.length];
+        for (UploadChunk chunk : sentChunks) {
+            assertThat(chunk.hasOffset()).isTrue();
+            assertThat(chunk.getOffset()).isEqualTo(chunk.getChunkIndex() * 4L);
+            chunk.getData().copyTo(assembled, (int) chunk.getOffset());
+        }
+        assertThat(sentChunks).hasSize((data.length + 3) / 4);
+        assertThat(assembled).isEqualTo(data);
+
+        verify(coordStub).finalizeUpload(argThat(req -> req.getUploadId().equals(uploadId)));
+    }
+
+    @Test
+    void resumedUploadShouldSendOnlyMissingChunks() throws Exception {
+        byte[] data = "0123456789abcdefgh".getBytes();
+        Path tempFile = Files.createTempFile("upload-resume-test", ".bin");
+        Files.write(tempFile, data);
+
+        when(properties.getHost()).thenReturn("localhost");
+        when(properties.getPort()).thenReturn(50060);
+
+        StorageClient client = new StorageClient(properties);
+
+        // чанки 0, 1 и 3 уже лежат на датаноде
+        BitSet stored = new BitSet();
+        stored.set(0, 2);
+        stored.set(3);
+
+        CoordinatorServiceGrpc.CoordinatorServiceBlockingStub coordStub =
+                mock(CoordinatorServiceGrpc.CoordinatorServiceBlockingStub.class);
+        DataNodeServiceGrpc.DataNodeServiceStub dataNodeStub =
+                mock(DataNodeServiceGrpc.DataNodeServiceStub.class);
+
+        List<UploadChunk> sentChunks = new ArrayList<>();
+
+        try (MockedStatic<CoordinatorServiceGrpc> coordStatic = mockStatic(CoordinatorServiceGrpc.class);
+             MockedStatic<DataNodeServiceGrpc> dataNodeStatic = mockStatic(DataNodeServiceGrpc.class)) {
+
+            coordStatic.when(() -> CoordinatorServiceGrpc.newBlockingStub(any(ManagedChannel.class)))
+                    .thenReturn(coordStub);
+            dataNodeStatic.when(() -> DataNodeServiceGrpc.newStub(any(ManagedChannel.class)))
+                    .thenReturn(dataNodeStub);
+
+            when(coordStub.initiateUpload(any(InitiateUploadRequest.class)))
+                    .thenReturn(InitiateUploadResponse.newBuilder()
+                            .setUploadId("u-resume")
+                            .setDataNodeAddress("datanode1:50051")
+                            .setChunkSize(4)
+                            .setResumed(true)
+                            .setChunkBitmap(ByteString.copyFrom(stored.toByteArray()))
+                            .build());
+            when(coordStub.finalizeUpload(any(FinalizeUploadRequest.class)))
+                    .thenReturn(FinalizeUploadResponse.newBuilder().setSuccess(true).build());
+
+            when(dataNodeStub.uploadFileStream(any()))
+                    .thenAnswer(invocation -> FakeUploadCall.start(invocation.getArgument(0), sentChunks::add,
+                            received -> UploadResponse.newBuilder()
+                                    .setUploadedBytes(received.stream().mapToLong(c -> c.getData().size()).sum())
+                                    .setSuccess(true)
+                                    .build()));
+
+            client.upload("/remote/resume.txt", tempFile.toString(), true);
+        }
+
+        assertThat(sentChunks).extracting(UploadChunk::getChunkIndex).containsExactly(2, 4);
+        assertThat(sentChunks).allSatisfy(chunk -> {
+            assertThat(chunk.getChunkSize()).isEqualTo(4);
+            assertThat(chunk.getOffset()).isEqualTo(chunk.getChunkIndex() * 4L);
+        });
+        assertThat(sentChunks.get(0).getData().toStringUtf8()).isEqualTo("89ab");
+        assertThat(sentChunks.get(1).getData().toStringUtf8()).isEqualTo("gh");
+
+        verify(coordStub).finalizeUpload(any());
+    }
+
+    @Test
+    void parallelUploadShouldNotFinalizeWhenRangeIsIncomplete() throws Exception {
+        Path tempFile = Files.createTempFile("upload-parallel-fail-test", ".bin");
+        Files.write(tempFile, "0123456789abcdef".getBytes());
+
+        when(properties.getHost()).thenReturn("localhost");
+        when(properties.getPort()).thenReturn(50060);
+
+        StorageClient client = new StorageClient(properties);
+
+        CoordinatorServiceGrpc.CoordinatorServiceBlockingStub coordStub =
+                mock(CoordinatorServiceGrpc.CoordinatorServiceBlockingStub.class);
+        DataNodeServiceGrpc.DataNodeServiceStub dataNodeStub =
+                mock(DataNodeServiceGrpc.DataNodeServiceStub.class);
+
+        try (MockedStatic<CoordinatorServiceGrpc> coordStatic = mockStatic(CoordinatorServiceGrpc.class);
+             MockedStatic<DataNodeServiceGrpc> dataNodeStatic = mockStatic(DataNodeServiceGrpc.class)) {
+
+            coordStatic.when(() -> CoordinatorServiceGrpc.newBlockingStub(any(ManagedChannel.class)))
+                    .thenReturn(coordStub);
+            dataNodeStatic.when(() -> DataNodeServiceGrpc.newStub(any(ManagedChannel.class)))
+                    .thenReturn(dataNodeStub);
+
+            when(coordStub.initiateUpload(any(InitiateUploadRequest.class)))
+                    .thenReturn(InitiateUploadResponse.newBuilder()
+                            .setUploadId("u-broken")
+                            .setDataNodeAddress("datanode1:50051")
+                            .setChunkSize(4)
+                            .setLastChunkIndex(-1)
+                            .build());
+
+            // датанода подтверждает меньше байт, чем было отправлено
+            when(dataNodeStub.uploadFileStream(any()))
+                    .thenAnswer(invocation -> FakeUploadCall.start(invocation.getArgument(0), chunk -> {
+                    }, received -> UploadResponse.newBuilder()
+                            .setUploadedBytes(1)
+                            .setSuccess(true)
+                            .build()));
+
+            assertThatThrownBy(() -> client.upload("/remote/broken.txt", tempFile.toString(), false, 2))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("u-broken");
+        }
+
+        verify(coordStub, never()).finalizeUpload(any());
+    }
+
     @Test
     void downloadShouldWriteAllChunksToLocalFile() throws Exception {
         byte[] data = "downloaded data from datanode".getBytes();
@@ -227,4 +404,492 @@ class StorageClientTest {
         }
     }
 
+    @Test
+    void downloadShouldVerifyChunkAndFileChecksums() throws Exception {
+        byte[] data = "checksummed download".getBytes();
+        int chunkSize = 8;
+
+        when(properties.getHost()).thenReturn("localhost");
+        when(properties.getPort()).thenReturn(50060);
+
+        StorageClient client = new StorageClient(properties);
+
+        List<DownloadChunk> chunks = new ArrayList<>();
+        ByteBuffer chunkCrcs = ByteBuffer.allocate(3 * Integer.BYTES);
+        for (int offset = 0; offset < data.length; offset += chunkSize) {
+            ByteString part = ByteString.copyFrom(data, offset, Math.min(chunkSize, data.length - offset));
+            CRC32C crc = new CRC32C();
+            crc.update(part.asReadOnlyByteBuffer());
+            chunkCrcs.putInt((int) crc.getValue());
+            chunks.add(DownloadChunk.newBuilder()
+                    .setChunkIndex(chunks.size())
+                    .setOffset(offset)
+                    .setData(part)
+                    .setCrc32C((int) crc.getValue())
+                    .build());
+        }
+        CRC32C composite = new CRC32C();
+        composite.update(chunkCrcs.flip());
+
+        InitiateDownloadResponse initResponse = InitiateDownloadResponse.newBuilder()
+                .setUploadId("u-checksum")
+                .setDataNodeAddress("datanode1:50051")
+                .setFileSize(data.length)
+                .setChunkSize(chunkSize)
+                .setCompositeCrc32C((int) composite.getValue())
+                .build();
+
+        CoordinatorServiceGrpc.CoordinatorServiceBlockingStub coordStub =
+                mock(CoordinatorServiceGrpc.CoordinatorServiceBlockingStub.class);
+        DataNodeServiceGrpc.DataNodeServiceBlockingStub dataNodeStub =
+                mock(DataNodeServiceGrpc.DataNodeServiceBlockingStub.class);
+
+        try (MockedStatic<CoordinatorServiceGrpc> coordStatic = mockStatic(CoordinatorServiceGrpc.class);
+             MockedStatic<DataNodeServiceGrpc> dataNodeStatic = mockStatic(DataNodeServiceGrpc.class)) {
+
+            coordStatic.when(() -> CoordinatorServiceGrpc.newBlockingStub(any(ManagedChannel.class)))
+                    .thenReturn(coordStub);
+            dataNodeStatic.when(() -> DataNodeServiceGrpc.newBlockingStub(any(ManagedChannel.class)))
+                    .thenReturn(dataNodeStub);
+            when(coordStub.initiateDownload(any(InitiateDownloadRequest.class))).thenReturn(initResponse);
+            when(dataNodeStub.downloadFileStream(any(DownloadRequest.class)))
+                    .thenAnswer(invocation -> chunks.iterator());
+
+            Path target = Files.createTempFile("download-checksum-test", ".bin");
+            client.download("/remote/checksum.txt", target.toString());
+            assertThat(Files.readAllBytes(target)).isEqualTo(data);
+
+            // повреждённые данные при неизменной сумме чанка отклоняются
+            chunks.set(1, chunks.get(1).toBuilder().setData(ByteString.copyFromUtf8("corrupt!")).build());
+            assertThatThrownBy(() -> client.download("/remote/checksum.txt", target.toString()))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("Checksum mismatch in chunk at offset 8");
+
+            // итоговая сумма файла проверяется даже без сумм отдельных чанков
+            chunks.replaceAll(chunk -> chunk.toBuilder().clearCrc32C().build());
+            when(coordStub.initiateDownload(any(InitiateDownloadRequest.class)))
+                    .thenReturn(initResponse.toBuilder().setCompositeCrc32C(0).build());
+            chunks.set(1, chunks.get(1).toBuilder().setData(ByteString.copyFrom(data, 8, 8)).build());
+            assertThatThrownBy(() -> client.download("/remote/checksum.txt", target.toString()))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("Checksum mismatch for downloaded file");
+        }
+    }
+
+    @Test
+    void interruptedParallelDownloadShouldResumeFromWrittenBytes() throws Exception {
+        byte[] data = "ranged download resumes after failure".getBytes();
+        String uploadId = "u-ranged";
+        String remotePath = "/remote/ranged.txt";
+
+        when(properties.getHost()).thenReturn("localhost");
+        when(properties.getPort()).thenReturn(50060);
+
+        StorageClient client = new StorageClient(properties);
+
+        InitiateDownloadResponse initResponse = InitiateDownloadResponse.newBuilder()
+                .setUploadId(uploadId)
+                .setDataNodeAddress("datanode1:50051")
+                .setFileSize(data.length)
+                .setChunkSize(4)
+                .build();
+
+        CoordinatorServiceGrpc.CoordinatorServiceBlockingStub coordStub =
+                mock(CoordinatorServiceGrpc.CoordinatorServiceBlockingStub.class);
+        DataNodeServiceGrpc.DataNodeServiceBlockingStub dataNodeStub =
+                mock(DataNodeServiceGrpc.DataNodeServiceBlockingStub.class);
+
+        List<DownloadRangeRequest> requests = new CopyOnWriteArrayList<>();
+        AtomicBoolean failOnce = new AtomicBoolean(true);
+        Path target = Files.createTempDirectory("download-ranged-test").resolve("out.bin");
+
+        try (MockedStatic<CoordinatorServiceGrpc> coordStatic = mockStatic(CoordinatorServiceGrpc.class);
+             MockedStatic<DataNodeServiceGrpc> dataNodeStatic = mockStatic(DataNodeServiceGrpc.class)) {
+
+            coordStatic.when(() -> CoordinatorServiceGrpc.newBlockingStub(any(ManagedChannel.class)))
+                    .thenReturn(coordStub);
+            dataNodeStatic.when(() -> DataNodeServiceGrpc.newBlockingStub(any(ManagedChannel.class)))
+                    .thenReturn(dataNodeStub);
+
+            when(coordStub.initiateDownload(any(InitiateDownloadRequest.class)))
+                    .thenReturn(initResponse);
+
+            // отдаём диапазон кусками по 2 байта; первый диапазон в первый раз обрывается после одного куска
+            when(dataNodeStub.downloadRange(any(DownloadRangeRequest.class)))
+                    .thenAnswer(invocation -> {
+                        DownloadRangeRequest request = invocation.getArgument(0);
+                        requests.add(request);
+                        boolean broken = request.getOffset() == 0 && failOnce.getAndSet(false);
+                        List<DownloadChunk> chunks = new ArrayList<>();
+                        long end = request.getOffset() + request.getLength();
+                        for (long offset = request.getOffset(); offset < end; offset += 2) {
+                            int size = (int) Math.min(2, end - offset);
+                            chunks.add(DownloadChunk.newBuilder()
+                                    .setOffset(offset)
+                                    .setData(ByteString.copyFrom(data, (int) offset, size))
+                                    .build());
+                        }
+                        Iterator<DownloadChunk> iterator = chunks.iterator();
+                        return new Iterator<DownloadChunk>() {
+                            private int served;
+
+                            @Override
+                            public boolean hasNext() {
+                                if (broken && served == 1) {
+                                    throw new IllegalStateException("connection reset");
+                                }
+                                return iterator.hasNext();
+                            }
+
+                            @Override
+                            public DownloadChunk next() {
+                                served++;
+                                return iterator.next();
+                            }
+                        };
+                    });
+
+            assertThatThrownBy(() -> client.download(remotePath, target.toString(), 3, false))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("resume-download");
+            assertThat(target.resolveSibling("out.bin.progress")).exists();
+
+            requests.clear();
+            client.download(remotePath, target.toString(), 3, true);
+        }
+
+        // докачивается только недостающий хвост первого диапазона
+        assertThat(requests).hasSize(1);
+        assertThat(requests.get(0).getOffset()).isEqualTo(2L);
+        assertThat(Files.readAllBytes(target)).isEqualTo(data);
+        assertThat(target.resolveSibling("out.bin.progress")).doesNotExist();
+    }
+
+    @Test
+    void downloadShouldFailOverToNextReplica() throws Exception {
+        byte[] data = "replicated download survives a failed replica".getBytes();
+
+        when(properties.getHost()).thenReturn("localhost");
+        when(properties.getPort()).thenReturn(50060);
+
+        StorageClient client = new StorageClient(properties);
+
+        InitiateDownloadResponse initResponse = InitiateDownloadResponse.newBuilder()
+                .setUploadId("u-replicated")
+                .setDataNodeAddress("datanode1:50051")
+                .setFileSize(data.length)
+                .addReplicaAddresses("datanode1:50051")
+                .addReplicaAddresses("datanode2:50051")
+                .build();
+
+        CoordinatorServiceGrpc.CoordinatorServiceBlockingStub coordStub =
+                mock(CoordinatorServiceGrpc.CoordinatorServiceBlockingStub.class);
+        DataNodeServiceGrpc.DataNodeServiceBlockingStub firstReplica =
+                mock(DataNodeServiceGrpc.DataNodeServiceBlockingStub.class);
+        DataNodeServiceGrpc.DataNodeServiceBlockingStub secondReplica =
+                mock(DataNodeServiceGrpc.DataNodeServiceBlockingStub.class);
+
+        try (MockedStatic<CoordinatorServiceGrpc> coordStatic = mockStatic(CoordinatorServiceGrpc.class);
+             MockedStatic<DataNodeServiceGrpc> dataNodeStatic = mockStatic(DataNodeServiceGrpc.class)) {
+
+            coordStatic.when(() -> CoordinatorServiceGrpc.newBlockingStub(any(ManagedChannel.class)))
+                    .thenReturn(coordStub);
+            dataNodeStatic.when(() -> DataNodeServiceGrpc.newBlockingStub(any(ManagedChannel.class)))
+                    .thenAnswer(invocation -> invocation.<ManagedChannel>getArgument(0).authority()
+                            .startsWith("datanode1") ? firstReplica : secondReplica);
+            when(coordStub.initiateDownload(any(InitiateDownloadRequest.class))).thenReturn(initResponse);
+
+            // первая реплика обрывает поток после 8 байт
+            when(firstReplica.downloadFileStream(any(DownloadRequest.class)))
+                    .thenAnswer(invocation -> new Iterator<DownloadChunk>() {
+                        private boolean served;
+
+                        @Override
+                        public boolean hasNext() {
+                            if (served) {
+                                throw Status.UNAVAILABLE.withDescription("connection reset").asRuntimeException();
+                            }
+                            return true;
+                        }
+
+                        @Override
+                        public DownloadChunk next() {
+                            served = true;
+                            return DownloadChunk.newBuilder().setData(ByteString.copyFrom(data, 0, 8)).build();
+                        }
+                    });
+            when(secondReplica.downloadRange(any(DownloadRangeRequest.class)))
+                    .thenAnswer(invocation -> {
+                        DownloadRangeRequest request = invocation.getArgument(0);
+                        return List.of(DownloadChunk.newBuilder()
+                                .setOffset(request.getOffset())
+                                .setData(ByteString.copyFrom(data, (int) request.getOffset(),
+                                        (int) request.getLength()))
+                                .build()).iterator();
+                    });
+
+            Path target = Files.createTempFile("download-failover-test", ".bin");
+            client.download("/remote/replicated.txt", target.toString());
+
+            // вторая реплика досылает только недостающий хвост
+            verify(secondReplica).downloadRange(argThat(request -> request.getOffset() == 8
+                    && request.getLength() == data.length - 8));
+            assertThat(Files.readAllBytes(target)).isEqualTo(data);
+        }
+    }
+
+    @Test
+    void slowReplicaShouldBeHedged() throws Exception {
+        byte[] data = "hedged ranged download".getBytes();
+
+        when(properties.getHost()).thenReturn("localhost");
+        when(properties.getPort()).thenReturn(50060);
+        when(properties.getHedgeDelayMs()).thenReturn(50L);
+
+        StorageClient client = new StorageClient(properties);
+
+        InitiateDownloadResponse initResponse = InitiateDownloadResponse.newBuilder()
+                .setUploadId("u-hedged")
+                .setDataNodeAddress("datanode1:50051")
+                .setFileSize(data.length)
+                .setChunkSize(4)
+                .addReplicaAddresses("datanode1:50051")
+                .addReplicaAddresses("datanode2:50051")
+                .build();
+
+        CoordinatorServiceGrpc.CoordinatorServiceBlockingStub coordStub =
+                mock(CoordinatorServiceGrpc.CoordinatorServiceBlockingStub.class);
+        DataNodeServiceGrpc.DataNodeServiceBlockingStub slowReplica =
+                mock(DataNodeServiceGrpc.DataNodeServiceBlockingStub.class);
+        DataNodeServiceGrpc.DataNodeServiceBlockingStub fastReplica =
+                mock(DataNodeServiceGrpc.DataNodeServiceBlockingStub.class);
+        CountDownLatch release = new CountDownLatch(1);
+        Path target = Files.createTempDirectory("download-hedged-test").resolve("out.bin");
+
+        try (MockedStatic<CoordinatorServiceGrpc> coordStatic = mockStatic(CoordinatorServiceGrpc.class);
+             MockedStatic<DataNodeServiceGrpc> dataNodeStatic = mockStatic(DataNodeServiceGrpc.class)) {
+
+            coordStatic.when(() -> CoordinatorServiceGrpc.newBlockingStub(any(ManagedChannel.class)))
+                    .thenReturn(coordStub);
+            dataNodeStatic.when(() -> DataNodeServiceGrpc.newBlockingStub(any(ManagedChannel.class)))
+                    .thenAnswer(invocation -> invocation.<ManagedChannel>getArgument(0).authority()
+                            .startsWith("datanode1") ? slowReplica : fastReplica);
+            when(coordStub.initiateDownload(any(InitiateDownloadRequest.class))).thenReturn(initResponse);
+
+            // перегруженная реплика не отдаёт первый чанк, пока её не отпустят
+            when(slowReplica.downloadRange(any(DownloadRangeRequest.class)))
+                    .thenAnswer(invocation -> new Iterator<DownloadChunk>() {
+                        @Override
+                        public boolean hasNext() {
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            throw Status.CANCELLED.asRuntimeException();
+                        }
+
+                        @Override
+                        public DownloadChunk next() {
+                            throw new AssertionError("slow replica must not be read");
+                        }
+                    });
+            when(fastReplica.downloadRange(any(DownloadRangeRequest.class)))
+                    .thenAnswer(invocation -> {
+                        DownloadRangeRequest request = invocation.getArgument(0);
+                        return List.of(DownloadChunk.newBuilder()
+                                .setOffset(request.getOffset())
+                                .setData(ByteString.copyFrom(data, (int) request.getOffset(),
+                                        (int) request.getLength()))
+                                .build()).iterator();
+                    });
+
+            client.download("/remote/hedged.txt", target.toString(), 2, false);
+        } finally {
+            release.countDown();
+        }
+
+        assertThat(Files.readAllBytes(target)).isEqualTo(data);
+    }
+
+    @Test
+    void stripedFileShouldBeReadBackWithoutLostShards() throws Exception {
+        byte[] data = "erasure coded object spread over five datanodes".getBytes();
+        Path source = Files.createTempFile("upload-striped-test", ".bin");
+        Files.write(source, data);
+
+        when(properties.getHost()).thenReturn("localhost");
+        when(properties.getPort()).thenReturn(50060);
+
+        StorageClient client = new StorageClient(properties);
+
+        StripeLayout.Builder stripe = StripeLayout.newBuilder()
+                .setDataShards(3)
+                .setParityShards(2)
+                .setCellSize(4);
+        for (int shard = 0; shard < 5; shard++) {
+            stripe.addShardAddresses("datanode" + (shard + 1) + ":50051")
+                    .addShardUploadIds("u-ec-shard-" + shard);
+        }
+        InitiateUploadResponse uploadInit = InitiateUploadResponse.newBuilder()
+                .setUploadId("u-ec")
+                .setDataNodeAddress("datanode1:50051")
+                .setChunkSize(4)
+                .setStripe(stripe)
+                .build();
+        InitiateDownloadResponse downloadInit = InitiateDownloadResponse.newBuilder()
+                .setUploadId("u-ec")
+                .setDataNodeAddress("datanode1:50051")
+                .setFileSize(data.length)
+                .setChunkSize(4)
+                .setStripe(stripe)
+                .build();
+
+        CoordinatorServiceGrpc.CoordinatorServiceBlockingStub coordStub =
+                mock(CoordinatorServiceGrpc.CoordinatorServiceBlockingStub.class);
+        DataNodeServiceGrpc.DataNodeServiceStub dataNodeStub =
+                mock(DataNodeServiceGrpc.DataNodeServiceStub.class);
+        DataNodeServiceGrpc.DataNodeServiceBlockingStub dataNodeBlockingStub =
+                mock(DataNodeServiceGrpc.DataNodeServiceBlockingStub.class);
+        Map<String, byte[]> shards = new ConcurrentHashMap<>();
+        Path target = Files.createTempFile("download-striped-test", ".bin");
+
+        try (MockedStatic<CoordinatorServiceGrpc> coordStatic = mockStatic(CoordinatorServiceGrpc.class);
+             MockedStatic<DataNodeServiceGrpc> dataNodeStatic = mockStatic(DataNodeServiceGrpc.class)) {
+
+            coordStatic.when(() -> CoordinatorServiceGrpc.newBlockingStub(any(ManagedChannel.class)))
+                    .thenReturn(coordStub);
+            dataNodeStatic.when(() -> DataNodeServiceGrpc.newStub(any(ManagedChannel.class)))
+                    .thenReturn(dataNodeStub);
+            dataNodeStatic.when(() -> DataNodeServiceGrpc.newBlockingStub(any(ManagedChannel.class)))
+                    .thenReturn(dataNodeBlockingStub);
+            when(coordStub.initiateUpload(any(InitiateUploadRequest.class))).thenReturn(uploadInit);
+            when(coordStub.finalizeUpload(any(FinalizeUploadRequest.class)))
+                    .thenReturn(FinalizeUploadResponse.newBuilder().setSuccess(true).build());
+            when(coordStub.initiateDownload(any(InitiateDownloadRequest.class))).thenReturn(downloadInit);
+
+            when(dataNodeStub.uploadFileStream(any()))
+                    .thenAnswer(invocation -> FakeUploadCall.start(invocation.getArgument(0), chunk -> { },
+                            received -> {
+                                byte[] shard = new byte[received.size() * 4];
+                                for (UploadChunk chunk : received) {
+                                    chunk.getData().copyTo(shard, (int) chunk.getOffset());
+                                }
+                                shards.put(received.get(0).getUploadId(), shard);
+                                return UploadResponse.newBuilder()
+                                        .setUploadedBytes(shard.length)
+                                        .setSuccess(true)
+                                        .build();
+                            }));
+
+            client.upload("/remote/striped.bin", source.toString(), false);
+
+            // 48 байт укладываются в 4 полосы по 3 ячейки, каждая реплика хранит по ячейке из полосы
+            assertThat(shards).hasSize(5).allSatisfy((uploadId, shard) -> assertThat(shard).hasSize(16));
+
+            // два узла с данными недоступны: содержимое восстанавливается по чётности
+            when(dataNodeBlockingStub.downloadRange(any(DownloadRangeRequest.class)))
+                    .thenAnswer(invocation -> {
+                        DownloadRangeRequest request = invocation.getArgument(0);
+                        if (request.getUploadId().endsWith("-0") || request.getUploadId().endsWith("-2")) {
+                            throw Status.UNAVAILABLE.withDescription("node is down").asRuntimeException();
+                        }
+                        return List.of(DownloadChunk.newBuilder()
+                                .setOffset(request.getOffset())
+                                .setData(ByteString.copyFrom(shards.get(request.getUploadId()),
+                                        (int) request.getOffset(), (int) request.getLength()))
+                                .build()).iterator();
+                    });
+
+            client.download("/remote/striped.bin", target.toString());
+        }
+
+        assertThat(Files.readAllBytes(target)).isEqualTo(data);
+        assertThat(shards.get("u-ec-shard-1")).startsWith(Arrays.copyOfRange(data, 4, 8));
+    }
+
+    @Test
+    void slowDataShardShouldBeReplacedByParity() throws Exception {
+        byte[] data = "striped download must not wait for a stalled node".getBytes();
+        ReedSolomon codec = new ReedSolomon(3, 2);
+        int stripes = (data.length + 11) / 12;
+        byte[][] shards = new byte[5][stripes * 4];
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            byte[][] cells = new byte[5][4];
+            for (int d = 0; d < 3; d++) {
+                int from = Math.min(data.length, stripe * 12 + d * 4);
+                System.arraycopy(data, from, cells[d], 0, Math.min(4, data.length - from));
+            }
+            codec.encode(cells, 4);
+            for (int shard = 0; shard < 5; shard++) {
+                System.arraycopy(cells[shard], 0, shards[shard], stripe * 4, 4);
+            }
+        }
+
+        when(properties.getHost()).thenReturn("localhost");
+        when(properties.getPort()).thenReturn(50060);
+
+        StorageClient client = new StorageClient(properties);
+
+        StripeLayout.Builder stripe = StripeLayout.newBuilder()
+                .setDataShards(3)
+                .setParityShards(2)
+                .setCellSize(4);
+        for (int shard = 0; shard < 5; shard++) {
+            stripe.addShardAddresses("datanode" + (shard + 1) + ":50051")
+                    .addShardUploadIds("u-ec-shard-" + shard);
+        }
+        InitiateDownloadResponse downloadInit = InitiateDownloadResponse.newBuilder()
+                .setUploadId("u-ec")
+                .setDataNodeAddress("datanode1:50051")
+                .setFileSize(data.length)
+                .setChunkSize(4)
+                .setStripe(stripe)
+                .build();
+
+        CoordinatorServiceGrpc.CoordinatorServiceBlockingStub coordStub =
+                mock(CoordinatorServiceGrpc.CoordinatorServiceBlockingStub.class);
+        DataNodeServiceGrpc.DataNodeServiceBlockingStub dataNodeBlockingStub =
+                mock(DataNodeServiceGrpc.DataNodeServiceBlockingStub.class);
+        List<String> requested = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        Path target = Files.createTempFile("download-striped-hedged-test", ".bin");
+
+        try (MockedStatic<CoordinatorServiceGrpc> coordStatic = mockStatic(CoordinatorServiceGrpc.class);
+             MockedStatic<DataNodeServiceGrpc> dataNodeStatic = mockStatic(DataNodeServiceGrpc.class)) {
+
+            coordStatic.when(() -> CoordinatorServiceGrpc.newBlockingStub(any(ManagedChannel.class)))
+                    .thenReturn(coordStub);
+            dataNodeStatic.when(() -> DataNodeServiceGrpc.newBlockingStub(any(ManagedChannel.class)))
+                    .thenReturn(dataNodeBlockingStub);
+            when(coordStub.initiateDownload(any(InitiateDownloadRequest.class))).thenReturn(downloadInit);
+
+            // узел с ячейкой 1 завис; скачивание завершается по первым трём ответившим узлам
+            when(dataNodeBlockingStub.downloadRange(any(DownloadRangeRequest.class)))
+                    .thenAnswer(invocation -> {
+                        DownloadRangeRequest request = invocation.getArgument(0);
+                        requested.add(request.getUploadId());
+                        if (request.getUploadId().endsWith("-1")) {
+                            release.await();
+                            throw Status.CANCELLED.asRuntimeException();
+                        }
+                        int shard = request.getUploadId().charAt(request.getUploadId().length() - 1) - '0';
+                        return List.of(DownloadChunk.newBuilder()
+                                .setOffset(request.getOffset())
+                                .setData(ByteString.copyFrom(shards[shard],
+                                        (int) request.getOffset(), (int) request.getLength()))
+                                .build()).iterator();
+                    });
+
+            client.download("/remote/striped.bin", target.toString());
+        } finally {
+            release.countDown();
+        }
+
+        assertThat(Files.readAllBytes(target)).isEqualTo(data);
+        // открыто k+1 потоков, запасной узел с чётностью не понадобился
+        assertThat(requested).contains("u-ec-shard-0", "u-ec-shard-2", "u-ec-shard-3")
+                .doesNotContain("u-ec-shard-4");
+    }
+
 }
@@ -0,0 +1,57 @@
+package ru.eliseevtech.storage.client;
+
+import com.google.protobuf.ByteString;
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+import ru.eliseevtech.storage.datanode.proto.UploadChunk;
+import ru.eliseevtech.storage.datanode.proto.UploadResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UploadStreamWriterTest {
+
+    private final UploadChunk chunk = UploadChunk.newBuilder()
+            .setUploadId("u1")
+            .setData(ByteString.copyFromUtf8("data"))
+            .build();
+
+    @Test
+    void sendShouldWaitUntilTransportIsReady() throws Exception {
+        UploadStreamWriter writer = new UploadStreamWriter();
+        FakeUploadCall call = FakeUploadCall.start(writer, c -> {
+        }, received -> UploadResponse.newBuilder().setSuccess(true).build());
+        call.setReady(false);
+
+        CompletableFuture<Void> sending = CompletableFuture.runAsync(() -> writer.send(chunk));
+
+        // пока транспорт не готов, чанк не должен уйти
+        Thread.sleep(200);
+        assertThat(sending).isNotDone();
+        assertThat(call.received()).isEmpty();
+
+        call.setReady(true);
+        sending.get(5, TimeUnit.SECONDS);
+        assertThat(call.received()).containsExactly(chunk);
+
+        writer.complete();
+        assertThat(writer.awaitResponse().getSuccess()).isTrue();
+    }
+
+    @Test
+    void sendShouldFailWhenDatanodeAbortsWhileWaiting() {
+        UploadStreamWriter writer = new UploadStreamWriter();
+        FakeUploadCall call = FakeUploadCall.start(writer, c -> {
+        }, received -> UploadResponse.getDefaultInstance());
+        call.setReady(false);
+        call.responseObserver().onError(Status.UNAVAILABLE.asRuntimeException());
+
+        assertThatThrownBy(() -> writer.send(chunk))
+                .isInstanceOf(IllegalStateException.class)
+                .hasRootCauseMessage("UNAVAILABLE");
+    }
+
+}
@@ -0,0 +1,118 @@
+package ru.eliseevtech.storage.coordinator.client;
+
+import io.grpc.ConnectivityState;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+@Slf4j
+public class DataNodeChannelPool implements Closeable {
+
+    private final Map<String, PooledChannel> channels = new ConcurrentHashMap<>();
+    private final Function<String, ManagedChannel> channelFactory;
+    private final long idleTimeoutNanos;
+
+    private final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "datanode-channel-evictor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public DataNodeChannelPool(long idleTimeoutMs) {
+        this(idleTimeoutMs, address -> ManagedChannelBuilder.forTarget(address)
+                .usePlaintext()
+                .build());
+    }
+
+    DataNodeChannelPool(long idleTimeoutMs, Function<String, ManagedChannel> channelFactory) {
+        this.channelFactory = channelFactory;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        long period = Math.max(idleTimeoutMs / 2, 1000L);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public ManagedChannel channelFor(String host, int port) {
+        return channels.compute(address(host, port), (address, existing) -> {
+            if (existing != null && isUsable(existing.channel)) {
+                existing.lastUsedNanos = System.nanoTime();
+                return existing;
+            }
+            if (existing != null) {
+                log.info("Reconnecting channel to datanode {}", address);
+                existing.channel.shutdown();
+            }
+            return new PooledChannel(channelFactory.apply(address));
+        }).channel;
+    }
+
+    public void evict(String host, int port) {
+        PooledChannel removed = channels.remove(address(host, port));
+        if (removed != null) {
+            log.info("Evicted channel to datanode {}:{}", host, port);
+            removed.channel.shutdown();
+        }
+    }
+
+    int size() {
+        return channels.size();
+    }
+
+    void evictIdle() {
+        long now = System.nanoTime();
+        for (String address : channels.keySet()) {
+            channels.computeIfPresent(address, (key, pooled) -> {
+                if (now - pooled.lastUsedNanos < idleTimeoutNanos) {
+                    return pooled;
+                }
+                log.debug("Closing idle channel to datanode {}", key);
+                pooled.channel.shutdown();
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        channels.values().forEach(pooled -> pooled.channel.shutdown());
+        channels.clear();
+    }
+
+    private static boolean isUsable(ManagedChannel channel) {
+        if (channel.isShutdown()) {
+            return false;
+        }
+        ConnectivityState state = channel.getState(false);
+        if (state == ConnectivityState.SHUTDOWN) {
+            return false;
+        }
+        if (state == ConnectivityState.TRANSIENT_FAILURE) {
+            channel.resetConnectBackoff();
+        }
+        return true;
+    }
+
+    private static String address(String host, int port) {
+        return host + ":" + port;
+    }
+
+    private static final class PooledChannel {
+
+        private final ManagedChannel channel;
+        private long lastUsedNanos = System.nanoTime();
+
+        private PooledChannel(ManagedChannel channel) {
+            this.channel = channel;
+        }
+
+    }
+
+}
@@ -1,44 +1,67 @@
 package ru.eliseevtech.storage.coordinator.client;
 
-import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import ru.eliseevtech.storage.datanode.proto.DataNodeControlServiceGrpc;
 import ru.eliseevtech.storage.datanode.proto.DeleteUploadRequest;
+import ru.eliseevtech.storage.datanode.proto.DeleteUploadsRequest;
+import ru.eliseevtech.storage.datanode.proto.GetUploadStatsBatchRequest;
 import ru.eliseevtech.storage.datanode.proto.GetUploadStatsRequest;
 import ru.eliseevtech.storage.datanode.proto.GetUploadStatsResponse;
+import ru.eliseevtech.storage.datanode.proto.ReplicateUploadRequest;
+import ru.eliseevtech.storage.datanode.proto.ReplicateUploadResponse;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
+@RequiredArgsConstructor
 public class DataNodeControlClient {
 
+    private final DataNodeChannelPool channelPool;
+    private final long deadlineMs;
+
     public void deleteUpload(String host, int port, String uploadId) {
-        ManagedChannel channel = ManagedChannelBuilder.forAddress(host, port)
-                .usePlaintext()
-                .build();
-        try {
-            DataNodeControlServiceGrpc.DataNodeControlServiceBlockingStub stub =
-                    DataNodeControlServiceGrpc.newBlockingStub(channel);
-            stub.deleteUpload(DeleteUploadRequest.newBuilder()
-                    .setUploadId(uploadId)
-                    .build());
-        } finally {
-            channel.shutdown();
-        }
+        stub(host, port).deleteUpload(DeleteUploadRequest.newBuilder()
+                .setUploadId(uploadId)
+                .build());
     }
 
     public GetUploadStatsResponse getUploadStats(String host, int port, String uploadId) {
-        ManagedChannel channel = ManagedChannelBuilder.forAddress(host, port)
-                .usePlaintext()
-                .build();
-        try {
-            DataNodeControlServiceGrpc.DataNodeControlServiceBlockingStub stub =
-                    DataNodeControlServiceGrpc.newBlockingStub(channel);
-            return stub.getUploadStats(GetUploadStatsRequest.newBuilder()
-                    .setUploadId(uploadId)
-                    .build());
-        } finally {
-            channel.shutdown();
-        }
+        return stub(host, port).getUploadStats(GetUploadStatsRequest.newBuilder()
+                .setUploadId(uploadId)
+                .build());
+    }
+
+    public int deleteUploads(String host, int port, Collection<String> uploadIds) {
+        return stub(host, port).deleteUploads(DeleteUploadsRequest.newBuilder()
+                        .addAllUploadIds(uploadIds)
+                        .build())
+                .getDeletedCount();
+    }
+
+    public List<GetUploadStatsResponse> getUploadStatsBatch(String host, int port, Collection<String> uploadIds) {
+        return stub(host, port).getUploadStatsBatch(GetUploadStatsBatchRequest.newBuilder()
+                        .addAllUploadIds(uploadIds)
+                        .build())
+                .getStatsList();
+    }
+
+    public ReplicateUploadResponse replicateUpload(String host, int port, String uploadId, String targetAddress,
+                                                   long rateLimitBytesPerSecond, long timeoutMs) {
+        return DataNodeControlServiceGrpc.newBlockingStub(channelPool.channelFor(host, port))
+                .withDeadlineAfter(timeoutMs, TimeUnit.MILLISECONDS)
+                .replicateUpload(ReplicateUploadRequest.newBuilder()
+                        .setUploadId(uploadId)
+                        .setTargetAddress(targetAddress)
+                        .setRateLimitBytesPerSecond(rateLimitBytesPerSecond)
+                        .build());
+    }
+
+    private DataNodeControlServiceGrpc.DataNodeControlServiceBlockingStub stub(String host, int port) {
+        return DataNodeControlServiceGrpc.newBlockingStub(channelPool.channelFor(host, port))
+                .withDeadlineAfter(deadlineMs, TimeUnit.MILLISECONDS);
     }
 
 }
@@ -4,7 +4,13 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import ru.eliseevtech.storage.coordinator.registry.DataNodeRegistry;
+import ru.eliseevtech.storage.coordinator.registry.PlacementStrategy;
+import ru.eliseevtech.storage.coordinator.registry.PowerOfTwoChoicesPlacementStrategy;
+import ru.eliseevtech.storage.coordinator.registry.RoundRobinPlacementStrategy;
 import ru.eliseevtech.storage.coordinator.storage.JsonFileMetadataStore;
+import ru.eliseevtech.storage.coordinator.storage.MetadataStore;
+import ru.eliseevtech.storage.coordinator.storage.MvStoreMetadataStore;
+import ru.eliseevtech.storage.coordinator.storage.WalMetadataStore;
 
 import java.nio.file.Path;
 
@@ -12,15 +18,34 @@ import java.nio.file.Path;
 public class CoordinatorConfig {
 
     @Bean
-    public JsonFileMetadataStore metadataStore(CoordinatorProperties props, ObjectMapper mapper) {
-        Path path = Path.of(props.getStorage().getPath());
-        return new JsonFileMetadataStore(path, mapper);
+    public MetadataStore metadataStore(CoordinatorProperties props, ObjectMapper mapper) {
+        CoordinatorProperties.StorageProperties storage = props.getStorage();
+        Path jsonPath = Path.of(storage.getPath());
+        return switch (storage.getType()) {
+            case JSON -> new JsonFileMetadataStore(jsonPath, mapper);
+            case WAL -> {
+                Path walDir = storage.getWalDir() != null
+                        ? Path.of(storage.getWalDir())
+                        : jsonPath.resolveSibling("wal");
+                yield new WalMetadataStore(walDir, storage.getWalSegmentSizeBytes(), jsonPath, mapper);
+            }
+            case MVSTORE -> {
+                Path mvstorePath = storage.getMvstorePath() != null
+                        ? Path.of(storage.getMvstorePath())
+                        : jsonPath.resolveSibling("metadata.mv.db");
+                yield new MvStoreMetadataStore(mvstorePath, storage.getMvstoreCacheSizeMb());
+            }
+        };
     }
 
     @Bean
     public DataNodeRegistry dataNodeRegistry(CoordinatorProperties props) {
         long timeout = props.getCleanup().getTimeoutMs();
-        return new DataNodeRegistry(timeout);
+        PlacementStrategy strategy = switch (props.getPlacement().getStrategy()) {
+            case ROUND_ROBIN -> new RoundRobinPlacementStrategy();
+            case POWER_OF_TWO_CHOICES -> new PowerOfTwoChoicesPlacementStrategy();
+        };
+        return new DataNodeRegistry(timeout, strategy);
     }
 
 }
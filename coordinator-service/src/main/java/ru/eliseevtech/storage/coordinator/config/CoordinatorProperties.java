@@ -9,17 +9,72 @@ public class CoordinatorProperties {
 
     private StorageProperties storage = new StorageProperties();
     private CleanupProperties cleanup = new CleanupProperties();
+    private DatanodeClientProperties datanodeClient = new DatanodeClientProperties();
+    private PlacementProperties placement = new PlacementProperties();
+    private RebalanceProperties rebalance = new RebalanceProperties();
+    private ErasureCodingProperties erasureCoding = new ErasureCodingProperties();
     private int chunkSize = 1048576;
+    private int replicationFactor = 1;
 
     @Data
     public static class StorageProperties {
+        private StorageType type = StorageType.WAL;
         private String path;
+        private String walDir;
+        private long walSegmentSizeBytes = 64L * 1024 * 1024;
+        private String mvstorePath;
+        private int mvstoreCacheSizeMb = 64;
+    }
+
+    public enum StorageType {
+        JSON,
+        WAL,
+        MVSTORE
     }
 
     @Data
     public static class CleanupProperties {
         private long intervalMs;
         private long timeoutMs;
+        private int batchSize = 500;
+        private int parallelism = 8;
+        private long nodeExpiryIntervalMs = 10000;
+        private long lostNodeGraceMs = 900000;
+    }
+
+    @Data
+    public static class DatanodeClientProperties {
+        private long idleTimeoutMs = 300000;
+        private long deadlineMs = 10000;
+    }
+
+    @Data
+    public static class PlacementProperties {
+        private PlacementType strategy = PlacementType.POWER_OF_TWO_CHOICES;
+    }
+
+    @Data
+    public static class RebalanceProperties {
+        private boolean enabled = true;
+        private long intervalMs = 60000;
+        private long bandwidthBytesPerSecond = 50L * 1024 * 1024;
+        private int maxConcurrentCopies = 2;
+        private int maxTasksPerRound = 32;
+        private double skewThreshold = 0.2;
+        private long lostReplicaGraceMs = 900000;
+    }
+
+    @Data
+    public static class ErasureCodingProperties {
+        private boolean enabled = false;
+        private int dataShards = 6;
+        private int parityShards = 3;
+        private long minFileSizeBytes = 64L * 1024 * 1024;
+    }
+
+    public enum PlacementType {
+        ROUND_ROBIN,
+        POWER_OF_TWO_CHOICES
     }
 
 }
@@ -2,14 +2,23 @@ package ru.eliseevtech.storage.coordinator.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import ru.eliseevtech.storage.coordinator.client.DataNodeChannelPool;
 import ru.eliseevtech.storage.coordinator.client.DataNodeControlClient;
+import ru.eliseevtech.storage.coordinator.registry.DataNodeRegistry;
 
 @Configuration
 public class DataNodeControlClientConfig {
 
     @Bean
-    public DataNodeControlClient dataNodeControlClient() {
-        return new DataNodeControlClient();
+    public DataNodeChannelPool dataNodeChannelPool(CoordinatorProperties props, DataNodeRegistry registry) {
+        DataNodeChannelPool pool = new DataNodeChannelPool(props.getDatanodeClient().getIdleTimeoutMs());
+        registry.addRemovalListener(node -> pool.evict(node.getHost(), node.getPort()));
+        return pool;
+    }
+
+    @Bean
+    public DataNodeControlClient dataNodeControlClient(DataNodeChannelPool channelPool, CoordinatorProperties props) {
+        return new DataNodeControlClient(channelPool, props.getDatanodeClient().getDeadlineMs());
     }
 
 }
@@ -1,5 +1,6 @@
 package ru.eliseevtech.storage.coordinator.grpc;
 
+import com.google.protobuf.ByteString;
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import lombok.RequiredArgsConstructor;
@@ -13,10 +14,12 @@ import ru.eliseevtech.storage.coordinator.proto.InitiateDownloadRequest;
 import ru.eliseevtech.storage.coordinator.proto.InitiateDownloadResponse;
 import ru.eliseevtech.storage.coordinator.proto.InitiateUploadRequest;
 import ru.eliseevtech.storage.coordinator.proto.InitiateUploadResponse;
+import ru.eliseevtech.storage.coordinator.proto.StripeLayout;
 import ru.eliseevtech.storage.coordinator.service.DownloadInitResult;
 import ru.eliseevtech.storage.coordinator.service.DownloadService;
 import ru.eliseevtech.storage.coordinator.service.GetUploadStatusResult;
 import ru.eliseevtech.storage.coordinator.service.InitiateUploadResult;
+import ru.eliseevtech.storage.coordinator.service.StripeInfo;
 import ru.eliseevtech.storage.coordinator.service.UploadService;
 
 @GrpcService
@@ -35,15 +38,19 @@ public class CoordinatorGrpcService extends CoordinatorServiceGrpc.CoordinatorSe
             String[] parts = result.getDataNodeAddress().split(":");
             String address = parts[0] + ":" + parts[1];
 
-            InitiateUploadResponse response = InitiateUploadResponse.newBuilder()
+            InitiateUploadResponse.Builder response = InitiateUploadResponse.newBuilder()
                     .setUploadId(result.getUploadId())
                     .setDataNodeAddress(address)
                     .setChunkSize(result.getChunkSize())
                     .setResumed(result.isResumed())
                     .setLastChunkIndex(result.getLastChunkIndex())
                     .setBytesUploaded(result.getBytesUploaded())
-                    .build();
-            responseObserver.onNext(response);
+                    .setChunkBitmap(ByteString.copyFrom(result.getChunkBitmap().toByteArray()))
+                    .addAllPipelineAddresses(result.getPipelineAddresses());
+            if (result.getStripe() != null) {
+                response.setStripe(toProto(result.getStripe()));
+            }
+            responseObserver.onNext(response.build());
             responseObserver.onCompleted();
         } catch (Exception e) {
             responseObserver.onError(Status.INTERNAL.withDescription(e.getMessage())
@@ -76,13 +83,19 @@ public class CoordinatorGrpcService extends CoordinatorServiceGrpc.CoordinatorSe
                                  StreamObserver<InitiateDownloadResponse> responseObserver) {
         try {
             DownloadInitResult result = downloadService.initiateDownload(request.getFilePath());
-            InitiateDownloadResponse response = InitiateDownloadResponse.newBuilder()
+            InitiateDownloadResponse.Builder response = InitiateDownloadResponse.newBuilder()
                     .setUploadId(result.getUploadId())
                     .setDataNodeAddress(result.getDataNodeAddress())
                     .setFileSize(result.getFileSize())
-                    .setChunkSize(1048576)
-                    .build();
-            responseObserver.onNext(response);
+                    .setChunkSize(result.getChunkSize() != null ? result.getChunkSize() : 1048576)
+                    .addAllReplicaAddresses(result.getReplicaAddresses());
+            if (result.getCompositeCrc32c() != null) {
+                response.setCompositeCrc32C(result.getCompositeCrc32c());
+            }
+            if (result.getStripe() != null) {
+                response.setStripe(toProto(result.getStripe()));
+            }
+            responseObserver.onNext(response.build());
             responseObserver.onCompleted();
         } catch (Exception e) {
             responseObserver.onError(Status.NOT_FOUND.withDescription(e.getMessage())
@@ -109,4 +122,14 @@ public class CoordinatorGrpcService extends CoordinatorServiceGrpc.CoordinatorSe
         }
     }
 
+    private static StripeLayout toProto(StripeInfo stripe) {
+        return StripeLayout.newBuilder()
+                .setDataShards(stripe.getDataShards())
+                .setParityShards(stripe.getParityShards())
+                .setCellSize(stripe.getCellSize())
+                .addAllShardAddresses(stripe.getShardAddresses())
+                .addAllShardUploadIds(stripe.getShardUploadIds())
+                .build();
+    }
+
 }
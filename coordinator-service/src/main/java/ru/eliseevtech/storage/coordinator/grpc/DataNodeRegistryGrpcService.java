@@ -3,6 +3,7 @@ package ru.eliseevtech.storage.coordinator.grpc;
 import io.grpc.stub.StreamObserver;
 import lombok.RequiredArgsConstructor;
 import net.devh.boot.grpc.server.service.GrpcService;
+import ru.eliseevtech.storage.coordinator.model.DataNodeLoad;
 import ru.eliseevtech.storage.coordinator.proto.*;
 import ru.eliseevtech.storage.coordinator.registry.DataNodeRegistry;
 
@@ -34,11 +35,7 @@ public class DataNodeRegistryGrpcService extends DataNodeRegistryServiceGrpc.Dat
     @Override
     public void heartbeat(HeartbeatRequest request,
                           StreamObserver<HeartbeatResponse> responseObserver) {
-        boolean known = registry.getActiveNodes().stream()
-                .anyMatch(n -> n.getNodeId().equals(request.getNodeId()));
-        if (known) {
-            registry.heartbeat(request.getNodeId());
-        }
+        boolean known = registry.heartbeat(request.getNodeId(), request.hasLoad() ? toLoad(request.getLoad()) : null);
         HeartbeatResponse response = HeartbeatResponse.newBuilder()
                 .setKnown(known)
                 .build();
@@ -46,4 +43,14 @@ public class DataNodeRegistryGrpcService extends DataNodeRegistryServiceGrpc.Dat
         responseObserver.onCompleted();
     }
 
+    private static DataNodeLoad toLoad(NodeLoad load) {
+        return DataNodeLoad.builder()
+                .freeSpaceBytes(load.getFreeSpaceBytes())
+                .activeUploads(load.getActiveUploads())
+                .activeDownloads(load.getActiveDownloads())
+                .writeBytesPerSecond(load.getWriteBytesPerSecond())
+                .readBytesPerSecond(load.getReadBytesPerSecond())
+                .build();
+    }
+
 }
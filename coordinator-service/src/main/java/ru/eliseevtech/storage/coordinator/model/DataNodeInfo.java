@@ -16,5 +16,6 @@ public class DataNodeInfo {
     private int port;
     private long lastHeartbeat;
     private boolean active;
+    private DataNodeLoad load;
 
 }
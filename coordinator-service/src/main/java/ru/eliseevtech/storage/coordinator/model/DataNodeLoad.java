@@ -0,0 +1,20 @@
+package ru.eliseevtech.storage.coordinator.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DataNodeLoad {
+
+    private long freeSpaceBytes;
+    private int activeUploads;
+    private int activeDownloads;
+    private long writeBytesPerSecond;
+    private long readBytesPerSecond;
+
+}
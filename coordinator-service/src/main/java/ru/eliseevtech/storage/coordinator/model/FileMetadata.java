@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @Builder(toBuilder = true)
 @NoArgsConstructor
@@ -20,5 +22,37 @@ public class FileMetadata {
     private Long finalizedAt;
     private int lastChunkIndex;
     private long bytesUploaded;
+    private Integer chunkSize;
+    private Integer compositeCrc32c;
+    private List<String> replicaAddresses;
+    private Integer dataShards;
+    private Integer parityShards;
+    private List<String> shardAddresses;
+    private List<String> staleReplicaAddresses;
+
+    public List<String> replicas() {
+        return replicaAddresses == null || replicaAddresses.isEmpty() ? List.of(dataNodeAddress) : replicaAddresses;
+    }
+
+    public List<String> staleReplicas() {
+        return staleReplicaAddresses == null ? List.of() : staleReplicaAddresses;
+    }
+
+    public boolean erasureCoded() {
+        return dataShards != null && shardAddresses != null && !shardAddresses.isEmpty();
+    }
+
+    public List<String> storageAddresses() {
+        return erasureCoded() ? shardAddresses : replicas();
+    }
+
+    public String storedUploadId(int index) {
+        return erasureCoded() ? uploadId + "-shard-" + index : uploadId;
+    }
+
+    public long shardSize() {
+        long stripeSize = (long) dataShards * chunkSize;
+        return (fileSize + stripeSize - 1) / stripeSize * chunkSize;
+    }
 
 }
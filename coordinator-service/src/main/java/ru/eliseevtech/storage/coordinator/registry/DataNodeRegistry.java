@@ -2,73 +2,203 @@ package ru.eliseevtech.storage.coordinator.registry;
 
 import lombok.extern.slf4j.Slf4j;
 import ru.eliseevtech.storage.coordinator.model.DataNodeInfo;
+import ru.eliseevtech.storage.coordinator.model.DataNodeLoad;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.random.RandomGenerator;
 
 @Slf4j
 public class DataNodeRegistry {
 
     private final Map<String, DataNodeInfo> nodesById = new ConcurrentHashMap<>();
-    private final AtomicInteger rrIndex = new AtomicInteger(0);
+    private final List<Consumer<DataNodeInfo>> removalListeners = new CopyOnWriteArrayList<>();
     private final long nodeTimeoutMillis;
+    private final PlacementStrategy placementStrategy;
+
+    private volatile List<DataNodeInfo> nodes = List.of();
 
     public DataNodeRegistry(long nodeTimeoutMillis) {
+        this(nodeTimeoutMillis, new RoundRobinPlacementStrategy());
+    }
+
+    public DataNodeRegistry(long nodeTimeoutMillis, PlacementStrategy placementStrategy) {
         this.nodeTimeoutMillis = nodeTimeoutMillis;
+        this.placementStrategy = placementStrategy;
     }
 
     public String register(String host, int port) {
+        List<DataNodeInfo> replaced = new ArrayList<>();
         String nodeId = UUID.randomUUID().toString();
-        DataNodeInfo info = DataNodeInfo.builder()
-                .nodeId(nodeId)
-                .host(host)
-                .port(port)
-                .lastHeartbeat(System.currentTimeMillis())
-                .active(true)
-                .build();
-        nodesById.put(nodeId, info);
+        synchronized (this) {
+            nodesById.values().removeIf(existing -> {
+                boolean sameAddress = existing.getHost().equals(host) && existing.getPort() == port;
+                if (sameAddress) {
+                    log.info("DataNode {}:{} re-registered, dropping stale id {}", host, port, existing.getNodeId());
+                    replaced.add(existing);
+                }
+                return sameAddress;
+            });
+            DataNodeInfo info = DataNodeInfo.builder()
+                    .nodeId(nodeId)
+                    .host(host)
+                    .port(port)
+                    .lastHeartbeat(System.currentTimeMillis())
+                    .active(true)
+                    .build();
+            nodesById.put(nodeId, info);
+            nodes = List.copyOf(nodesById.values());
+        }
         log.info("DataNode registered: {} {}:{}", nodeId, host, port);
+        replaced.forEach(this::notifyRemoved);
         return nodeId;
     }
 
     public void unregister(String nodeId) {
-        DataNodeInfo removed = nodesById.remove(nodeId);
+        DataNodeInfo removed;
+        synchronized (this) {
+            removed = nodesById.remove(nodeId);
+            nodes = List.copyOf(nodesById.values());
+        }
         if (removed != null) {
             log.info("DataNode unregistered: {}", nodeId);
+            notifyRemoved(removed);
+        }
+    }
+
+    public void expireSilentNodes() {
+        long now = System.currentTimeMillis();
+        for (DataNodeInfo info : nodes) {
+            boolean expired;
+            synchronized (info) {
+                expired = info.isActive() && !isLive(info, now);
+                if (expired) {
+                    info.setActive(false);
+                }
+            }
+            if (expired) {
+                log.warn("DataNode {} {}:{} stopped sending heartbeats",
+                        info.getNodeId(), info.getHost(), info.getPort());
+                notifyRemoved(info);
+            }
         }
     }
 
-    public void heartbeat(String nodeId) {
+    public void addRemovalListener(Consumer<DataNodeInfo> listener) {
+        removalListeners.add(listener);
+    }
+
+    public boolean heartbeat(String nodeId, DataNodeLoad load) {
         DataNodeInfo info = nodesById.get(nodeId);
-        if (info != null) {
+        if (info == null) {
+            return false;
+        }
+        synchronized (info) {
+            if (load != null) {
+                info.setLoad(load);
+            }
             info.setLastHeartbeat(System.currentTimeMillis());
             info.setActive(true);
         }
+        return true;
+    }
+
+    public List<DataNodeInfo> chooseNodesForUpload(long fileSize, int count) {
+        long now = System.currentTimeMillis();
+        List<DataNodeInfo> snapshot = nodes;
+        List<DataNodeInfo> chosen = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Optional<DataNodeInfo> node = placementStrategy.choose(snapshot, candidate -> isLive(candidate, now)
+                    && hasSpaceFor(candidate, fileSize) && !chosen.contains(candidate), fileSize);
+            if (node.isEmpty()) {
+                break;
+            }
+            chosen.add(node.get());
+        }
+        return chosen;
     }
 
-    public Optional<DataNodeInfo> chooseNodeForUpload() {
-        List<DataNodeInfo> activeNodes = getActiveNodes();
-        if (activeNodes.isEmpty()) {
-            return Optional.empty();
+    public Optional<DataNodeInfo> chooseNodeForReplica(long fileSize, Collection<String> excludedAddresses) {
+        long now = System.currentTimeMillis();
+        return placementStrategy.choose(nodes, candidate -> isLive(candidate, now) && hasSpaceFor(candidate, fileSize)
+                && !excludedAddresses.contains(candidate.getHost() + ":" + candidate.getPort()), fileSize);
+    }
+
+    public List<String> orderReplicasForRead(List<String> addresses) {
+        long now = System.currentTimeMillis();
+        List<DataNodeInfo> live = new ArrayList<>(addresses.size());
+        List<String> unavailable = new ArrayList<>();
+        for (String address : addresses) {
+            DataNodeInfo info = findByAddress(address);
+            if (info != null && isLive(info, now)) {
+                live.add(info);
+            } else {
+                unavailable.add(address);
+            }
         }
-        int idx = Math.floorMod(rrIndex.getAndIncrement(), activeNodes.size());
-        return Optional.of(activeNodes.get(idx));
+        List<String> ordered = new ArrayList<>(addresses.size());
+        RandomGenerator random = ThreadLocalRandom.current();
+        while (!live.isEmpty()) {
+            double total = 0;
+            for (DataNodeInfo info : live) {
+                total += readWeight(info);
+            }
+            double point = random.nextDouble(total);
+            int chosen = 0;
+            while (chosen < live.size() - 1 && (point -= readWeight(live.get(chosen))) >= 0) {
+                chosen++;
+            }
+            DataNodeInfo info = live.remove(chosen);
+            ordered.add(info.getHost() + ":" + info.getPort());
+        }
+        ordered.addAll(unavailable);
+        return ordered;
     }
 
     public List<DataNodeInfo> getActiveNodes() {
         long now = System.currentTimeMillis();
         List<DataNodeInfo> list = new ArrayList<>();
-        for (DataNodeInfo info : nodesById.values()) {
-            if (info.isActive() && now - info.getLastHeartbeat() < nodeTimeoutMillis) {
+        for (DataNodeInfo info : nodes) {
+            if (isLive(info, now)) {
                 list.add(info);
             }
         }
         return list;
     }
 
+    private void notifyRemoved(DataNodeInfo node) {
+        removalListeners.forEach(listener -> listener.accept(node));
+    }
+
+    private DataNodeInfo findByAddress(String address) {
+        for (DataNodeInfo info : nodes) {
+            if (address.equals(info.getHost() + ":" + info.getPort())) {
+                return info;
+            }
+        }
+        return null;
+    }
+
+    private boolean isLive(DataNodeInfo info, long now) {
+        return info.isActive() && now - info.getLastHeartbeat() < nodeTimeoutMillis;
+    }
+
+    private static boolean hasSpaceFor(DataNodeInfo info, long fileSize) {
+        DataNodeLoad load = info.getLoad();
+        return load == null || load.getFreeSpaceBytes() >= fileSize;
+    }
+
+    private static double readWeight(DataNodeInfo info) {
+        DataNodeLoad load = info.getLoad();
+        return load == null ? 1.0 : 1.0 / (1 + load.getActiveDownloads() + load.getActiveUploads());
+    }
+
 }
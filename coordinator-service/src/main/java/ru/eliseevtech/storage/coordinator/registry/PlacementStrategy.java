@@ -0,0 +1,13 @@
+package ru.eliseevtech.storage.coordinator.registry;
+
+import ru.eliseevtech.storage.coordinator.model.DataNodeInfo;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+public interface PlacementStrategy {
+
+    Optional<DataNodeInfo> choose(List<DataNodeInfo> nodes, Predicate<DataNodeInfo> eligible, long fileSize);
+
+}
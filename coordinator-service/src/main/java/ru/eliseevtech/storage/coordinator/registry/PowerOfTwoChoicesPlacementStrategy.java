@@ -0,0 +1,74 @@
+package ru.eliseevtech.storage.coordinator.registry;
+
+import ru.eliseevtech.storage.coordinator.model.DataNodeInfo;
+import ru.eliseevtech.storage.coordinator.model.DataNodeLoad;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+
+public class PowerOfTwoChoicesPlacementStrategy implements PlacementStrategy {
+
+    private final Supplier<RandomGenerator> random;
+
+    public PowerOfTwoChoicesPlacementStrategy() {
+        this(ThreadLocalRandom::current);
+    }
+
+    PowerOfTwoChoicesPlacementStrategy(Supplier<RandomGenerator> random) {
+        this.random = random;
+    }
+
+    @Override
+    public Optional<DataNodeInfo> choose(List<DataNodeInfo> nodes, Predicate<DataNodeInfo> eligible, long fileSize) {
+        int size = nodes.size();
+        if (size == 0) {
+            return Optional.empty();
+        }
+        RandomGenerator rnd = random.get();
+        int first = nextEligible(nodes, eligible, rnd.nextInt(size), -1);
+        if (first < 0) {
+            return Optional.empty();
+        }
+        int second = nextEligible(nodes, eligible, rnd.nextInt(size), first);
+        if (second < 0) {
+            return Optional.of(nodes.get(first));
+        }
+        DataNodeInfo a = nodes.get(first);
+        DataNodeInfo b = nodes.get(second);
+        long fallbackRate = Math.max(1, Math.max(writeRate(a), writeRate(b)));
+        return Optional.of(score(b, fileSize, fallbackRate) < score(a, fileSize, fallbackRate) ? b : a);
+    }
+
+    static double score(DataNodeInfo node, long fileSize, long fallbackRate) {
+        DataNodeLoad load = node.getLoad();
+        if (load == null) {
+            return 0;
+        }
+        long rate = writeRate(node);
+        double inFlight = load.getActiveUploads() + 1;
+        double expectedSeconds = inFlight * (fileSize + 1) / (rate > 0 ? rate : fallbackRate);
+        double freeAfter = Math.max(1, load.getFreeSpaceBytes() - fileSize);
+        return expectedSeconds * (1 + fileSize / freeAfter);
+    }
+
+    private static long writeRate(DataNodeInfo node) {
+        DataNodeLoad load = node.getLoad();
+        return load == null || load.getActiveUploads() == 0 ? 0 : load.getWriteBytesPerSecond();
+    }
+
+    private static int nextEligible(List<DataNodeInfo> nodes, Predicate<DataNodeInfo> eligible, int start, int skip) {
+        int size = nodes.size();
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % size;
+            if (index != skip && eligible.test(nodes.get(index))) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,30 @@
+package ru.eliseevtech.storage.coordinator.registry;
+
+import ru.eliseevtech.storage.coordinator.model.DataNodeInfo;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+public class RoundRobinPlacementStrategy implements PlacementStrategy {
+
+    private final AtomicInteger rrIndex = new AtomicInteger(0);
+
+    @Override
+    public Optional<DataNodeInfo> choose(List<DataNodeInfo> nodes, Predicate<DataNodeInfo> eligible, long fileSize) {
+        int size = nodes.size();
+        if (size == 0) {
+            return Optional.empty();
+        }
+        int start = rrIndex.getAndIncrement();
+        for (int i = 0; i < size; i++) {
+            DataNodeInfo node = nodes.get(Math.floorMod(start + i, size));
+            if (eligible.test(node)) {
+                return Optional.of(node);
+            }
+        }
+        return Optional.empty();
+    }
+
+}
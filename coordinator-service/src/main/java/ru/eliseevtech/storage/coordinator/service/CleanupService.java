@@ -1,38 +1,162 @@
 package ru.eliseevtech.storage.coordinator.service;
 
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import ru.eliseevtech.storage.coordinator.client.DataNodeControlClient;
 import ru.eliseevtech.storage.coordinator.config.CoordinatorProperties;
+import ru.eliseevtech.storage.coordinator.model.DataNodeInfo;
 import ru.eliseevtech.storage.coordinator.model.FileMetadata;
-import ru.eliseevtech.storage.coordinator.storage.JsonFileMetadataStore;
+import ru.eliseevtech.storage.coordinator.registry.DataNodeRegistry;
+import ru.eliseevtech.storage.coordinator.storage.MetadataStore;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class CleanupService {
 
-    private final JsonFileMetadataStore metadataStore;
+    private final MetadataStore metadataStore;
+    private final DataNodeRegistry dataNodeRegistry;
     private final CoordinatorProperties properties;
     private final DataNodeControlClient dataNodeControlClient;
+    private final ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Map<String, Long> lastSeen = new ConcurrentHashMap<>();
+    private final long startedAt = System.currentTimeMillis();
+
+    public CleanupService(MetadataStore metadataStore,
+                          DataNodeRegistry dataNodeRegistry,
+                          CoordinatorProperties properties,
+                          DataNodeControlClient dataNodeControlClient) {
+        this.metadataStore = metadataStore;
+        this.dataNodeRegistry = dataNodeRegistry;
+        this.properties = properties;
+        this.dataNodeControlClient = dataNodeControlClient;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(properties.getCleanup().getParallelism(), r -> {
+            Thread thread = new Thread(r, "cleanup-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${coordinator.cleanup.node-expiry-interval-ms:10000}")
+    public void expireSilentNodes() {
+        dataNodeRegistry.expireSilentNodes();
+    }
 
     @Scheduled(fixedDelayString = "${coordinator.cleanup.interval-ms}")
     public void cleanup() {
+        startRound();
+    }
+
+    CompletableFuture<Void> startRound() {
+        if (!running.compareAndSet(false, true)) {
+            log.debug("Previous cleanup round is still running");
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            return deleteExpired().whenComplete((ignored, failure) -> {
+                running.set(false);
+                if (failure != null) {
+                    log.warn("Cleanup round failed", failure);
+                }
+            });
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    private CompletableFuture<Void> deleteExpired() {
         long now = System.currentTimeMillis();
         long deadline = now - properties.getCleanup().getTimeoutMs();
-        for (FileMetadata meta : metadataStore.findUploadingOlderThan(deadline)) {
-            log.info("Cleaning up stale upload: {}", meta.getUploadId());
-            String[] parts = meta.getDataNodeAddress().split(":");
+        List<FileMetadata> expired = metadataStore.findUploadingOlderThan(deadline);
+        if (expired.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        log.info("Cleaning up {} stale uploads", expired.size());
+        Set<String> live = new HashSet<>();
+        for (DataNodeInfo node : dataNodeRegistry.getActiveNodes()) {
+            String address = node.getHost() + ":" + node.getPort();
+            live.add(address);
+            lastSeen.put(address, now);
+        }
+        Set<String> failed = ConcurrentHashMap.newKeySet();
+        Map<String, List<String>> uploadIdsByNode = new LinkedHashMap<>();
+        for (FileMetadata meta : expired) {
+            List<String> addresses = meta.storageAddresses();
+            for (int i = 0; i < addresses.size(); i++) {
+                String address = addresses.get(i);
+                if (live.contains(address)) {
+                    uploadIdsByNode.computeIfAbsent(address, key -> new ArrayList<>()).add(meta.storedUploadId(i));
+                } else if (now - lastSeen.getOrDefault(address, startedAt)
+                        < properties.getCleanup().getLostNodeGraceMs()) {
+                    failed.add(meta.storedUploadId(i));
+                }
+            }
+        }
+        if (!failed.isEmpty()) {
+            log.info("Postponing deletion of {} uploads stored on silent datanodes", failed.size());
+        }
+        int batchSize = properties.getCleanup().getBatchSize();
+        List<CompletableFuture<Void>> deletions = new ArrayList<>();
+        uploadIdsByNode.forEach((address, uploadIds) -> {
+            for (int from = 0; from < uploadIds.size(); from += batchSize) {
+                List<String> batch = uploadIds.subList(from, Math.min(from + batchSize, uploadIds.size()));
+                deletions.add(CompletableFuture.runAsync(() -> {
+                    if (!deleteOnDataNode(address, batch)) {
+                        failed.addAll(batch);
+                    }
+                }, executor));
+            }
+        });
+        return CompletableFuture.allOf(deletions.toArray(CompletableFuture[]::new))
+                .thenRun(() -> deleteMetadata(expired, failed));
+    }
+
+    private void deleteMetadata(List<FileMetadata> expired, Set<String> failed) {
+        List<FileMetadata> deleted = expired.stream()
+                .filter(meta -> IntStream.range(0, meta.storageAddresses().size())
+                        .noneMatch(i -> failed.contains(meta.storedUploadId(i))))
+                .toList();
+        if (deleted.size() < expired.size()) {
+            log.warn("Keeping metadata of {} uploads until their data is deleted", expired.size() - deleted.size());
+        }
+        if (!deleted.isEmpty()) {
+            metadataStore.deleteAll(deleted);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private boolean deleteOnDataNode(String address, List<String> uploadIds) {
+        try {
+            String[] parts = address.split(":");
             String host = parts[0];
             int port = Integer.parseInt(parts[1]);
-            try {
-                dataNodeControlClient.deleteUpload(host, port, meta.getUploadId());
-            } catch (Exception e) {
-                log.warn("Failed to delete upload {} on datanode", meta.getUploadId(), e);
-            }
-            metadataStore.delete(meta);
+            dataNodeControlClient.deleteUploads(host, port, uploadIds);
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to delete {} uploads on datanode {}", uploadIds.size(), address, e);
+            return false;
         }
     }
 
@@ -3,6 +3,8 @@ package ru.eliseevtech.storage.coordinator.service;
 import lombok.Builder;
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 @Builder
 public class DownloadInitResult {
@@ -10,5 +12,9 @@ public class DownloadInitResult {
     private String uploadId;
     private String dataNodeAddress;
     private long fileSize;
+    private Integer chunkSize;
+    private Integer compositeCrc32c;
+    private List<String> replicaAddresses;
+    private StripeInfo stripe;
 
 }
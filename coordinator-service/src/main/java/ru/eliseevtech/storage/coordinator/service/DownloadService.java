@@ -4,13 +4,17 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import ru.eliseevtech.storage.coordinator.model.FileMetadata;
 import ru.eliseevtech.storage.coordinator.model.FileStatus;
-import ru.eliseevtech.storage.coordinator.storage.JsonFileMetadataStore;
+import ru.eliseevtech.storage.coordinator.registry.DataNodeRegistry;
+import ru.eliseevtech.storage.coordinator.storage.MetadataStore;
+
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 public class DownloadService {
 
-    private final JsonFileMetadataStore metadataStore;
+    private final MetadataStore metadataStore;
+    private final DataNodeRegistry dataNodeRegistry;
 
     public DownloadInitResult initiateDownload(String filePath) {
         FileMetadata meta = metadataStore.findByFilePath(filePath)
@@ -20,10 +24,25 @@ public class DownloadService {
             throw new IllegalStateException("File is not finalized");
         }
 
+        if (meta.erasureCoded()) {
+            return DownloadInitResult.builder()
+                    .uploadId(meta.getUploadId())
+                    .dataNodeAddress(meta.getDataNodeAddress())
+                    .replicaAddresses(List.of())
+                    .fileSize(meta.getFileSize())
+                    .chunkSize(meta.getChunkSize())
+                    .stripe(StripeInfo.of(meta))
+                    .build();
+        }
+
+        List<String> replicas = dataNodeRegistry.orderReplicasForRead(meta.replicas());
         return DownloadInitResult.builder()
                 .uploadId(meta.getUploadId())
-                .dataNodeAddress(meta.getDataNodeAddress())
+                .dataNodeAddress(replicas.get(0))
+                .replicaAddresses(replicas)
                 .fileSize(meta.getFileSize())
+                .chunkSize(meta.getChunkSize())
+                .compositeCrc32c(meta.getCompositeCrc32c())
                 .build();
     }
 
@@ -3,6 +3,9 @@ package ru.eliseevtech.storage.coordinator.service;
 import lombok.Builder;
 import lombok.Data;
 
+import java.util.BitSet;
+import java.util.List;
+
 @Data
 @Builder
 public class InitiateUploadResult {
@@ -13,5 +16,8 @@ public class InitiateUploadResult {
     private boolean resumed;
     private int lastChunkIndex;
     private long bytesUploaded;
+    private BitSet chunkBitmap;
+    private List<String> pipelineAddresses;
+    private StripeInfo stripe;
 
 }
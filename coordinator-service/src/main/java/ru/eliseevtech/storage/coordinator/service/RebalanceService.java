@@ -0,0 +1,314 @@
+package ru.eliseevtech.storage.coordinator.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.eliseevtech.storage.coordinator.client.DataNodeControlClient;
+import ru.eliseevtech.storage.coordinator.config.CoordinatorProperties;
+import ru.eliseevtech.storage.coordinator.model.DataNodeInfo;
+import ru.eliseevtech.storage.coordinator.model.FileMetadata;
+import ru.eliseevtech.storage.coordinator.model.FileStatus;
+import ru.eliseevtech.storage.coordinator.registry.DataNodeRegistry;
+import ru.eliseevtech.storage.coordinator.storage.MetadataStore;
+import ru.eliseevtech.storage.datanode.proto.GetUploadStatsResponse;
+import ru.eliseevtech.storage.datanode.proto.ReplicateUploadResponse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+@Slf4j
+@Service
+public class RebalanceService {
+
+    private final MetadataStore metadataStore;
+    private final DataNodeRegistry dataNodeRegistry;
+    private final CoordinatorProperties properties;
+    private final DataNodeControlClient dataNodeControlClient;
+    private final ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Map<String, Long> lastSeen = new ConcurrentHashMap<>();
+    private final long startedAt = System.currentTimeMillis();
+
+    public RebalanceService(MetadataStore metadataStore,
+                            DataNodeRegistry dataNodeRegistry,
+                            CoordinatorProperties properties,
+                            DataNodeControlClient dataNodeControlClient) {
+        this.metadataStore = metadataStore;
+        this.dataNodeRegistry = dataNodeRegistry;
+        this.properties = properties;
+        this.dataNodeControlClient = dataNodeControlClient;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(properties.getRebalance().getMaxConcurrentCopies(), r -> {
+            Thread thread = new Thread(r, "rebalance-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${coordinator.rebalance.interval-ms}")
+    public void rebalance() {
+        if (properties.getRebalance().isEnabled()) {
+            startRound();
+        }
+    }
+
+    CompletableFuture<Void> startRound() {
+        if (!running.compareAndSet(false, true)) {
+            log.debug("Previous rebalance round is still running");
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            Round round = plan(metadataStore::streamAll, dataNodeRegistry.getActiveNodes());
+            if (!round.copies().isEmpty()) {
+                log.info("Rebalancing: {} copy tasks", round.copies().size());
+            }
+            List<CompletableFuture<Void>> copies = new ArrayList<>();
+            for (CopyTask task : round.copies()) {
+                copies.add(CompletableFuture.runAsync(() -> execute(task), executor));
+            }
+            for (StaleReplica stale : round.purges()) {
+                copies.add(CompletableFuture.runAsync(() -> purgeStale(stale.uploadId(), stale.address()), executor));
+            }
+            return CompletableFuture.allOf(copies.toArray(CompletableFuture[]::new))
+                    .whenComplete((ignored, failure) -> running.set(false));
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    Round plan(Supplier<Stream<FileMetadata>> files, List<DataNodeInfo> liveNodes) {
+        CoordinatorProperties.RebalanceProperties rebalance = properties.getRebalance();
+        int maxTasks = rebalance.getMaxTasksPerRound();
+        long now = System.currentTimeMillis();
+        Map<String, Long> bytesByNode = new LinkedHashMap<>();
+        for (DataNodeInfo node : liveNodes) {
+            String address = address(node);
+            bytesByNode.put(address, 0L);
+            lastSeen.put(address, now);
+        }
+        Predicate<String> lost = address -> !bytesByNode.containsKey(address)
+                && now - lastSeen.getOrDefault(address, startedAt) >= rebalance.getLostReplicaGraceMs();
+        List<CopyTask> tasks = new ArrayList<>();
+        List<StaleReplica> purges = new ArrayList<>();
+        Set<String> planned = new HashSet<>();
+        try (Stream<FileMetadata> all = files.get()) {
+            all.forEach(meta -> {
+                for (String stale : meta.staleReplicas()) {
+                    if (bytesByNode.containsKey(stale) && purges.size() < maxTasks) {
+                        purges.add(new StaleReplica(meta.getUploadId(), stale));
+                    }
+                }
+                if (meta.getStatus() != FileStatus.FINALIZED) {
+                    return;
+                }
+                if (meta.erasureCoded()) {
+                    if (meta.getShardAddresses().stream().anyMatch(lost)) {
+                        log.warn("Erasure-coded file {} has shards on lost nodes, "
+                                + "shard reconstruction is not supported", meta.getFilePath());
+                    }
+                    return;
+                }
+                for (String replica : meta.replicas()) {
+                    bytesByNode.computeIfPresent(replica, (address, bytes) -> bytes + meta.getFileSize());
+                }
+                if (tasks.size() < maxTasks) {
+                    repair(meta, lost, bytesByNode).ifPresent(task -> {
+                        tasks.add(task);
+                        planned.add(meta.getUploadId());
+                    });
+                }
+            });
+        }
+        if (bytesByNode.size() >= 2 && tasks.size() < maxTasks && skewed(bytesByNode)) {
+            try (Stream<FileMetadata> all = files.get()) {
+                all.filter(meta -> meta.getStatus() == FileStatus.FINALIZED && !meta.erasureCoded())
+                        .takeWhile(meta -> tasks.size() < maxTasks && skewed(bytesByNode))
+                        .forEach(meta -> move(meta, bytesByNode, planned).ifPresent(task -> {
+                            tasks.add(task);
+                            planned.add(meta.getUploadId());
+                        }));
+            }
+        }
+        return new Round(tasks, purges);
+    }
+
+    private Optional<CopyTask> repair(FileMetadata meta, Predicate<String> lost, Map<String, Long> bytesByNode) {
+        if (meta.replicas().stream().filter(lost.negate()).count() >= properties.getReplicationFactor()) {
+            return Optional.empty();
+        }
+        List<String> liveReplicas = meta.replicas().stream().filter(bytesByNode::containsKey).toList();
+        if (liveReplicas.isEmpty()) {
+            log.warn("No live replica of {} is left", meta.getFilePath());
+            return Optional.empty();
+        }
+        List<String> excluded = new ArrayList<>(meta.replicas());
+        excluded.addAll(meta.staleReplicas());
+        Optional<DataNodeInfo> target = dataNodeRegistry.chooseNodeForReplica(meta.getFileSize(), excluded);
+        if (target.isEmpty()) {
+            log.debug("No node can take another replica of {}", meta.getFilePath());
+            return Optional.empty();
+        }
+        String source = dataNodeRegistry.orderReplicasForRead(liveReplicas).get(0);
+        String targetAddress = address(target.get());
+        String replaced = meta.replicas().stream().filter(lost).findFirst().orElse(null);
+        bytesByNode.merge(targetAddress, meta.getFileSize(), Long::sum);
+        return Optional.of(new CopyTask(meta, source, targetAddress, replaced, false));
+    }
+
+    private Optional<CopyTask> move(FileMetadata meta, Map<String, Long> bytesByNode, Set<String> planned) {
+        String donor = Collections.max(bytesByNode.entrySet(), Map.Entry.comparingByValue()).getKey();
+        String receiver = Collections.min(bytesByNode.entrySet(), Map.Entry.comparingByValue()).getKey();
+        long donorBytes = bytesByNode.get(donor);
+        long receiverBytes = bytesByNode.get(receiver);
+        if (planned.contains(meta.getUploadId()) || !meta.replicas().contains(donor)
+                || meta.replicas().contains(receiver) || meta.staleReplicas().contains(receiver)
+                || meta.getFileSize() <= 0 || meta.getFileSize() > (donorBytes - receiverBytes) / 2) {
+            return Optional.empty();
+        }
+        bytesByNode.put(donor, donorBytes - meta.getFileSize());
+        bytesByNode.put(receiver, receiverBytes + meta.getFileSize());
+        return Optional.of(new CopyTask(meta, donor, receiver, donor, true));
+    }
+
+    private boolean skewed(Map<String, Long> bytesByNode) {
+        long total = bytesByNode.values().stream().mapToLong(Long::longValue).sum();
+        double mean = (double) total / bytesByNode.size();
+        double threshold = properties.getRebalance().getSkewThreshold();
+        return Collections.max(bytesByNode.values()) > mean * (1 + threshold)
+                && Collections.min(bytesByNode.values()) < mean * (1 - threshold);
+    }
+
+    private void execute(CopyTask task) {
+        FileMetadata meta = task.metadata();
+        String uploadId = meta.getUploadId();
+        long rate = properties.getRebalance().getBandwidthBytesPerSecond()
+                / properties.getRebalance().getMaxConcurrentCopies();
+        long timeoutMs = properties.getDatanodeClient().getDeadlineMs()
+                + (rate > 0 ? meta.getFileSize() * 2000 / rate : 0);
+        try {
+            String[] source = task.source().split(":");
+            ReplicateUploadResponse response = dataNodeControlClient.replicateUpload(source[0],
+                    Integer.parseInt(source[1]), uploadId, task.target(), rate, timeoutMs);
+            if (!response.getSuccess()) {
+                throw new IllegalStateException(response.getErrorMessage());
+            }
+            String[] target = task.target().split(":");
+            GetUploadStatsResponse stats = dataNodeControlClient.getUploadStats(target[0],
+                    Integer.parseInt(target[1]), uploadId);
+            if (stats.getBytesWritten() != meta.getFileSize()) {
+                throw new IllegalStateException("Replica has " + stats.getBytesWritten() + " of "
+                        + meta.getFileSize() + " bytes");
+            }
+            if (meta.getCompositeCrc32c() != null
+                    && (!stats.hasCompositeCrc32C() || stats.getCompositeCrc32C() != meta.getCompositeCrc32c())) {
+                throw new IllegalStateException("Replica checksum does not match metadata");
+            }
+        } catch (Exception e) {
+            log.warn("Copy of {} from {} to {} failed", uploadId, task.source(), task.target(), e);
+            deleteQuietly(task.target(), uploadId);
+            return;
+        }
+        if (!commit(task)) {
+            deleteQuietly(task.target(), uploadId);
+            return;
+        }
+        log.info("Replica of {} copied from {} to {}", meta.getFilePath(), task.source(), task.target());
+        if (task.deleteReplaced()) {
+            deleteQuietly(task.replaced(), uploadId);
+        }
+    }
+
+    private synchronized boolean commit(CopyTask task) {
+        Optional<FileMetadata> current = metadataStore.findByUploadId(task.metadata().getUploadId());
+        if (current.isEmpty() || current.get().getStatus() != FileStatus.FINALIZED
+                || !current.get().replicas().equals(task.metadata().replicas())) {
+            log.info("Metadata of {} changed during copy, discarding new replica", task.metadata().getUploadId());
+            return false;
+        }
+        List<String> replicas = new ArrayList<>(current.get().replicas());
+        List<String> stale = new ArrayList<>(current.get().staleReplicas());
+        if (task.replaced() != null) {
+            replicas.set(replicas.indexOf(task.replaced()), task.target());
+            if (!task.deleteReplaced()) {
+                stale.add(task.replaced());
+            }
+        } else {
+            replicas.add(task.target());
+        }
+        metadataStore.save(current.get().toBuilder()
+                .dataNodeAddress(replicas.get(0))
+                .replicaAddresses(List.copyOf(replicas))
+                .staleReplicaAddresses(stale.isEmpty() ? null : List.copyOf(stale))
+                .build());
+        return true;
+    }
+
+    private void purgeStale(String uploadId, String address) {
+        Optional<FileMetadata> meta = metadataStore.findByUploadId(uploadId);
+        if (meta.isEmpty() || !meta.get().staleReplicas().contains(address)) {
+            return;
+        }
+        if (!meta.get().replicas().contains(address) && !deleteQuietly(address, uploadId)) {
+            return;
+        }
+        synchronized (this) {
+            Optional<FileMetadata> current = metadataStore.findByUploadId(uploadId);
+            if (current.isEmpty() || !current.get().staleReplicas().contains(address)) {
+                return;
+            }
+            List<String> stale = new ArrayList<>(current.get().staleReplicas());
+            stale.remove(address);
+            metadataStore.save(current.get().toBuilder()
+                    .staleReplicaAddresses(stale.isEmpty() ? null : List.copyOf(stale))
+                    .build());
+        }
+        log.info("Stale replica of {} removed from returned datanode {}", uploadId, address);
+    }
+
+    private boolean deleteQuietly(String address, String uploadId) {
+        try {
+            String[] parts = address.split(":");
+            dataNodeControlClient.deleteUpload(parts[0], Integer.parseInt(parts[1]), uploadId);
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to delete upload {} on datanode {}", uploadId, address, e);
+            return false;
+        }
+    }
+
+    private static String address(DataNodeInfo node) {
+        return node.getHost() + ":" + node.getPort();
+    }
+
+    record CopyTask(FileMetadata metadata, String source, String target, String replaced, boolean deleteReplaced) {
+    }
+
+    record StaleReplica(String uploadId, String address) {
+    }
+
+    record Round(List<CopyTask> copies, List<StaleReplica> purges) {
+    }
+
+}
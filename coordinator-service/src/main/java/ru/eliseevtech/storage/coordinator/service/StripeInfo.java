@@ -0,0 +1,35 @@
+package ru.eliseevtech.storage.coordinator.service;
+
+import lombok.Builder;
+import lombok.Data;
+import ru.eliseevtech.storage.coordinator.model.FileMetadata;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+@Data
+@Builder
+public class StripeInfo {
+
+    private int dataShards;
+    private int parityShards;
+    private int cellSize;
+    private List<String> shardAddresses;
+    private List<String> shardUploadIds;
+
+    public static StripeInfo of(FileMetadata meta) {
+        if (!meta.erasureCoded()) {
+            return null;
+        }
+        return StripeInfo.builder()
+                .dataShards(meta.getDataShards())
+                .parityShards(meta.getParityShards())
+                .cellSize(meta.getChunkSize())
+                .shardAddresses(meta.getShardAddresses())
+                .shardUploadIds(IntStream.range(0, meta.getShardAddresses().size())
+                        .mapToObj(meta::storedUploadId)
+                        .toList())
+                .build();
+    }
+
+}
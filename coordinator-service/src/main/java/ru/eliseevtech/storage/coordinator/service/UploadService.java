@@ -1,25 +1,31 @@
 package ru.eliseevtech.storage.coordinator.service;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import ru.eliseevtech.storage.coordinator.client.DataNodeControlClient;
 import ru.eliseevtech.storage.coordinator.config.CoordinatorProperties;
-import ru.eliseevtech.storage.coordinator.model.DataNodeInfo;
 import ru.eliseevtech.storage.coordinator.model.FileMetadata;
 import ru.eliseevtech.storage.coordinator.model.FileStatus;
 import ru.eliseevtech.storage.coordinator.registry.DataNodeRegistry;
-import ru.eliseevtech.storage.coordinator.storage.JsonFileMetadataStore;
+import ru.eliseevtech.storage.coordinator.storage.MetadataStore;
 import ru.eliseevtech.storage.datanode.proto.GetUploadStatsResponse;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class UploadService {
 
-    private final JsonFileMetadataStore metadataStore;
+    private final MetadataStore metadataStore;
     private final DataNodeRegistry dataNodeRegistry;
     private final CoordinatorProperties properties;
     private final DataNodeControlClient dataNodeControlClient;
@@ -29,13 +35,23 @@ public class UploadService {
         if (resume && existing.isPresent()
                 && existing.get().getStatus() == FileStatus.UPLOADING) {
             FileMetadata meta = existing.get();
+            List<String> addresses = meta.storageAddresses();
+            List<GetUploadStatsResponse> allStats = fetchStats(meta);
+            GetUploadStatsResponse stats = allStats.get(0);
+            BitSet storedEverywhere = BitSet.valueOf(stats.getChunkBitmap().asReadOnlyByteBuffer());
+            for (int i = 1; i < addresses.size(); i++) {
+                storedEverywhere.and(BitSet.valueOf(allStats.get(i).getChunkBitmap().asReadOnlyByteBuffer()));
+            }
             return InitiateUploadResult.builder()
                     .uploadId(meta.getUploadId())
-                    .dataNodeAddress(meta.getDataNodeAddress())
-                    .chunkSize(properties.getChunkSize())
+                    .dataNodeAddress(addresses.get(0))
+                    .pipelineAddresses(meta.erasureCoded() ? List.of() : addresses.subList(1, addresses.size()))
+                    .chunkSize(meta.erasureCoded() ? meta.getChunkSize() : properties.getChunkSize())
                     .resumed(true)
-                    .lastChunkIndex(meta.getLastChunkIndex())
-                    .bytesUploaded(meta.getBytesUploaded())
+                    .lastChunkIndex(stats.getChunksCount() - 1)
+                    .bytesUploaded(stats.getBytesWritten())
+                    .chunkBitmap(storedEverywhere)
+                    .stripe(StripeInfo.of(meta))
                     .build();
         }
 
@@ -43,8 +59,24 @@ public class UploadService {
             throw new IllegalStateException("File already exists and finalized for path: " + filePath);
         }
 
-        DataNodeInfo node = dataNodeRegistry.chooseNodeForUpload()
-                .orElseThrow(() -> new IllegalStateException("No available data nodes"));
+        CoordinatorProperties.ErasureCodingProperties erasureCoding = properties.getErasureCoding();
+        if (erasureCoding.isEnabled() && fileSize >= erasureCoding.getMinFileSizeBytes()) {
+            Optional<InitiateUploadResult> striped = initiateStripedUpload(filePath, fileSize, erasureCoding);
+            if (striped.isPresent()) {
+                return striped.get();
+            }
+        }
+
+        int replicationFactor = properties.getReplicationFactor();
+        List<String> replicas = dataNodeRegistry.chooseNodesForUpload(fileSize, replicationFactor).stream()
+                .map(node -> node.getHost() + ":" + node.getPort())
+                .toList();
+        if (replicas.isEmpty()) {
+            throw new IllegalStateException("No available data nodes");
+        }
+        if (replicas.size() < replicationFactor) {
+            log.warn("Only {} of {} replicas available for {}", replicas.size(), replicationFactor, filePath);
+        }
 
         String uploadId = UUID.randomUUID().toString();
         long now = Instant.now().toEpochMilli();
@@ -52,7 +84,8 @@ public class UploadService {
         FileMetadata meta = FileMetadata.builder()
                 .filePath(filePath)
                 .uploadId(uploadId)
-                .dataNodeAddress(node.getHost() + ":" + node.getPort())
+                .dataNodeAddress(replicas.get(0))
+                .replicaAddresses(replicas)
                 .status(FileStatus.UPLOADING)
                 .fileSize(fileSize)
                 .createdAt(now)
@@ -64,11 +97,58 @@ public class UploadService {
         return InitiateUploadResult.builder()
                 .uploadId(uploadId)
                 .dataNodeAddress(meta.getDataNodeAddress())
+                .pipelineAddresses(replicas.subList(1, replicas.size()))
                 .chunkSize(properties.getChunkSize())
                 .resumed(false)
                 .lastChunkIndex(-1)
                 .bytesUploaded(0L)
+                .chunkBitmap(new BitSet())
+                .build();
+    }
+
+    private Optional<InitiateUploadResult> initiateStripedUpload(String filePath, long fileSize,
+                                                                 CoordinatorProperties.ErasureCodingProperties erasureCoding) {
+        int dataShards = erasureCoding.getDataShards();
+        int shardCount = dataShards + erasureCoding.getParityShards();
+        int cellSize = properties.getChunkSize();
+        long stripeSize = (long) dataShards * cellSize;
+        long shardSize = (fileSize + stripeSize - 1) / stripeSize * cellSize;
+        List<String> shards = dataNodeRegistry.chooseNodesForUpload(shardSize, shardCount).stream()
+                .map(node -> node.getHost() + ":" + node.getPort())
+                .toList();
+        if (shards.size() < shardCount) {
+            log.warn("Only {} of {} nodes available for shards of {}, falling back to replication",
+                    shards.size(), shardCount, filePath);
+            return Optional.empty();
+        }
+
+        FileMetadata meta = FileMetadata.builder()
+                .filePath(filePath)
+                .uploadId(UUID.randomUUID().toString())
+                .dataNodeAddress(shards.get(0))
+                .status(FileStatus.UPLOADING)
+                .fileSize(fileSize)
+                .createdAt(Instant.now().toEpochMilli())
+                .lastChunkIndex(-1)
+                .bytesUploaded(0L)
+                .chunkSize(cellSize)
+                .dataShards(dataShards)
+                .parityShards(erasureCoding.getParityShards())
+                .shardAddresses(shards)
                 .build();
+        metadataStore.save(meta);
+
+        return Optional.of(InitiateUploadResult.builder()
+                .uploadId(meta.getUploadId())
+                .dataNodeAddress(meta.getDataNodeAddress())
+                .pipelineAddresses(List.of())
+                .chunkSize(cellSize)
+                .resumed(false)
+                .lastChunkIndex(-1)
+                .bytesUploaded(0L)
+                .chunkBitmap(new BitSet())
+                .stripe(StripeInfo.of(meta))
+                .build());
     }
 
     public void updateUploadProgress(String uploadId, int lastChunkIndex, long bytesUploaded) {
@@ -86,22 +166,60 @@ public class UploadService {
         if (!meta.getFilePath().equals(filePath)) {
             throw new IllegalArgumentException("File path mismatch");
         }
+        if (meta.erasureCoded()) {
+            finalizeStripedUpload(meta);
+            return;
+        }
 
-        String[] parts = meta.getDataNodeAddress().split(":");
-        String host = parts[0];
-        int port = Integer.parseInt(parts[1]);
-
-        GetUploadStatsResponse stats = dataNodeControlClient.getUploadStats(host, port, uploadId);
-
-        if (stats.getBytesWritten() != meta.getFileSize()) {
-            throw new IllegalStateException("File size mismatch: expected " +
-                    meta.getFileSize() + ", actual " + stats.getBytesWritten());
+        List<String> replicas = meta.replicas();
+        List<GetUploadStatsResponse> allStats = fetchStats(meta);
+        GetUploadStatsResponse stats = null;
+        Integer compositeCrc32c = null;
+        for (int i = 0; i < replicas.size(); i++) {
+            String replica = replicas.get(i);
+            GetUploadStatsResponse replicaStats = allStats.get(i);
+            if (replicaStats.getBytesWritten() != meta.getFileSize()) {
+                throw new IllegalStateException("File size mismatch on " + replica + ": expected " +
+                        meta.getFileSize() + ", actual " + replicaStats.getBytesWritten());
+            }
+            if (replicaStats.hasCompositeCrc32C()) {
+                if (compositeCrc32c != null && compositeCrc32c != replicaStats.getCompositeCrc32C()) {
+                    throw new IllegalStateException("Checksum mismatch between replicas of " + uploadId);
+                }
+                compositeCrc32c = replicaStats.getCompositeCrc32C();
+            }
+            if (stats == null) {
+                stats = replicaStats;
+            }
         }
 
         meta.setStatus(FileStatus.FINALIZED);
         meta.setFinalizedAt(Instant.now().toEpochMilli());
         meta.setLastChunkIndex(stats.getChunksCount() - 1);
         meta.setBytesUploaded(stats.getBytesWritten());
+        if (compositeCrc32c != null) {
+            meta.setChunkSize(stats.getChunkSize());
+            meta.setCompositeCrc32c(compositeCrc32c);
+        }
+        metadataStore.save(meta);
+    }
+
+    private void finalizeStripedUpload(FileMetadata meta) {
+        List<String> shards = meta.getShardAddresses();
+        long shardSize = meta.shardSize();
+        List<GetUploadStatsResponse> allStats = fetchStats(meta);
+        for (int i = 0; i < shards.size(); i++) {
+            GetUploadStatsResponse shardStats = allStats.get(i);
+            if (shardStats.getBytesWritten() != shardSize) {
+                throw new IllegalStateException("Shard " + i + " size mismatch on " + shards.get(i) + ": expected "
+                        + shardSize + ", actual " + shardStats.getBytesWritten());
+            }
+        }
+
+        meta.setStatus(FileStatus.FINALIZED);
+        meta.setFinalizedAt(Instant.now().toEpochMilli());
+        meta.setLastChunkIndex((int) (shardSize / meta.getChunkSize()) - 1);
+        meta.setBytesUploaded(meta.getFileSize());
         metadataStore.save(meta);
     }
 
@@ -116,4 +234,28 @@ public class UploadService {
                 .build();
     }
 
+    private List<GetUploadStatsResponse> fetchStats(FileMetadata meta) {
+        List<String> addresses = meta.storageAddresses();
+        Map<String, List<Integer>> indexesByNode = new LinkedHashMap<>();
+        for (int i = 0; i < addresses.size(); i++) {
+            indexesByNode.computeIfAbsent(addresses.get(i), address -> new ArrayList<>()).add(i);
+        }
+        GetUploadStatsResponse[] stats = new GetUploadStatsResponse[addresses.size()];
+        indexesByNode.forEach((address, indexes) -> {
+            String[] parts = address.split(":");
+            String host = parts[0];
+            int port = Integer.parseInt(parts[1]);
+            List<GetUploadStatsResponse> batch = dataNodeControlClient.getUploadStatsBatch(host, port,
+                    indexes.stream().map(meta::storedUploadId).toList());
+            if (batch.size() != indexes.size()) {
+                throw new IllegalStateException("DataNode " + address + " returned " + batch.size() + " of "
+                        + indexes.size() + " upload stats");
+            }
+            for (int j = 0; j < indexes.size(); j++) {
+                stats[indexes.get(j)] = batch.get(j);
+            }
+        });
+        return List.of(stats);
+    }
+
 }
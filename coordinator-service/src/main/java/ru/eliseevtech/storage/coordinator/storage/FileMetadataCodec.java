@@ -0,0 +1,154 @@
+package ru.eliseevtech.storage.coordinator.storage;
+
+import ru.eliseevtech.storage.coordinator.model.FileMetadata;
+import ru.eliseevtech.storage.coordinator.model.FileStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+final class FileMetadataCodec {
+
+    static final int VERSION = 1;
+
+    private static final FileStatus[] STATUSES = FileStatus.values();
+
+    private FileMetadataCodec() {
+    }
+
+    static byte[] toBytes(FileMetadata meta) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            write(new DataOutputStream(bytes), meta);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static FileMetadata fromBytes(byte[] bytes) {
+        return fromBytes(bytes, 0, bytes.length);
+    }
+
+    static FileMetadata fromBytes(byte[] bytes, int offset, int length) {
+        try {
+            return read(new DataInputStream(new ByteArrayInputStream(bytes, offset, length)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void write(DataOutput out, FileMetadata meta) throws IOException {
+        out.writeByte(VERSION);
+        writeString(out, meta.getFilePath());
+        writeString(out, meta.getUploadId());
+        writeString(out, meta.getDataNodeAddress());
+        out.writeByte(meta.getStatus() == null ? -1 : meta.getStatus().ordinal());
+        out.writeLong(meta.getFileSize());
+        out.writeLong(meta.getCreatedAt());
+        out.writeBoolean(meta.getFinalizedAt() != null);
+        if (meta.getFinalizedAt() != null) {
+            out.writeLong(meta.getFinalizedAt());
+        }
+        out.writeInt(meta.getLastChunkIndex());
+        out.writeLong(meta.getBytesUploaded());
+        writeInteger(out, meta.getChunkSize());
+        writeInteger(out, meta.getCompositeCrc32c());
+        writeStrings(out, meta.getReplicaAddresses());
+        writeInteger(out, meta.getDataShards());
+        writeInteger(out, meta.getParityShards());
+        writeStrings(out, meta.getShardAddresses());
+        writeStrings(out, meta.getStaleReplicaAddresses());
+    }
+
+    static FileMetadata read(DataInput in) throws IOException {
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported metadata record version " + version);
+        }
+        FileMetadata meta = new FileMetadata();
+        meta.setFilePath(readString(in));
+        meta.setUploadId(readString(in));
+        meta.setDataNodeAddress(readString(in));
+        byte status = in.readByte();
+        meta.setStatus(status < 0 ? null : STATUSES[status]);
+        meta.setFileSize(in.readLong());
+        meta.setCreatedAt(in.readLong());
+        if (in.readBoolean()) {
+            meta.setFinalizedAt(in.readLong());
+        }
+        meta.setLastChunkIndex(in.readInt());
+        meta.setBytesUploaded(in.readLong());
+        meta.setChunkSize(readInteger(in));
+        meta.setCompositeCrc32c(readInteger(in));
+        meta.setReplicaAddresses(readStrings(in));
+        meta.setDataShards(readInteger(in));
+        meta.setParityShards(readInteger(in));
+        meta.setShardAddresses(readStrings(in));
+        meta.setStaleReplicaAddresses(readStrings(in));
+        return meta;
+    }
+
+    private static void writeInteger(DataOutput out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeStrings(DataOutput out, List<String> values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readStrings(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
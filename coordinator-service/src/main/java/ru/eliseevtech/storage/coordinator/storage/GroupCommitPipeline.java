@@ -0,0 +1,129 @@
+package ru.eliseevtech.storage.coordinator.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
+final class GroupCommitPipeline<T> implements Closeable {
+
+    private final BlockingQueue<Pending<T>> queue = new LinkedBlockingQueue<>();
+    private final int maxBatchSize;
+    private final BatchHandler<T> handler;
+    private final Thread writer;
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong mutations = new AtomicLong();
+
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    GroupCommitPipeline(String name, int maxBatchSize, BatchHandler<T> handler) {
+        this.maxBatchSize = maxBatchSize;
+        this.handler = handler;
+        this.writer = new Thread(this::run, name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    CompletableFuture<Void> submit(T item) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else if (closed) {
+                future.completeExceptionally(new IllegalStateException("Commit pipeline is closed"));
+            } else {
+                queue.add(new Pending<>(item, future));
+            }
+        }
+        return future;
+    }
+
+    static void await(CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Failed to persist metadata", e.getCause());
+        }
+    }
+
+    long flushCount() {
+        return flushes.get();
+    }
+
+    long mutationCount() {
+        return mutations.get();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Pending<T>> batch = new ArrayList<>(maxBatchSize);
+        List<T> items = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            Pending<T> first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, maxBatchSize - 1);
+            for (Pending<T> pending : batch) {
+                items.add(pending.item());
+            }
+            try {
+                if (failure != null) {
+                    throw failure;
+                }
+                handler.flush(items);
+                flushes.incrementAndGet();
+                mutations.addAndGet(items.size());
+                for (Pending<T> pending : batch) {
+                    pending.future().complete(null);
+                }
+            } catch (Throwable e) {
+                if (failure == null) {
+                    log.error("Metadata commit failed, rejecting further mutations", e);
+                    failure = e;
+                }
+                for (Pending<T> pending : batch) {
+                    pending.future().completeExceptionally(e);
+                }
+            }
+            batch.clear();
+            items.clear();
+        }
+    }
+
+    @FunctionalInterface
+    interface BatchHandler<T> {
+        void flush(List<T> batch) throws Exception;
+    }
+
+    private record Pending<T>(T item, CompletableFuture<Void> future) {
+    }
+
+}
@@ -9,23 +9,20 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Slf4j
-public class JsonFileMetadataStore {
+public class JsonFileMetadataStore implements MetadataStore {
 
     private final Path storePath;
     private final ObjectMapper objectMapper;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object persistLock = new Object();
 
-    private final Map<String, FileMetadata> byFilePath = new HashMap<>();
-    private final Map<String, FileMetadata> byUploadId = new HashMap<>();
+    private final MetadataIndex index = new MetadataIndex();
 
     public JsonFileMetadataStore(Path storePath, ObjectMapper objectMapper) {
         this.storePath = storePath;
@@ -33,74 +30,50 @@ public class JsonFileMetadataStore {
         loadFromDisk();
     }
 
+    @Override
     public Optional<FileMetadata> findByFilePath(String filePath) {
-        lock.readLock().lock();
-        try {
-            return Optional.ofNullable(byFilePath.get(filePath));
-        } finally {
-            lock.readLock().unlock();
-        }
+        return index.findByFilePath(filePath);
     }
 
+    @Override
     public Optional<FileMetadata> findByUploadId(String uploadId) {
-        lock.readLock().lock();
-        try {
-            return Optional.ofNullable(byUploadId.get(uploadId));
-        } finally {
-            lock.readLock().unlock();
-        }
+        return index.findByUploadId(uploadId);
     }
 
+    @Override
     public void save(FileMetadata metadata) {
-        lock.writeLock().lock();
-        try {
-            byFilePath.put(metadata.getFilePath(), metadata);
-            byUploadId.put(metadata.getUploadId(), metadata);
-            persist();
-        } finally {
-            lock.writeLock().unlock();
-        }
+        index.put(metadata);
+        persist();
     }
 
+    @Override
     public void delete(FileMetadata metadata) {
-        lock.writeLock().lock();
-        try {
-            byFilePath.remove(metadata.getFilePath());
-            byUploadId.remove(metadata.getUploadId());
-            persist();
-        } finally {
-            lock.writeLock().unlock();
-        }
+        index.remove(metadata);
+        persist();
     }
 
+    @Override
+    public void deleteAll(Collection<FileMetadata> metadata) {
+        metadata.forEach(index::remove);
+        persist();
+    }
+
+    @Override
     public List<FileMetadata> findUploadingOlderThan(long deadlineMillis) {
-        lock.readLock().lock();
-        try {
-            List<FileMetadata> result = new ArrayList<>();
-            for (FileMetadata meta : byUploadId.values()) {
-                if (meta.getStatus() != null &&
-                        meta.getStatus().name().equals("UPLOADING") &&
-                        meta.getCreatedAt() < deadlineMillis) {
-                    result.add(meta);
-                }
-            }
-            return result;
-        } finally {
-            lock.readLock().unlock();
-        }
+        return index.findUploadingOlderThan(deadlineMillis);
     }
 
+    @Override
     public List<FileMetadata> findAll() {
-        lock.readLock().lock();
-        try {
-            return new ArrayList<>(byUploadId.values());
-        } finally {
-            lock.readLock().unlock();
-        }
+        return index.values();
+    }
+
+    @Override
+    public Stream<FileMetadata> streamAll() {
+        return StreamSupport.stream(index.view().spliterator(), false);
     }
 
     private void loadFromDisk() {
-        lock.writeLock().lock();
         try {
             if (!Files.exists(storePath)) {
                 Files.createDirectories(storePath.getParent());
@@ -115,27 +88,23 @@ public class JsonFileMetadataStore {
             List<FileMetadata> list = objectMapper.readValue(
                     bytes, new TypeReference<>() {
                     });
-            byFilePath.clear();
-            byUploadId.clear();
-            for (FileMetadata meta : list) {
-                byFilePath.put(meta.getFilePath(), meta);
-                byUploadId.put(meta.getUploadId(), meta);
-            }
+            index.clear();
+            list.forEach(index::put);
         } catch (IOException e) {
             log.error("Failed to load metadata from disk", e);
-        } finally {
-            lock.writeLock().unlock();
         }
     }
 
     private void persist() {
-        try {
-            List<FileMetadata> list = new ArrayList<>(byUploadId.values());
-            byte[] bytes = objectMapper.writerWithDefaultPrettyPrinter()
-                    .writeValueAsBytes(list);
-            Files.write(storePath, bytes, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE);
-        } catch (IOException e) {
-            log.error("Failed to persist metadata to disk", e);
+        synchronized (persistLock) {
+            try {
+                List<FileMetadata> list = index.values();
+                byte[] bytes = objectMapper.writerWithDefaultPrettyPrinter()
+                        .writeValueAsBytes(list);
+                Files.write(storePath, bytes, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE);
+            } catch (IOException e) {
+                log.error("Failed to persist metadata to disk", e);
+            }
         }
     }
 
@@ -0,0 +1,123 @@
+package ru.eliseevtech.storage.coordinator.storage;
+
+import ru.eliseevtech.storage.coordinator.model.FileMetadata;
+import ru.eliseevtech.storage.coordinator.model.FileStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Lock-free for readers; writers are serialized per file path stripe.
+ * An entry is published in byUploadId before byFilePath and unpublished in
+ * the reverse order, so anything reachable by path is reachable by uploadId.
+ * UPLOADING entries are additionally kept ordered by createdAt, so stale
+ * upload lookups only touch the expired prefix.
+ */
+final class MetadataIndex {
+
+    private static final int STRIPES = 64;
+
+    private final ConcurrentMap<String, FileMetadata> byFilePath = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, FileMetadata> byUploadId = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<UploadingKey, FileMetadata> uploadingByCreatedAt = new ConcurrentSkipListMap<>();
+    private final Object[] stripes = new Object[STRIPES];
+
+    MetadataIndex() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    Object stripeFor(String filePath) {
+        return stripes[Math.floorMod(filePath.hashCode(), STRIPES)];
+    }
+
+    Optional<FileMetadata> findByFilePath(String filePath) {
+        return Optional.ofNullable(byFilePath.get(filePath));
+    }
+
+    Optional<FileMetadata> findByUploadId(String uploadId) {
+        return Optional.ofNullable(byUploadId.get(uploadId));
+    }
+
+    void put(FileMetadata meta) {
+        synchronized (stripeFor(meta.getFilePath())) {
+            FileMetadata previous = byUploadId.put(meta.getUploadId(), meta);
+            byFilePath.put(meta.getFilePath(), meta);
+            if (previous != null && previous != meta && !previous.getFilePath().equals(meta.getFilePath())) {
+                byFilePath.remove(previous.getFilePath(), previous);
+            }
+            UploadingKey key = UploadingKey.of(meta);
+            if (previous != null && !UploadingKey.of(previous).equals(key)) {
+                uploadingByCreatedAt.remove(UploadingKey.of(previous));
+            }
+            if (meta.getStatus() == FileStatus.UPLOADING) {
+                uploadingByCreatedAt.put(key, meta);
+            } else {
+                uploadingByCreatedAt.remove(key);
+            }
+        }
+    }
+
+    void remove(FileMetadata meta) {
+        synchronized (stripeFor(meta.getFilePath())) {
+            FileMetadata current = byFilePath.get(meta.getFilePath());
+            if (current != null && current.getUploadId().equals(meta.getUploadId())) {
+                byFilePath.remove(meta.getFilePath(), current);
+            }
+            FileMetadata removed = byUploadId.remove(meta.getUploadId());
+            uploadingByCreatedAt.remove(UploadingKey.of(meta));
+            if (removed != null) {
+                uploadingByCreatedAt.remove(UploadingKey.of(removed));
+            }
+        }
+    }
+
+    List<FileMetadata> findUploadingOlderThan(long deadlineMillis) {
+        List<FileMetadata> result = new ArrayList<>();
+        for (FileMetadata meta : uploadingByCreatedAt.headMap(new UploadingKey(deadlineMillis, "")).values()) {
+            if (meta.getStatus() == FileStatus.UPLOADING) {
+                result.add(meta);
+            }
+        }
+        return result;
+    }
+
+    List<FileMetadata> values() {
+        return new ArrayList<>(byUploadId.values());
+    }
+
+    Iterable<FileMetadata> view() {
+        return byUploadId.values();
+    }
+
+    int size() {
+        return byUploadId.size();
+    }
+
+    void clear() {
+        byFilePath.clear();
+        byUploadId.clear();
+        uploadingByCreatedAt.clear();
+    }
+
+    private record UploadingKey(long createdAt, String uploadId) implements Comparable<UploadingKey> {
+
+        static UploadingKey of(FileMetadata meta) {
+            return new UploadingKey(meta.getCreatedAt(), meta.getUploadId());
+        }
+
+        @Override
+        public int compareTo(UploadingKey other) {
+            int cmp = Long.compare(createdAt, other.createdAt);
+            return cmp != 0 ? cmp : uploadId.compareTo(other.uploadId);
+        }
+
+    }
+
+}
@@ -0,0 +1,28 @@
+package ru.eliseevtech.storage.coordinator.storage;
+
+import ru.eliseevtech.storage.coordinator.model.FileMetadata;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public interface MetadataStore {
+
+    Optional<FileMetadata> findByFilePath(String filePath);
+
+    Optional<FileMetadata> findByUploadId(String uploadId);
+
+    void save(FileMetadata metadata);
+
+    void delete(FileMetadata metadata);
+
+    void deleteAll(Collection<FileMetadata> metadata);
+
+    List<FileMetadata> findUploadingOlderThan(long deadlineMillis);
+
+    List<FileMetadata> findAll();
+
+    Stream<FileMetadata> streamAll();
+
+}
@@ -0,0 +1,290 @@
+package ru.eliseevtech.storage.coordinator.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import ru.eliseevtech.storage.coordinator.model.FileMetadata;
+import ru.eliseevtech.storage.coordinator.model.FileStatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+@Slf4j
+public class MvStoreMetadataStore implements MetadataStore, Closeable {
+
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final int COMPACT_FILL_RATE = 50;
+    private static final int COMPACT_WRITE_LIMIT = 16 * 1024 * 1024;
+    private static final String UPLOADING_INDEX = "uploading-by-created-at";
+
+    private final MVStore store;
+    private final MVMap<String, byte[]> byUploadId;
+    private final MVMap<String, String> uploadIdByFilePath;
+    private final MVMap<String, String> uploadingByCreatedAt;
+    private final Lock writeLock = new ReentrantLock();
+    private final GroupCommitPipeline<String> commitPipeline;
+    private final UnpublishedWrites<String, byte[]> unpublishedFiles = new UnpublishedWrites<>();
+    private final UnpublishedWrites<String, String> unpublishedPaths = new UnpublishedWrites<>();
+
+    private volatile boolean failed;
+
+    private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "metadata-mvstore-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MvStoreMetadataStore(Path storePath, int cacheSizeMb) {
+        try {
+            Files.createDirectories(storePath.getParent());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create metadata directory for " + storePath, e);
+        }
+        this.store = new MVStore.Builder()
+                .fileName(storePath.toString())
+                .cacheSize(cacheSizeMb)
+                .autoCommitDisabled()
+                .open();
+        this.byUploadId = store.openMap("files");
+        this.uploadIdByFilePath = store.openMap("files-by-path");
+        boolean rebuildUploadingIndex = !store.hasMap(UPLOADING_INDEX);
+        this.uploadingByCreatedAt = store.openMap(UPLOADING_INDEX);
+        if (rebuildUploadingIndex) {
+            rebuildUploadingIndex();
+        }
+        this.commitPipeline = new GroupCommitPipeline<>("metadata-mvstore-writer", MAX_BATCH_SIZE, batch -> commit());
+        compactor.scheduleWithFixedDelay(this::compact, 1, 1, TimeUnit.MINUTES);
+        log.info("Opened metadata store {} with {} records", storePath, byUploadId.size());
+    }
+
+    @Override
+    public Optional<FileMetadata> findByFilePath(String filePath) {
+        String uploadId = unpublishedPaths.read(filePath, uploadIdByFilePath.get(filePath));
+        return uploadId == null ? Optional.empty() : findByUploadId(uploadId);
+    }
+
+    @Override
+    public Optional<FileMetadata> findByUploadId(String uploadId) {
+        byte[] bytes = unpublishedFiles.read(uploadId, byUploadId.get(uploadId));
+        return bytes == null ? Optional.empty() : Optional.of(FileMetadataCodec.fromBytes(bytes));
+    }
+
+    @Override
+    public void save(FileMetadata metadata) {
+        byte[] bytes = FileMetadataCodec.toBytes(metadata);
+        CompletableFuture<Void> durable;
+        writeLock.lock();
+        try {
+            byte[] previous = byUploadId.get(metadata.getUploadId());
+            unpublishedFiles.record(metadata.getUploadId(), previous);
+            byUploadId.put(metadata.getUploadId(), bytes);
+            unpublishedPaths.record(metadata.getFilePath(), uploadIdByFilePath.get(metadata.getFilePath()));
+            uploadIdByFilePath.put(metadata.getFilePath(), metadata.getUploadId());
+            String key = uploadingKey(metadata.getCreatedAt(), metadata.getUploadId());
+            if (previous != null) {
+                String previousKey = uploadingKey(FileMetadataCodec.fromBytes(previous).getCreatedAt(), metadata.getUploadId());
+                if (!previousKey.equals(key)) {
+                    uploadingByCreatedAt.remove(previousKey);
+                }
+            }
+            if (metadata.getStatus() == FileStatus.UPLOADING) {
+                uploadingByCreatedAt.put(key, metadata.getUploadId());
+            } else {
+                uploadingByCreatedAt.remove(key);
+            }
+            durable = commitPipeline.submit(metadata.getUploadId());
+        } finally {
+            writeLock.unlock();
+        }
+        GroupCommitPipeline.await(durable);
+    }
+
+    @Override
+    public void delete(FileMetadata metadata) {
+        deleteAll(List.of(metadata));
+    }
+
+    @Override
+    public void deleteAll(Collection<FileMetadata> metadata) {
+        if (metadata.isEmpty()) {
+            return;
+        }
+        CompletableFuture<Void> durable;
+        writeLock.lock();
+        try {
+            String lastUploadId = null;
+            for (FileMetadata meta : metadata) {
+                remove(meta);
+                lastUploadId = meta.getUploadId();
+            }
+            durable = commitPipeline.submit(lastUploadId);
+        } finally {
+            writeLock.unlock();
+        }
+        GroupCommitPipeline.await(durable);
+    }
+
+    private void remove(FileMetadata metadata) {
+        byte[] previous = byUploadId.get(metadata.getUploadId());
+        if (previous != null) {
+            unpublishedFiles.record(metadata.getUploadId(), previous);
+            byUploadId.remove(metadata.getUploadId());
+        }
+        if (metadata.getUploadId().equals(uploadIdByFilePath.get(metadata.getFilePath()))) {
+            unpublishedPaths.record(metadata.getFilePath(), metadata.getUploadId());
+            uploadIdByFilePath.remove(metadata.getFilePath());
+        }
+        uploadingByCreatedAt.remove(uploadingKey(metadata.getCreatedAt(), metadata.getUploadId()));
+        if (previous != null) {
+            uploadingByCreatedAt.remove(uploadingKey(FileMetadataCodec.fromBytes(previous).getCreatedAt(), metadata.getUploadId()));
+        }
+    }
+
+    @Override
+    public List<FileMetadata> findUploadingOlderThan(long deadlineMillis) {
+        String bound = uploadingKeyPrefix(deadlineMillis);
+        List<FileMetadata> result = new ArrayList<>();
+        Iterator<String> keys = uploadingByCreatedAt.keyIterator(null);
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (key.compareTo(bound) >= 0) {
+                break;
+            }
+            String uploadId = uploadingByCreatedAt.get(key);
+            if (uploadId == null) {
+                continue;
+            }
+            findByUploadId(uploadId)
+                    .filter(meta -> meta.getStatus() == FileStatus.UPLOADING)
+                    .ifPresent(result::add);
+        }
+        return result;
+    }
+
+    @Override
+    public List<FileMetadata> findAll() {
+        List<FileMetadata> result = new ArrayList<>(byUploadId.size());
+        try (Stream<FileMetadata> all = streamAll()) {
+            all.forEach(result::add);
+        }
+        return result;
+    }
+
+    @Override
+    public Stream<FileMetadata> streamAll() {
+        Iterator<Map.Entry<String, byte[]>> entries = byUploadId.entrySet().iterator();
+        Map<String, UnpublishedWrites.Durable<byte[]>> pending = unpublishedFiles.snapshot();
+        Stream<byte[]> published = StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(entries, Spliterator.ORDERED), false)
+                .filter(entry -> !pending.containsKey(entry.getKey()))
+                .map(Map.Entry::getValue);
+        Stream<byte[]> unpublished = pending.values().stream()
+                .map(UnpublishedWrites.Durable::value)
+                .filter(Objects::nonNull);
+        return Stream.concat(published, unpublished).map(FileMetadataCodec::fromBytes);
+    }
+
+    @Override
+    public void close() {
+        commitPipeline.close();
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("Metadata store compaction did not finish before close");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeLock.lock();
+        try {
+            if (failed) {
+                store.closeImmediately();
+            } else {
+                store.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void rebuildUploadingIndex() {
+        for (byte[] bytes : byUploadId.values()) {
+            FileMetadata meta = FileMetadataCodec.fromBytes(bytes);
+            if (meta.getStatus() == FileStatus.UPLOADING) {
+                uploadingByCreatedAt.put(uploadingKey(meta.getCreatedAt(), meta.getUploadId()), meta.getUploadId());
+            }
+        }
+        store.commit();
+    }
+
+    private static String uploadingKeyPrefix(long createdAt) {
+        return String.format("%019d:", createdAt);
+    }
+
+    private static String uploadingKey(long createdAt, String uploadId) {
+        return uploadingKeyPrefix(createdAt) + uploadId;
+    }
+
+    private void commit() {
+        Runnable publishFiles;
+        Runnable publishPaths;
+        writeLock.lock();
+        try {
+            publishFiles = unpublishedFiles.committed(byUploadId::get);
+            publishPaths = unpublishedPaths.committed(uploadIdByFilePath::get);
+            store.commit();
+        } catch (RuntimeException e) {
+            rollback(e);
+            throw e;
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            store.sync();
+        } catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        publishFiles.run();
+        publishPaths.run();
+    }
+
+    private void rollback(RuntimeException cause) {
+        failed = true;
+        try {
+            store.rollback();
+        } catch (RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private void compact() {
+        try {
+            if (store.compact(COMPACT_FILL_RATE, COMPACT_WRITE_LIMIT)) {
+                commit();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to compact metadata store", e);
+        }
+    }
+
+}
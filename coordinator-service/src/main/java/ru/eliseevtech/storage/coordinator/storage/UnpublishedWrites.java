@@ -0,0 +1,43 @@
+package ru.eliseevtech.storage.coordinator.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Remembers the last durable value of keys changed in a live map since the
+ * previous commit, so readers keep seeing it until the change is synced.
+ * Writers record a key before changing the map and readers read the map
+ * before the record, so a reader never sees an unrecorded change.
+ */
+final class UnpublishedWrites<K, V> {
+
+    private final ConcurrentMap<K, Durable<V>> entries = new ConcurrentHashMap<>();
+
+    void record(K key, V durable) {
+        entries.compute(key, (k, existing) -> new Durable<>(existing == null ? durable : existing.value()));
+    }
+
+    V read(K key, V live) {
+        Durable<V> durable = entries.get(key);
+        return durable == null ? live : durable.value();
+    }
+
+    Map<K, Durable<V>> snapshot() {
+        return new HashMap<>(entries);
+    }
+
+    Runnable committed(Function<K, V> live) {
+        Map<K, Durable<V>> pending = snapshot();
+        Map<K, V> values = new HashMap<>();
+        pending.keySet().forEach(key -> values.put(key, live.apply(key)));
+        return () -> pending.forEach((key, durable) -> entries.computeIfPresent(key,
+                (k, current) -> current == durable ? null : new Durable<>(values.get(key))));
+    }
+
+    record Durable<V>(V value) {
+    }
+
+}
@@ -0,0 +1,459 @@
+package ru.eliseevtech.storage.coordinator.storage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import ru.eliseevtech.storage.coordinator.model.FileMetadata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+@Slf4j
+public class WalMetadataStore implements MetadataStore, Closeable {
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private static final int SNAPSHOT_MAGIC = 0x4D455441;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_DELETE = 2;
+
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    private final Path walDir;
+    private final long segmentSizeBytes;
+    private final MetadataIndex index = new MetadataIndex();
+
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "metadata-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    private final GroupCommitPipeline<Mutation> commitPipeline;
+
+    private FileChannel segment;
+    private volatile long segmentId;
+    private long segmentBytes;
+
+    public WalMetadataStore(Path walDir, long segmentSizeBytes, Path legacyJsonPath, ObjectMapper objectMapper) {
+        this.walDir = walDir;
+        this.segmentSizeBytes = segmentSizeBytes;
+        try {
+            Files.createDirectories(walDir);
+            long replayed = recover();
+            if (replayed < 0 && legacyJsonPath != null) {
+                importLegacy(legacyJsonPath, objectMapper);
+            }
+            openSegment(segmentId);
+            if (replayed > 0) {
+                scheduleCompaction();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open metadata log in " + walDir, e);
+        }
+        this.commitPipeline = new GroupCommitPipeline<>("metadata-wal-writer", MAX_BATCH_SIZE, this::appendBatch);
+    }
+
+    @Override
+    public Optional<FileMetadata> findByFilePath(String filePath) {
+        return index.findByFilePath(filePath).map(WalMetadataStore::copyOf);
+    }
+
+    @Override
+    public Optional<FileMetadata> findByUploadId(String uploadId) {
+        return index.findByUploadId(uploadId).map(WalMetadataStore::copyOf);
+    }
+
+    @Override
+    public void save(FileMetadata metadata) {
+        FileMetadata copy = copyOf(metadata);
+        GroupCommitPipeline.await(commitPipeline.submit(new Mutation(encodePut(copy), () -> index.put(copy))));
+    }
+
+    @Override
+    public void delete(FileMetadata metadata) {
+        GroupCommitPipeline.await(submitDelete(metadata));
+    }
+
+    @Override
+    public void deleteAll(Collection<FileMetadata> metadata) {
+        List<CompletableFuture<Void>> pending = new ArrayList<>(metadata.size());
+        for (FileMetadata meta : metadata) {
+            pending.add(submitDelete(meta));
+        }
+        pending.forEach(GroupCommitPipeline::await);
+    }
+
+    private CompletableFuture<Void> submitDelete(FileMetadata metadata) {
+        FileMetadata key = FileMetadata.builder()
+                .uploadId(metadata.getUploadId())
+                .filePath(metadata.getFilePath())
+                .build();
+        byte[] record = encodeDelete(key.getUploadId(), key.getFilePath());
+        return commitPipeline.submit(new Mutation(record, () -> index.remove(key)));
+    }
+
+    @Override
+    public List<FileMetadata> findUploadingOlderThan(long deadlineMillis) {
+        return index.findUploadingOlderThan(deadlineMillis).stream().map(WalMetadataStore::copyOf).toList();
+    }
+
+    @Override
+    public List<FileMetadata> findAll() {
+        return index.values().stream().map(WalMetadataStore::copyOf).toList();
+    }
+
+    @Override
+    public Stream<FileMetadata> streamAll() {
+        return StreamSupport.stream(index.view().spliterator(), false).map(WalMetadataStore::copyOf);
+    }
+
+    @Override
+    public void close() throws IOException {
+        commitPipeline.close();
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        segment.force(false);
+        segment.close();
+    }
+
+    synchronized void compact() {
+        long snapshotId = segmentId;
+        List<FileMetadata> copy = new ArrayList<>(index.size());
+        for (FileMetadata meta : index.view()) {
+            copy.add(copyOf(meta));
+        }
+        try {
+            writeSnapshot(snapshotId, copy);
+            deleteObsoleteFiles(snapshotId);
+            log.info("Metadata snapshot {} written with {} records", snapshotId, copy.size());
+        } catch (IOException e) {
+            log.error("Failed to compact metadata log", e);
+        }
+    }
+
+    private void appendBatch(List<Mutation> mutations) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[mutations.size()];
+        long total = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(mutations.get(i).record());
+            total += buffers[i].remaining();
+        }
+        try {
+            long written = 0;
+            while (written < total) {
+                written += segment.write(buffers);
+            }
+            segment.force(false);
+        } catch (IOException e) {
+            try {
+                segment.truncate(segmentBytes);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        segmentBytes += total;
+        mutations.forEach(mutation -> mutation.publish().run());
+        if (segmentBytes >= segmentSizeBytes) {
+            rotateSegment();
+        }
+    }
+
+    private void rotateSegment() throws IOException {
+        segment.close();
+        openSegment(segmentId + 1);
+        scheduleCompaction();
+    }
+
+    private void scheduleCompaction() {
+        if (compacting.compareAndSet(false, true)) {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    private void openSegment(long id) throws IOException {
+        segment = FileChannel.open(segmentPath(id),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentId = id;
+        segmentBytes = segment.size();
+    }
+
+    private long recover() throws IOException {
+        TreeMap<Long, Path> snapshots = listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        TreeMap<Long, Path> segments = listFiles(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+
+        long snapshotId = 0;
+        for (Map.Entry<Long, Path> entry : snapshots.descendingMap().entrySet()) {
+            try {
+                readSnapshot(entry.getValue());
+                snapshotId = entry.getKey();
+                break;
+            } catch (IOException e) {
+                log.error("Skipping unreadable metadata snapshot {}", entry.getValue(), e);
+                index.clear();
+            }
+        }
+
+        long records = 0;
+        long lastSegmentId = snapshotId - 1;
+        for (Map.Entry<Long, Path> entry : segments.tailMap(snapshotId, true).entrySet()) {
+            records += replaySegment(entry.getValue());
+            lastSegmentId = entry.getKey();
+        }
+        segmentId = Math.max(snapshotId, lastSegmentId + 1);
+
+        if (snapshots.isEmpty() && segments.isEmpty()) {
+            return -1;
+        }
+        log.info("Recovered {} metadata records from snapshot {} and {} log records",
+                index.size(), snapshotId, records);
+        return records;
+    }
+
+    private long replaySegment(Path path) throws IOException {
+        long records = 0;
+        long validPosition = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    log.warn("Corrupted record length {} in {} at {}", length, path, validPosition);
+                    break;
+                }
+                byte[] payload = new byte[length];
+                int checksum;
+                try {
+                    checksum = in.readInt();
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    log.warn("Torn record in {} at {}", path, validPosition);
+                    break;
+                }
+                if (checksum != checksum(payload, 0, length)) {
+                    log.warn("Checksum mismatch in {} at {}", path, validPosition);
+                    break;
+                }
+                applyRecord(payload);
+                validPosition += 8 + length;
+                records++;
+            }
+        }
+        if (validPosition < Files.size(path)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(validPosition);
+            }
+        }
+        return records;
+    }
+
+    private void applyRecord(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        if (type == RECORD_PUT) {
+            index.put(FileMetadataCodec.fromBytes(payload, 1, payload.length - 1));
+        } else if (type == RECORD_DELETE) {
+            String uploadId = FileMetadataCodec.readString(in);
+            String filePath = FileMetadataCodec.readString(in);
+            index.remove(FileMetadata.builder().uploadId(uploadId).filePath(filePath).build());
+        } else {
+            throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    private void readSnapshot(Path path) throws IOException {
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(path))) {
+            CheckedInputStream checked = new CheckedInputStream(raw, new CRC32C());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Bad snapshot header");
+            }
+            int count = in.readInt();
+            List<FileMetadata> list = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                list.add(FileMetadataCodec.read(in));
+            }
+            long expected = checked.getChecksum().getValue();
+            if (new DataInputStream(raw).readLong() != expected) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+            list.forEach(index::put);
+        }
+    }
+
+    private void writeSnapshot(long snapshotId, List<FileMetadata> list) throws IOException {
+        Path target = snapshotPath(snapshotId);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream raw = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+            CheckedOutputStream checked = new CheckedOutputStream(raw, new CRC32C());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(list.size());
+            for (FileMetadata meta : list) {
+                FileMetadataCodec.write(out, meta);
+            }
+            out.flush();
+            new DataOutputStream(raw).writeLong(checked.getChecksum().getValue());
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void deleteObsoleteFiles(long snapshotId) throws IOException {
+        for (Path path : listFiles(SEGMENT_PREFIX, SEGMENT_SUFFIX).headMap(snapshotId, false).values()) {
+            Files.deleteIfExists(path);
+        }
+        for (Path path : listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).headMap(snapshotId, false).values()) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private void importLegacy(Path legacyJsonPath, ObjectMapper objectMapper) throws IOException {
+        if (!Files.exists(legacyJsonPath) || Files.size(legacyJsonPath) == 0) {
+            return;
+        }
+        List<FileMetadata> list = objectMapper.readValue(
+                legacyJsonPath.toFile(), new TypeReference<>() {
+                });
+        list.forEach(index::put);
+        writeSnapshot(segmentId, list);
+        log.info("Imported {} metadata records from {}", list.size(), legacyJsonPath);
+    }
+
+    private TreeMap<Long, Path> listFiles(String prefix, String suffix) throws IOException {
+        TreeMap<Long, Path> result = new TreeMap<>();
+        try (Stream<Path> files = Files.list(walDir)) {
+            files.forEach(path -> {
+                String name = path.getFileName().toString();
+                if (name.startsWith(prefix) && name.endsWith(suffix)) {
+                    String id = name.substring(prefix.length(), name.length() - suffix.length());
+                    try {
+                        result.put(Long.parseLong(id), path);
+                    } catch (NumberFormatException e) {
+                        log.warn("Ignoring unexpected file {}", path);
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    private Path segmentPath(long id) {
+        return walDir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private Path snapshotPath(long id) {
+        return walDir.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, id, SNAPSHOT_SUFFIX));
+    }
+
+    private static FileMetadata copyOf(FileMetadata meta) {
+        return meta.toBuilder()
+                .replicaAddresses(meta.getReplicaAddresses() == null ? null : List.copyOf(meta.getReplicaAddresses()))
+                .shardAddresses(meta.getShardAddresses() == null ? null : List.copyOf(meta.getShardAddresses()))
+                .staleReplicaAddresses(meta.getStaleReplicaAddresses() == null
+                        ? null : List.copyOf(meta.getStaleReplicaAddresses()))
+                .build();
+    }
+
+    private static byte[] encodePut(FileMetadata metadata) {
+        return encode(out -> {
+            out.writeByte(RECORD_PUT);
+            FileMetadataCodec.write(out, metadata);
+        });
+    }
+
+    private static byte[] encodeDelete(String uploadId, String filePath) {
+        return encode(out -> {
+            out.writeByte(RECORD_DELETE);
+            FileMetadataCodec.writeString(out, uploadId);
+            FileMetadataCodec.writeString(out, filePath);
+        });
+    }
+
+    private static byte[] encode(RecordWriter writer) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeInt(0);
+            writer.write(out);
+            byte[] record = bytes.toByteArray();
+            int length = record.length - 8;
+            ByteBuffer.wrap(record)
+                    .putInt(0, length)
+                    .putInt(4, checksum(record, 8, length));
+            return record;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode metadata record", e);
+        }
+    }
+
+    private static int checksum(byte[] data, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private record Mutation(byte[] record, Runnable publish) {
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+}
@@ -0,0 +1,81 @@
+package ru.eliseevtech.storage.coordinator.client;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.eliseevtech.storage.coordinator.registry.DataNodeRegistry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DataNodeChannelPoolTest {
+
+    private final AtomicInteger created = new AtomicInteger();
+    private DataNodeChannelPool pool;
+
+    private DataNodeChannelPool open(long idleTimeoutMs) {
+        pool = new DataNodeChannelPool(idleTimeoutMs, address -> {
+            created.incrementAndGet();
+            return ManagedChannelBuilder.forTarget(address).usePlaintext().build();
+        });
+        return pool;
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void channelShouldBeReusedPerAddress() {
+        DataNodeChannelPool pool = open(60_000L);
+
+        ManagedChannel first = pool.channelFor("datanode1", 50051);
+        ManagedChannel second = pool.channelFor("datanode1", 50051);
+        ManagedChannel other = pool.channelFor("datanode2", 50051);
+
+        assertThat(second).isSameAs(first);
+        assertThat(other).isNotSameAs(first);
+        assertThat(created).hasValue(2);
+    }
+
+    @Test
+    void shutDownChannelShouldBeReplaced() {
+        DataNodeChannelPool pool = open(60_000L);
+        ManagedChannel first = pool.channelFor("datanode1", 50051);
+        first.shutdownNow();
+
+        ManagedChannel second = pool.channelFor("datanode1", 50051);
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.isShutdown()).isFalse();
+    }
+
+    @Test
+    void idleChannelsShouldBeClosed() {
+        DataNodeChannelPool pool = open(0L);
+        ManagedChannel channel = pool.channelFor("datanode1", 50051);
+
+        pool.evictIdle();
+
+        assertThat(pool.size()).isZero();
+        assertThat(channel.isShutdown()).isTrue();
+    }
+
+    @Test
+    void unregisteredNodeChannelShouldBeEvicted() {
+        DataNodeChannelPool pool = open(60_000L);
+        DataNodeRegistry registry = new DataNodeRegistry(60_000L);
+        registry.addRemovalListener(node -> pool.evict(node.getHost(), node.getPort()));
+        String nodeId = registry.register("datanode1", 50051);
+        ManagedChannel channel = pool.channelFor("datanode1", 50051);
+
+        registry.unregister(nodeId);
+
+        assertThat(channel.isShutdown()).isTrue();
+        assertThat(pool.size()).isZero();
+    }
+
+}
@@ -0,0 +1,151 @@
+package ru.eliseevtech.storage.coordinator.registry;
+
+import org.junit.jupiter.api.Test;
+import ru.eliseevtech.storage.coordinator.model.DataNodeInfo;
+import ru.eliseevtech.storage.coordinator.model.DataNodeLoad;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DataNodeRegistryTest {
+
+    @Test
+    void heartbeatShouldStoreLoadReport() {
+        DataNodeRegistry registry = new DataNodeRegistry(60_000L);
+        String nodeId = registry.register("datanode1", 50051);
+        DataNodeLoad load = DataNodeLoad.builder()
+                .freeSpaceBytes(1_000_000L)
+                .activeUploads(2)
+                .activeDownloads(1)
+                .writeBytesPerSecond(4096L)
+                .readBytesPerSecond(2048L)
+                .build();
+
+        assertThat(registry.heartbeat(nodeId, load)).isTrue();
+
+        assertThat(registry.getActiveNodes()).singleElement()
+                .extracting(DataNodeInfo::getLoad)
+                .isEqualTo(load);
+    }
+
+    @Test
+    void heartbeatWithoutLoadShouldKeepPreviousReport() {
+        DataNodeRegistry registry = new DataNodeRegistry(60_000L);
+        String nodeId = registry.register("datanode1", 50051);
+        DataNodeLoad load = DataNodeLoad.builder().freeSpaceBytes(1_000_000L).activeUploads(3).build();
+        registry.heartbeat(nodeId, load);
+
+        // старая датанода не присылает нагрузку, нулевые значения не должны её затирать
+        assertThat(registry.heartbeat(nodeId, null)).isTrue();
+
+        assertThat(registry.getActiveNodes()).singleElement()
+                .extracting(DataNodeInfo::getLoad)
+                .isEqualTo(load);
+    }
+
+    @Test
+    void heartbeatFromUnknownNodeShouldBeRejected() {
+        DataNodeRegistry registry = new DataNodeRegistry(60_000L);
+
+        // датанода после перезапуска координатора должна зарегистрироваться заново
+        assertThat(registry.heartbeat("unknown", new DataNodeLoad())).isFalse();
+        assertThat(registry.getActiveNodes()).isEmpty();
+    }
+
+    @Test
+    void expiredNodeShouldBeRevivedByHeartbeat() throws InterruptedException {
+        DataNodeRegistry registry = new DataNodeRegistry(50L);
+        String nodeId = registry.register("datanode1", 50051);
+        Thread.sleep(100);
+        assertThat(registry.getActiveNodes()).isEmpty();
+
+        assertThat(registry.heartbeat(nodeId, new DataNodeLoad())).isTrue();
+
+        assertThat(registry.getActiveNodes()).extracting(DataNodeInfo::getNodeId).containsExactly(nodeId);
+    }
+
+    @Test
+    void reRegistrationShouldReplaceStaleEntryForSameAddress() {
+        DataNodeRegistry registry = new DataNodeRegistry(60_000L);
+        String stale = registry.register("datanode1", 50051);
+        registry.register("datanode2", 50051);
+
+        String fresh = registry.register("datanode1", 50051);
+
+        assertThat(fresh).isNotEqualTo(stale);
+        assertThat(registry.heartbeat(stale, new DataNodeLoad())).isFalse();
+        assertThat(registry.getActiveNodes()).extracting(DataNodeInfo::getHost)
+                .containsExactlyInAnyOrder("datanode1", "datanode2");
+    }
+
+    @Test
+    void reRegistrationShouldNotifyRemovalListeners() {
+        DataNodeRegistry registry = new DataNodeRegistry(60_000L);
+        List<DataNodeInfo> removed = new ArrayList<>();
+        registry.addRemovalListener(removed::add);
+        String stale = registry.register("datanode1", 50051);
+
+        registry.register("datanode1", 50051);
+
+        // канал к старому экземпляру узла должен быть закрыт
+        assertThat(removed).extracting(DataNodeInfo::getNodeId).containsExactly(stale);
+    }
+
+    @Test
+    void silentNodeShouldBeReportedOnceAndRevivedByHeartbeat() throws InterruptedException {
+        DataNodeRegistry registry = new DataNodeRegistry(50L);
+        List<DataNodeInfo> removed = new ArrayList<>();
+        registry.addRemovalListener(removed::add);
+        String nodeId = registry.register("datanode1", 50051);
+        Thread.sleep(100);
+
+        registry.expireSilentNodes();
+        registry.expireSilentNodes();
+
+        assertThat(removed).extracting(DataNodeInfo::getNodeId).containsExactly(nodeId);
+        assertThat(registry.heartbeat(nodeId, new DataNodeLoad())).isTrue();
+        assertThat(registry.getActiveNodes()).extracting(DataNodeInfo::getNodeId).containsExactly(nodeId);
+    }
+
+    @Test
+    void readOrderShouldPreferLessLoadedReplicas() {
+        DataNodeRegistry registry = new DataNodeRegistry(60_000L);
+        String busy = registry.register("busy", 50051);
+        String idle = registry.register("idle", 50051);
+        registry.heartbeat(busy, DataNodeLoad.builder().activeDownloads(99).build());
+        registry.heartbeat(idle, DataNodeLoad.builder().activeDownloads(0).build());
+        List<String> replicas = List.of("busy:50051", "idle:50051");
+
+        int idleFirst = 0;
+        for (int i = 0; i < 1000; i++) {
+            List<String> ordered = registry.orderReplicasForRead(replicas);
+            assertThat(ordered).containsExactlyInAnyOrderElementsOf(replicas);
+            if (ordered.get(0).equals("idle:50051")) {
+                idleFirst++;
+            }
+        }
+
+        // вес реплики обратно пропорционален числу её активных потоков: 1 к 1/100
+        assertThat(idleFirst).isGreaterThan(950);
+    }
+
+    @Test
+    void equallyLoadedReplicasShouldShareReads() {
+        DataNodeRegistry registry = new DataNodeRegistry(60_000L);
+        registry.register("datanode1", 50051);
+        registry.register("datanode2", 50051);
+        List<String> replicas = List.of("datanode1:50051", "datanode2:50051");
+
+        int firstChosen = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (registry.orderReplicasForRead(replicas).get(0).equals("datanode1:50051")) {
+                firstChosen++;
+            }
+        }
+
+        assertThat(firstChosen).isBetween(350, 650);
+    }
+
+}
@@ -0,0 +1,121 @@
+package ru.eliseevtech.storage.coordinator.registry;
+
+import ru.eliseevtech.storage.coordinator.model.DataNodeInfo;
+import ru.eliseevtech.storage.coordinator.model.DataNodeLoad;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+
+public class PlacementSimulation {
+
+    private static final double STEP_SECONDS = 0.01;
+    private static final double HEARTBEAT_SECONDS = 1.0;
+    private static final double MEAN_FILE_BYTES = 64.0 * 1024 * 1024;
+    private static final double MB = 1024.0 * 1024;
+
+    static final double[] HETEROGENEOUS_RATES_MB = {200, 200, 200, 200, 200, 200, 50, 50};
+
+    private final double[] ratesBytesPerSecond;
+    private final double arrivalsPerSecond;
+    private final int uploads;
+    private final long seed;
+
+    PlacementSimulation(double[] ratesMb, double utilization, int uploads, long seed) {
+        this.ratesBytesPerSecond = Arrays.stream(ratesMb).map(rate -> rate * MB).toArray();
+        this.arrivalsPerSecond = utilization * Arrays.stream(ratesBytesPerSecond).sum() / MEAN_FILE_BYTES;
+        this.uploads = uploads;
+        this.seed = seed;
+    }
+
+    Result run(Function<Supplier<RandomGenerator>, PlacementStrategy> strategyFactory) {
+        SplittableRandom random = new SplittableRandom(seed);
+        RandomGenerator placementRandom = random.split();
+        DataNodeRegistry registry = new DataNodeRegistry(Long.MAX_VALUE / 2,
+                strategyFactory.apply(() -> placementRandom));
+
+        int nodeCount = ratesBytesPerSecond.length;
+        String[] nodeIds = new String[nodeCount];
+        List<List<double[]>> active = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            nodeIds[i] = registry.register("node-" + i, 50051);
+            active.add(new ArrayList<>());
+        }
+
+        double[] written = new double[nodeCount];
+        double[] latencies = new double[uploads];
+        int started = 0;
+        int completed = 0;
+        double now = 0;
+        double nextArrival = exponential(random, 1 / arrivalsPerSecond);
+        double nextHeartbeat = 0;
+        while (completed < uploads) {
+            if (now >= nextHeartbeat) {
+                for (int i = 0; i < nodeCount; i++) {
+                    registry.heartbeat(nodeIds[i], DataNodeLoad.builder()
+                            .freeSpaceBytes(Long.MAX_VALUE / 2)
+                            .activeUploads(active.get(i).size())
+                            .writeBytesPerSecond((long) (written[i] / HEARTBEAT_SECONDS))
+                            .build());
+                    written[i] = 0;
+                }
+                nextHeartbeat += HEARTBEAT_SECONDS;
+            }
+            while (started < uploads && nextArrival <= now) {
+                long size = (long) exponential(random, MEAN_FILE_BYTES);
+                DataNodeInfo node = registry.chooseNodesForUpload(size, 1).get(0);
+                int index = Integer.parseInt(node.getHost().substring("node-".length()));
+                active.get(index).add(new double[]{size, nextArrival});
+                started++;
+                nextArrival += exponential(random, 1 / arrivalsPerSecond);
+            }
+            now += STEP_SECONDS;
+            for (int i = 0; i < nodeCount; i++) {
+                List<double[]> running = active.get(i);
+                if (running.isEmpty()) {
+                    continue;
+                }
+                double share = ratesBytesPerSecond[i] * STEP_SECONDS / running.size();
+                written[i] += ratesBytesPerSecond[i] * STEP_SECONDS;
+                for (Iterator<double[]> it = running.iterator(); it.hasNext(); ) {
+                    double[] upload = it.next();
+                    upload[0] -= share;
+                    if (upload[0] <= 0) {
+                        latencies[completed++] = now - upload[1];
+                        it.remove();
+                    }
+                }
+            }
+        }
+        Arrays.sort(latencies);
+        return new Result(percentile(latencies, 0.50), percentile(latencies, 0.99));
+    }
+
+    private static double exponential(SplittableRandom random, double mean) {
+        return -Math.log(1 - random.nextDouble()) * mean;
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+    }
+
+    record Result(double p50Seconds, double p99Seconds) {
+    }
+
+    public static void main(String[] args) {
+        for (double utilization : new double[]{0.5, 0.7, 0.9}) {
+            PlacementSimulation simulation = new PlacementSimulation(HETEROGENEOUS_RATES_MB, utilization, 20_000, 42);
+            Result roundRobin = simulation.run(random -> new RoundRobinPlacementStrategy());
+            Result twoChoices = simulation.run(PowerOfTwoChoicesPlacementStrategy::new);
+            System.out.printf("utilization %.0f%%: round-robin p50 %.1fs p99 %.1fs, two choices p50 %.1fs p99 %.1fs%n",
+                    utilization * 100, roundRobin.p50Seconds(), roundRobin.p99Seconds(),
+                    twoChoices.p50Seconds(), twoChoices.p99Seconds());
+        }
+    }
+
+}
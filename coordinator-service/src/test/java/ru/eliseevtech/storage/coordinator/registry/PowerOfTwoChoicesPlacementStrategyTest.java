@@ -0,0 +1,123 @@
+package ru.eliseevtech.storage.coordinator.registry;
+
+import org.junit.jupiter.api.Test;
+import ru.eliseevtech.storage.coordinator.model.DataNodeInfo;
+import ru.eliseevtech.storage.coordinator.model.DataNodeLoad;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PowerOfTwoChoicesPlacementStrategyTest {
+
+    private final SplittableRandom random = new SplittableRandom(7);
+    private final PlacementStrategy strategy = new PowerOfTwoChoicesPlacementStrategy(() -> random);
+
+    private DataNodeInfo node(String host, int activeUploads, long freeSpaceBytes) {
+        return node(host, activeUploads, freeSpaceBytes, 0);
+    }
+
+    private DataNodeInfo node(String host, int activeUploads, long freeSpaceBytes, long writeBytesPerSecond) {
+        return DataNodeInfo.builder()
+                .nodeId(host)
+                .host(host)
+                .port(50051)
+                .active(true)
+                .load(DataNodeLoad.builder()
+                        .activeUploads(activeUploads)
+                        .freeSpaceBytes(freeSpaceBytes)
+                        .writeBytesPerSecond(writeBytesPerSecond)
+                        .build())
+                .build();
+    }
+
+    @Test
+    void lessLoadedNodeShouldWin() {
+        List<DataNodeInfo> nodes = List.of(node("busy", 10, 1L << 40), node("idle", 1, 1L << 40));
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(strategy.choose(nodes, node -> true, 1024)).get()
+                    .extracting(DataNodeInfo::getHost).isEqualTo("idle");
+        }
+    }
+
+    @Test
+    void fasterNodeShouldWinAtEqualUploadCount() {
+        List<DataNodeInfo> nodes = List.of(
+                node("slow", 4, 1L << 40, 50L << 20),
+                node("fast", 4, 1L << 40, 200L << 20));
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(strategy.choose(nodes, node -> true, 1024)).get()
+                    .extracting(DataNodeInfo::getHost).isEqualTo("fast");
+        }
+    }
+
+    @Test
+    void fastNodeShouldTakeMoreUploadsThanSlowOne() {
+        // 5 загрузок на 200 МБ/с закончатся раньше, чем 2 на 50 МБ/с
+        List<DataNodeInfo> nodes = List.of(
+                node("slow", 2, 1L << 40, 50L << 20),
+                node("fast", 5, 1L << 40, 200L << 20));
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(strategy.choose(nodes, node -> true, 1024)).get()
+                    .extracting(DataNodeInfo::getHost).isEqualTo("fast");
+        }
+    }
+
+    @Test
+    void idleNodeWithoutThroughputSampleShouldWin() {
+        List<DataNodeInfo> nodes = List.of(node("idle", 0, 1L << 40), node("busy", 3, 1L << 40, 200L << 20));
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(strategy.choose(nodes, node -> true, 1024)).get()
+                    .extracting(DataNodeInfo::getHost).isEqualTo("idle");
+        }
+    }
+
+    @Test
+    void nodeWithMoreRoomForFileShouldWinAtEqualLoad() {
+        List<DataNodeInfo> nodes = List.of(node("almost-full", 2, 150), node("roomy", 2, 10_000));
+
+        assertThat(strategy.choose(nodes, node -> true, 100)).get()
+                .extracting(DataNodeInfo::getHost).isEqualTo("roomy");
+    }
+
+    @Test
+    void ineligibleNodesShouldBeSkipped() {
+        List<DataNodeInfo> nodes = List.of(node("a", 0, 100), node("b", 5, 100), node("c", 0, 100));
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(strategy.choose(nodes, node -> node.getHost().equals("b"), 10)).get()
+                    .extracting(DataNodeInfo::getHost).isEqualTo("b");
+        }
+        assertThat(strategy.choose(nodes, node -> false, 10)).isEmpty();
+    }
+
+    @Test
+    void registryShouldNotPlaceFileOnNodeWithoutSpace() {
+        DataNodeRegistry registry = new DataNodeRegistry(60_000L, strategy);
+        String full = registry.register("full", 50051);
+        String free = registry.register("free", 50051);
+        registry.heartbeat(full, DataNodeLoad.builder().freeSpaceBytes(10).build());
+        registry.heartbeat(free, DataNodeLoad.builder().freeSpaceBytes(1000).activeUploads(50).build());
+
+        assertThat(registry.chooseNodesForUpload(100, 2)).extracting(DataNodeInfo::getHost).containsExactly("free");
+        assertThat(registry.chooseNodesForUpload(10_000, 1)).isEmpty();
+    }
+
+    @Test
+    void twoChoicesShouldCutTailLatencyOnHeterogeneousCluster() {
+        PlacementSimulation simulation = new PlacementSimulation(PlacementSimulation.HETEROGENEOUS_RATES_MB,
+                0.7, 2_000, 42);
+
+        PlacementSimulation.Result roundRobin = simulation.run(random -> new RoundRobinPlacementStrategy());
+        PlacementSimulation.Result twoChoices = simulation.run(PowerOfTwoChoicesPlacementStrategy::new);
+
+        // медленные узлы получают равную долю загрузок при round-robin и копят очередь
+        assertThat(twoChoices.p99Seconds()).isLessThan(roundRobin.p99Seconds() / 5);
+    }
+
+}
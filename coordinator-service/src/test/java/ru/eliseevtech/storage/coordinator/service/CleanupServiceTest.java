@@ -1,5 +1,6 @@
 package ru.eliseevtech.storage.coordinator.service;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,27 +10,34 @@ import ru.eliseevtech.storage.coordinator.client.DataNodeControlClient;
 import ru.eliseevtech.storage.coordinator.config.CoordinatorProperties;
 import ru.eliseevtech.storage.coordinator.model.FileMetadata;
 import ru.eliseevtech.storage.coordinator.model.FileStatus;
-import ru.eliseevtech.storage.coordinator.storage.JsonFileMetadataStore;
+import ru.eliseevtech.storage.coordinator.registry.DataNodeRegistry;
+import ru.eliseevtech.storage.coordinator.storage.MetadataStore;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
-import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class CleanupServiceTest {
 
     @Mock
-    private JsonFileMetadataStore metadataStore;
+    private MetadataStore metadataStore;
 
     @Mock
     private DataNodeControlClient dataNodeControlClient;
 
     private CoordinatorProperties properties;
 
+    private DataNodeRegistry registry;
+
     private CleanupService cleanupService;
 
     @BeforeEach
@@ -39,7 +47,15 @@ class CleanupServiceTest {
         cleanupProps.setTimeoutMs(600_000L);
         properties.setCleanup(cleanupProps);
 
-        cleanupService = new CleanupService(metadataStore, properties, dataNodeControlClient);
+        registry = new DataNodeRegistry(60_000L);
+        registry.register("datanode1", 50051);
+        registry.register("datanode2", 50052);
+        cleanupService = new CleanupService(metadataStore, registry, properties, dataNodeControlClient);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cleanupService.shutdown();
     }
 
     @Test
@@ -63,18 +79,17 @@ class CleanupServiceTest {
         when(metadataStore.findUploadingOlderThan(anyLong()))
                 .thenReturn(List.of(meta1, meta2));
 
-        cleanupService.cleanup();
+        cleanupService.startRound().join();
 
-        verify(dataNodeControlClient).deleteUpload("datanode1", 50051, "u1");
-        verify(dataNodeControlClient).deleteUpload("datanode2", 50052, "u2");
+        verify(dataNodeControlClient).deleteUploads("datanode1", 50051, List.of("u1"));
+        verify(dataNodeControlClient).deleteUploads("datanode2", 50052, List.of("u2"));
 
-        verify(metadataStore).delete(meta1);
-        verify(metadataStore).delete(meta2);
+        verify(metadataStore).deleteAll(List.of(meta1, meta2));
     }
 
     @Test
-    void cleanupShouldSwallowExceptionsFromDataNodeAndStillDeleteMetadata() {
-        FileMetadata meta = FileMetadata.builder()
+    void cleanupShouldKeepMetadataOfUploadsThatFailedToDelete() {
+        FileMetadata meta1 = FileMetadata.builder()
                 .uploadId("u1")
                 .filePath("/remote/1.txt")
                 .dataNodeAddress("datanode1:50051")
@@ -82,17 +97,118 @@ class CleanupServiceTest {
                 .createdAt(1_000L)
                 .build();
 
+        FileMetadata meta2 = FileMetadata.builder()
+                .uploadId("u2")
+                .filePath("/remote/2.txt")
+                .dataNodeAddress("datanode2:50052")
+                .status(FileStatus.UPLOADING)
+                .createdAt(2_000L)
+                .build();
+
         when(metadataStore.findUploadingOlderThan(anyLong()))
-                .thenReturn(List.of(meta));
+                .thenReturn(List.of(meta1, meta2));
 
-        doThrow(new RuntimeException("boom"))
+        lenient().doThrow(new RuntimeException("boom"))
                 .when(dataNodeControlClient)
-                .deleteUpload("datanode1", 50051, "u1");
+                .deleteUploads("datanode1", 50051, List.of("u1"));
 
-        assertThatCode(() -> cleanupService.cleanup())
+        assertThatCode(() -> cleanupService.startRound().join())
                 .doesNotThrowAnyException();
 
-        verify(metadataStore).delete(meta);
+        // данные u1 остались на узле, поэтому запись о нём нужна следующему проходу очистки
+        verify(metadataStore).deleteAll(List.of(meta2));
+    }
+
+    @Test
+    void cleanupShouldKeepStripeWhenAnyShardFailedToDelete() {
+        FileMetadata striped = FileMetadata.builder()
+                .uploadId("u1")
+                .filePath("/remote/1.txt")
+                .dataNodeAddress("datanode1:50051")
+                .status(FileStatus.UPLOADING)
+                .createdAt(1_000L)
+                .dataShards(1)
+                .parityShards(1)
+                .shardAddresses(List.of("datanode1:50051", "datanode2:50051"))
+                .build();
+        registry.register("datanode2", 50051);
+        when(metadataStore.findUploadingOlderThan(anyLong())).thenReturn(List.of(striped));
+        lenient().doThrow(new RuntimeException("boom"))
+                .when(dataNodeControlClient)
+                .deleteUploads("datanode2", 50051, List.of("u1-shard-1"));
+
+        cleanupService.startRound().join();
+
+        verify(dataNodeControlClient).deleteUploads("datanode1", 50051, List.of("u1-shard-0"));
+        verify(metadataStore, never()).deleteAll(any());
+    }
+
+    @Test
+    void cleanupShouldSplitUploadsOfOneDataNodeIntoBatches() {
+        properties.getCleanup().setBatchSize(2);
+        List<FileMetadata> stale = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            stale.add(FileMetadata.builder()
+                    .uploadId("u" + i)
+                    .filePath("/remote/" + i + ".txt")
+                    .dataNodeAddress("datanode1:50051")
+                    .status(FileStatus.UPLOADING)
+                    .createdAt(1_000L)
+                    .build());
+        }
+        when(metadataStore.findUploadingOlderThan(anyLong())).thenReturn(stale);
+
+        cleanupService.startRound().join();
+
+        verify(dataNodeControlClient).deleteUploads("datanode1", 50051, List.of("u0", "u1"));
+        verify(dataNodeControlClient).deleteUploads("datanode1", 50051, List.of("u2", "u3"));
+        verify(dataNodeControlClient).deleteUploads("datanode1", 50051, List.of("u4"));
+        verify(metadataStore).deleteAll(stale);
+    }
+
+    @Test
+    void uploadsOnSilentNodeShouldWaitForItWithinGracePeriod() {
+        FileMetadata meta = FileMetadata.builder()
+                .uploadId("u1")
+                .filePath("/remote/1.txt")
+                .dataNodeAddress("datanode3:50051")
+                .status(FileStatus.UPLOADING)
+                .createdAt(1_000L)
+                .build();
+        when(metadataStore.findUploadingOlderThan(anyLong())).thenReturn(List.of(meta));
+
+        cleanupService.startRound().join();
+
+        // узел мог просто перезапускаться: не ждём дедлайна вызова и оставляем запись до его возвращения
+        verifyNoInteractions(dataNodeControlClient);
+        verify(metadataStore, never()).deleteAll(any());
+    }
+
+    @Test
+    void uploadsOnNodeLostBeyondGracePeriodShouldBeDropped() {
+        properties.getCleanup().setLostNodeGraceMs(0);
+        FileMetadata meta = FileMetadata.builder()
+                .uploadId("u1")
+                .filePath("/remote/1.txt")
+                .dataNodeAddress("datanode3:50051")
+                .status(FileStatus.UPLOADING)
+                .createdAt(1_000L)
+                .build();
+        when(metadataStore.findUploadingOlderThan(anyLong())).thenReturn(List.of(meta));
+
+        cleanupService.startRound().join();
+
+        verifyNoInteractions(dataNodeControlClient);
+        verify(metadataStore).deleteAll(List.of(meta));
+    }
+
+    @Test
+    void cleanupWithoutStaleUploadsShouldNotTouchDataNodes() {
+        when(metadataStore.findUploadingOlderThan(anyLong())).thenReturn(List.of());
+
+        cleanupService.startRound().join();
+
+        verifyNoInteractions(dataNodeControlClient);
     }
 
 }
@@ -6,8 +6,10 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import ru.eliseevtech.storage.coordinator.model.FileMetadata;
 import ru.eliseevtech.storage.coordinator.model.FileStatus;
-import ru.eliseevtech.storage.coordinator.storage.JsonFileMetadataStore;
+import ru.eliseevtech.storage.coordinator.registry.DataNodeRegistry;
+import ru.eliseevtech.storage.coordinator.storage.MetadataStore;
 
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -18,7 +20,7 @@ import static org.mockito.Mockito.when;
 class DownloadServiceTest {
 
     @Mock
-    private JsonFileMetadataStore metadataStore;
+    private MetadataStore metadataStore;
 
     @Test
     void initiateDownloadShouldReturnInfoForFinalizedFile() {
@@ -38,7 +40,7 @@ class DownloadServiceTest {
 
         when(metadataStore.findByFilePath(filePath)).thenReturn(Optional.of(meta));
 
-        DownloadService service = new DownloadService(metadataStore);
+        DownloadService service = new DownloadService(metadataStore, new DataNodeRegistry(60_000L));
 
         DownloadInitResult result = service.initiateDownload(filePath);
 
@@ -47,13 +49,75 @@ class DownloadServiceTest {
         assertThat(result.getFileSize()).isEqualTo(123L);
     }
 
+    @Test
+    void initiateDownloadShouldPutUnavailableReplicasLast() {
+        String filePath = "/remote/test.txt";
+
+        FileMetadata meta = FileMetadata.builder()
+                .uploadId("upload-1")
+                .filePath(filePath)
+                .dataNodeAddress("datanode1:50051")
+                .replicaAddresses(List.of("datanode1:50051", "datanode2:50051", "datanode3:50051"))
+                .status(FileStatus.FINALIZED)
+                .fileSize(123L)
+                .createdAt(1_000L)
+                .build();
+
+        when(metadataStore.findByFilePath(filePath)).thenReturn(Optional.of(meta));
+
+        // datanode1 не зарегистрирован — например, выключен
+        DataNodeRegistry registry = new DataNodeRegistry(60_000L);
+        registry.register("datanode2", 50051);
+        registry.register("datanode3", 50051);
+
+        DownloadInitResult result = new DownloadService(metadataStore, registry).initiateDownload(filePath);
+
+        assertThat(result.getReplicaAddresses())
+                .hasSize(3)
+                .endsWith("datanode1:50051")
+                .containsExactlyInAnyOrder("datanode1:50051", "datanode2:50051", "datanode3:50051");
+        assertThat(result.getDataNodeAddress()).isEqualTo(result.getReplicaAddresses().get(0));
+    }
+
+    @Test
+    void initiateDownloadShouldReturnStripeLayoutForErasureCodedFile() {
+        String filePath = "/remote/archive.tar";
+
+        FileMetadata meta = FileMetadata.builder()
+                .uploadId("upload-1")
+                .filePath(filePath)
+                .dataNodeAddress("datanode1:50051")
+                .status(FileStatus.FINALIZED)
+                .fileSize(5000L)
+                .createdAt(1_000L)
+                .chunkSize(1024)
+                .dataShards(2)
+                .parityShards(1)
+                .shardAddresses(List.of("datanode1:50051", "datanode2:50051", "datanode3:50051"))
+                .build();
+
+        when(metadataStore.findByFilePath(filePath)).thenReturn(Optional.of(meta));
+
+        DownloadService service = new DownloadService(metadataStore, new DataNodeRegistry(60_000L));
+
+        DownloadInitResult result = service.initiateDownload(filePath);
+
+        // порядок ячеек в полосе задаётся индексом, поэтому адреса не переупорядочиваются
+        assertThat(result.getStripe().getDataShards()).isEqualTo(2);
+        assertThat(result.getStripe().getParityShards()).isEqualTo(1);
+        assertThat(result.getStripe().getCellSize()).isEqualTo(1024);
+        assertThat(result.getStripe().getShardAddresses()).isEqualTo(meta.getShardAddresses());
+        assertThat(result.getStripe().getShardUploadIds())
+                .containsExactly("upload-1-shard-0", "upload-1-shard-1", "upload-1-shard-2");
+    }
+
     @Test
     void initiateDownloadShouldFailWhenFileNotFound() {
         String filePath = "/remote/missing.txt";
 
         when(metadataStore.findByFilePath(filePath)).thenReturn(Optional.empty());
 
-        DownloadService service = new DownloadService(metadataStore);
+        DownloadService service = new DownloadService(metadataStore, new DataNodeRegistry(60_000L));
 
         assertThatThrownBy(() -> service.initiateDownload(filePath))
                 .isInstanceOf(IllegalArgumentException.class)
@@ -77,7 +141,7 @@ class DownloadServiceTest {
 
         when(metadataStore.findByFilePath(filePath)).thenReturn(Optional.of(meta));
 
-        DownloadService service = new DownloadService(metadataStore);
+        DownloadService service = new DownloadService(metadataStore, new DataNodeRegistry(60_000L));
 
         assertThatThrownBy(() -> service.initiateDownload(filePath))
                 .isInstanceOf(IllegalStateException.class)
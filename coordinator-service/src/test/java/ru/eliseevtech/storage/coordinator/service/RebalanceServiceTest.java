@@ -0,0 +1,245 @@
+package ru.eliseevtech.storage.coordinator.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.eliseevtech.storage.coordinator.client.DataNodeControlClient;
+import ru.eliseevtech.storage.coordinator.config.CoordinatorProperties;
+import ru.eliseevtech.storage.coordinator.model.FileMetadata;
+import ru.eliseevtech.storage.coordinator.model.FileStatus;
+import ru.eliseevtech.storage.coordinator.registry.DataNodeRegistry;
+import ru.eliseevtech.storage.coordinator.storage.MetadataStore;
+import ru.eliseevtech.storage.datanode.proto.GetUploadStatsResponse;
+import ru.eliseevtech.storage.datanode.proto.ReplicateUploadResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RebalanceServiceTest {
+
+    private static final long COPY_RATE = 25L * 1024 * 1024;
+
+    @Mock
+    private MetadataStore metadataStore;
+
+    @Mock
+    private DataNodeControlClient dataNodeControlClient;
+
+    private final DataNodeRegistry registry = new DataNodeRegistry(60_000L);
+
+    private CoordinatorProperties properties;
+
+    private RebalanceService rebalanceService;
+
+    @BeforeEach
+    void setUp() {
+        properties = new CoordinatorProperties();
+        rebalanceService = new RebalanceService(metadataStore, registry, properties, dataNodeControlClient);
+    }
+
+    @AfterEach
+    void tearDown() {
+        rebalanceService.shutdown();
+    }
+
+    private static FileMetadata finalized(String uploadId, long size, String... replicas) {
+        return FileMetadata.builder()
+                .uploadId(uploadId)
+                .filePath("/remote/" + uploadId)
+                .dataNodeAddress(replicas[0])
+                .replicaAddresses(List.of(replicas))
+                .status(FileStatus.FINALIZED)
+                .fileSize(size)
+                .createdAt(1_000L)
+                .build();
+    }
+
+    private void copySucceeds(String targetHost, long size) {
+        when(dataNodeControlClient.getUploadStats(eq(targetHost), eq(50051), anyString()))
+                .thenReturn(GetUploadStatsResponse.newBuilder().setBytesWritten(size).build());
+    }
+
+    @Test
+    void lostReplicaShouldBeRestoredOnAnotherNode() {
+        properties.setReplicationFactor(2);
+        properties.getRebalance().setLostReplicaGraceMs(0);
+        registry.register("datanode1", 50051);
+        registry.register("datanode3", 50051);
+        // datanode2 пропал из реестра вместе со своей копией
+        FileMetadata meta = finalized("u1", 100, "datanode1:50051", "datanode2:50051");
+        when(metadataStore.streamAll()).thenAnswer(invocation -> Stream.of(meta));
+        when(metadataStore.findByUploadId("u1")).thenReturn(Optional.of(meta));
+        when(dataNodeControlClient.replicateUpload(eq("datanode1"), eq(50051), eq("u1"), eq("datanode3:50051"),
+                eq(COPY_RATE), anyLong()))
+                .thenReturn(ReplicateUploadResponse.newBuilder().setSuccess(true).setBytesCopied(100).build());
+        copySucceeds("datanode3", 100);
+
+        rebalanceService.startRound().join();
+
+        ArgumentCaptor<FileMetadata> saved = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(metadataStore).save(saved.capture());
+        assertThat(saved.getValue().getReplicaAddresses()).containsExactly("datanode1:50051", "datanode3:50051");
+        assertThat(saved.getValue().getStaleReplicaAddresses()).containsExactly("datanode2:50051");
+        verify(dataNodeControlClient, never()).deleteUpload(anyString(), anyInt(), anyString());
+    }
+
+    @Test
+    void missingNodeShouldNotCountAsLostDuringGracePeriod() {
+        properties.setReplicationFactor(2);
+        registry.register("datanode1", 50051);
+        registry.register("datanode3", 50051);
+        // после перезапуска координатора datanode2 ещё не успел зарегистрироваться
+        FileMetadata meta = finalized("u1", 100, "datanode1:50051", "datanode2:50051");
+
+        assertThat(rebalanceService.plan(() -> Stream.of(meta), registry.getActiveNodes()).copies()).isEmpty();
+    }
+
+    @Test
+    void staleReplicaShouldBeDeletedWhenNodeReturns() {
+        registry.register("datanode1", 50051);
+        registry.register("datanode2", 50051);
+        FileMetadata meta = finalized("u1", 100, "datanode1:50051").toBuilder()
+                .staleReplicaAddresses(List.of("datanode2:50051"))
+                .build();
+        when(metadataStore.streamAll()).thenAnswer(invocation -> Stream.of(meta));
+        when(metadataStore.findByUploadId("u1")).thenReturn(Optional.of(meta));
+
+        rebalanceService.startRound().join();
+
+        verify(dataNodeControlClient).deleteUpload("datanode2", 50051, "u1");
+        ArgumentCaptor<FileMetadata> saved = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(metadataStore).save(saved.capture());
+        assertThat(saved.getValue().getStaleReplicaAddresses()).isNull();
+        assertThat(saved.getValue().getReplicaAddresses()).containsExactly("datanode1:50051");
+    }
+
+    @Test
+    void balancingScanShouldStopOnceRoundIsFull() {
+        properties.getRebalance().setMaxTasksPerRound(1);
+        registry.register("datanode1", 50051);
+        registry.register("datanode2", 50051);
+        List<FileMetadata> files = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            files.add(finalized("u" + i, 100, "datanode1:50051"));
+        }
+        AtomicInteger read = new AtomicInteger();
+
+        RebalanceService.Round round = rebalanceService.plan(() -> files.stream().peek(meta -> read.incrementAndGet()),
+                registry.getActiveNodes());
+
+        // первый проход считает объёмы узлов целиком, второй останавливается на первой же задаче
+        assertThat(round.copies()).hasSize(1);
+        assertThat(read.get()).isLessThan(2 * files.size());
+    }
+
+    @Test
+    void newNodeShouldReceiveDataFromOverloadedNode() {
+        registry.register("datanode1", 50051);
+        registry.register("datanode2", 50051);
+        List<FileMetadata> files = List.of(
+                finalized("u1", 100, "datanode1:50051"),
+                finalized("u2", 100, "datanode1:50051"),
+                finalized("u3", 100, "datanode1:50051"),
+                finalized("u4", 100, "datanode1:50051"));
+        when(metadataStore.streamAll()).thenAnswer(invocation -> files.stream());
+        when(metadataStore.findByUploadId(anyString())).thenAnswer(invocation -> files.stream()
+                .filter(meta -> meta.getUploadId().equals(invocation.getArgument(0)))
+                .findFirst());
+        when(dataNodeControlClient.replicateUpload(eq("datanode1"), eq(50051), anyString(), eq("datanode2:50051"),
+                eq(COPY_RATE), anyLong()))
+                .thenReturn(ReplicateUploadResponse.newBuilder().setSuccess(true).build());
+        copySucceeds("datanode2", 100);
+
+        rebalanceService.startRound().join();
+
+        // половина данных переезжает на новый узел, исходные копии удаляются после обновления метаданных
+        ArgumentCaptor<FileMetadata> saved = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(metadataStore, times(2)).save(saved.capture());
+        assertThat(saved.getAllValues()).allSatisfy(meta -> {
+            assertThat(meta.getReplicaAddresses()).containsExactly("datanode2:50051");
+            assertThat(meta.getDataNodeAddress()).isEqualTo("datanode2:50051");
+        });
+        verify(dataNodeControlClient, times(2)).deleteUpload(eq("datanode1"), eq(50051), anyString());
+    }
+
+    @Test
+    void failedCopyShouldKeepMetadataAndDropPartialReplica() {
+        properties.setReplicationFactor(2);
+        properties.getRebalance().setLostReplicaGraceMs(0);
+        registry.register("datanode1", 50051);
+        registry.register("datanode3", 50051);
+        FileMetadata meta = finalized("u1", 100, "datanode1:50051", "datanode2:50051");
+        when(metadataStore.streamAll()).thenAnswer(invocation -> Stream.of(meta));
+        when(dataNodeControlClient.replicateUpload(anyString(), anyInt(), anyString(), anyString(),
+                anyLong(), anyLong()))
+                .thenReturn(ReplicateUploadResponse.newBuilder().setSuccess(false).setErrorMessage("disk full").build());
+
+        rebalanceService.startRound().join();
+
+        verify(metadataStore, never()).save(any());
+        verify(dataNodeControlClient).deleteUpload("datanode3", 50051, "u1");
+    }
+
+    @Test
+    void roundShouldNotBlockOrOverlapWithRunningCopies() {
+        properties.setReplicationFactor(2);
+        properties.getRebalance().setLostReplicaGraceMs(0);
+        registry.register("datanode1", 50051);
+        registry.register("datanode3", 50051);
+        FileMetadata meta = finalized("u1", 100, "datanode1:50051", "datanode2:50051");
+        when(metadataStore.streamAll()).thenAnswer(invocation -> Stream.of(meta));
+        when(metadataStore.findByUploadId("u1")).thenReturn(Optional.of(meta));
+        CountDownLatch release = new CountDownLatch(1);
+        when(dataNodeControlClient.replicateUpload(anyString(), anyInt(), anyString(), anyString(),
+                anyLong(), anyLong()))
+                .thenAnswer(invocation -> {
+                    release.await();
+                    return ReplicateUploadResponse.newBuilder().setSuccess(true).build();
+                });
+        copySucceeds("datanode3", 100);
+
+        CompletableFuture<Void> first = rebalanceService.startRound();
+        // пока копия не завершена, следующий запуск планировщика не должен начинать новый раунд
+        CompletableFuture<Void> second = rebalanceService.startRound();
+
+        assertThat(first).isNotDone();
+        assertThat(second).isDone();
+        release.countDown();
+        first.join();
+        verify(metadataStore, times(1)).streamAll();
+        verify(metadataStore).save(any());
+    }
+
+    @Test
+    void balancedClusterShouldNotPlanCopies() {
+        registry.register("datanode1", 50051);
+        registry.register("datanode2", 50051);
+        List<FileMetadata> files = List.of(
+                finalized("u1", 100, "datanode1:50051"),
+                finalized("u2", 110, "datanode2:50051"));
+
+        assertThat(rebalanceService.plan(files::stream, registry.getActiveNodes()).copies()).isEmpty();
+    }
+
+}
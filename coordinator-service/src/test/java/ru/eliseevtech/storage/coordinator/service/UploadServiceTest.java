@@ -1,5 +1,6 @@
 package ru.eliseevtech.storage.coordinator.service;
 
+import com.google.protobuf.ByteString;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -12,14 +13,18 @@ import ru.eliseevtech.storage.coordinator.model.DataNodeInfo;
 import ru.eliseevtech.storage.coordinator.model.FileMetadata;
 import ru.eliseevtech.storage.coordinator.model.FileStatus;
 import ru.eliseevtech.storage.coordinator.registry.DataNodeRegistry;
-import ru.eliseevtech.storage.coordinator.storage.JsonFileMetadataStore;
+import ru.eliseevtech.storage.coordinator.storage.MetadataStore;
 import ru.eliseevtech.storage.datanode.proto.GetUploadStatsResponse;
 
+import java.util.BitSet;
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -30,7 +35,7 @@ import static org.mockito.Mockito.when;
 class UploadServiceTest {
 
     @Mock
-    private JsonFileMetadataStore metadataStore;
+    private MetadataStore metadataStore;
 
     @Mock
     private DataNodeRegistry dataNodeRegistry;
@@ -59,7 +64,7 @@ class UploadServiceTest {
         DataNodeInfo node = mock(DataNodeInfo.class);
         when(node.getHost()).thenReturn("datanode1");
         when(node.getPort()).thenReturn(50051);
-        when(dataNodeRegistry.chooseNodeForUpload()).thenReturn(Optional.of(node));
+        when(dataNodeRegistry.chooseNodesForUpload(fileSize, 1)).thenReturn(List.of(node));
 
         ArgumentCaptor<FileMetadata> metaCaptor = ArgumentCaptor.forClass(FileMetadata.class);
 
@@ -86,7 +91,7 @@ class UploadServiceTest {
     }
 
     @Test
-    void initiateUploadWithResumeShouldReturnExistingUploadingMetadata() {
+    void initiateUploadWithResumeShouldReturnChunksStoredOnDatanode() {
         String filePath = "/remote/test.txt";
 
         FileMetadata existing = FileMetadata.builder()
@@ -94,24 +99,37 @@ class UploadServiceTest {
                 .filePath(filePath)
                 .dataNodeAddress("datanode1:50051")
                 .status(FileStatus.UPLOADING)
-                .fileSize(200L)
+                .fileSize(20_000L)
                 .createdAt(1_000L)
-                .lastChunkIndex(10)
-                .bytesUploaded(10240L)
+                .lastChunkIndex(-1)
+                .bytesUploaded(0L)
                 .build();
 
         when(metadataStore.findByFilePath(filePath)).thenReturn(Optional.of(existing));
 
-        InitiateUploadResult result = uploadService.initiateUpload(filePath, 200L, true);
+        // на датаноде лежат чанки 0-9 и 11, десятый потерян
+        BitSet stored = new BitSet();
+        stored.set(0, 10);
+        stored.set(11);
+        when(dataNodeControlClient.getUploadStatsBatch("datanode1", 50051, List.of("upload-1")))
+                .thenReturn(List.of(GetUploadStatsResponse.newBuilder()
+                        .setUploadId("upload-1")
+                        .setChunksCount(12)
+                        .setBytesWritten(11 * 1024L)
+                        .setChunkBitmap(ByteString.copyFrom(stored.toByteArray()))
+                        .build()));
+
+        InitiateUploadResult result = uploadService.initiateUpload(filePath, 20_000L, true);
 
         assertThat(result.isResumed()).isTrue();
         assertThat(result.getUploadId()).isEqualTo("upload-1");
         assertThat(result.getDataNodeAddress()).isEqualTo("datanode1:50051");
         assertThat(result.getChunkSize()).isEqualTo(1024);
-        assertThat(result.getLastChunkIndex()).isEqualTo(10);
-        assertThat(result.getBytesUploaded()).isEqualTo(10240L);
+        assertThat(result.getLastChunkIndex()).isEqualTo(11);
+        assertThat(result.getBytesUploaded()).isEqualTo(11 * 1024L);
+        assertThat(result.getChunkBitmap()).isEqualTo(stored);
 
-        verify(dataNodeRegistry, never()).chooseNodeForUpload();
+        verify(dataNodeRegistry, never()).chooseNodesForUpload(anyLong(), anyInt());
         verify(metadataStore, never()).save(any());
     }
 
@@ -142,13 +160,81 @@ class UploadServiceTest {
         String filePath = "/remote/test.txt";
 
         when(metadataStore.findByFilePath(filePath)).thenReturn(Optional.empty());
-        when(dataNodeRegistry.chooseNodeForUpload()).thenReturn(Optional.empty());
+        when(dataNodeRegistry.chooseNodesForUpload(anyLong(), anyInt())).thenReturn(List.of());
 
         assertThatThrownBy(() -> uploadService.initiateUpload(filePath, 100L, false))
                 .isInstanceOf(IllegalStateException.class)
                 .hasMessageContaining("No available data nodes");
     }
 
+    @Test
+    void initiateUploadShouldPlaceReplicasAsPipeline() {
+        String filePath = "/remote/test.txt";
+        properties.setReplicationFactor(3);
+
+        when(metadataStore.findByFilePath(filePath)).thenReturn(Optional.empty());
+        when(dataNodeRegistry.chooseNodesForUpload(100L, 3)).thenReturn(List.of(
+                node("datanode1"), node("datanode2"), node("datanode3")));
+
+        InitiateUploadResult result = uploadService.initiateUpload(filePath, 100L, false);
+
+        // клиент пишет в первую реплику, остальные получают данные по цепочке
+        assertThat(result.getDataNodeAddress()).isEqualTo("datanode1:50051");
+        assertThat(result.getPipelineAddresses()).containsExactly("datanode2:50051", "datanode3:50051");
+
+        ArgumentCaptor<FileMetadata> metaCaptor = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(metadataStore).save(metaCaptor.capture());
+        assertThat(metaCaptor.getValue().getReplicaAddresses())
+                .containsExactly("datanode1:50051", "datanode2:50051", "datanode3:50051");
+    }
+
+    @Test
+    void largeFileShouldBeStripedAcrossDistinctNodes() {
+        String filePath = "/remote/archive.tar";
+        properties.getErasureCoding().setEnabled(true);
+        properties.getErasureCoding().setDataShards(2);
+        properties.getErasureCoding().setParityShards(1);
+        properties.getErasureCoding().setMinFileSizeBytes(4096);
+
+        when(metadataStore.findByFilePath(filePath)).thenReturn(Optional.empty());
+        // 5000 байт = 3 полосы по 2 ячейки в 1024 байта, каждая реплика хранит 3 ячейки
+        when(dataNodeRegistry.chooseNodesForUpload(3072L, 3)).thenReturn(List.of(
+                node("datanode1"), node("datanode2"), node("datanode3")));
+
+        InitiateUploadResult result = uploadService.initiateUpload(filePath, 5000L, false);
+
+        assertThat(result.getPipelineAddresses()).isEmpty();
+        assertThat(result.getStripe().getShardAddresses())
+                .containsExactly("datanode1:50051", "datanode2:50051", "datanode3:50051");
+        assertThat(result.getStripe().getShardUploadIds()).containsExactly(
+                result.getUploadId() + "-shard-0", result.getUploadId() + "-shard-1", result.getUploadId() + "-shard-2");
+
+        ArgumentCaptor<FileMetadata> metaCaptor = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(metadataStore).save(metaCaptor.capture());
+        assertThat(metaCaptor.getValue().erasureCoded()).isTrue();
+        assertThat(metaCaptor.getValue().getChunkSize()).isEqualTo(1024);
+        assertThat(metaCaptor.getValue().shardSize()).isEqualTo(3072L);
+    }
+
+    @Test
+    void stripedUploadShouldFallBackToReplicationWithoutEnoughNodes() {
+        String filePath = "/remote/archive.tar";
+        properties.getErasureCoding().setEnabled(true);
+        properties.getErasureCoding().setDataShards(2);
+        properties.getErasureCoding().setParityShards(1);
+        properties.getErasureCoding().setMinFileSizeBytes(4096);
+
+        when(metadataStore.findByFilePath(filePath)).thenReturn(Optional.empty());
+        when(dataNodeRegistry.chooseNodesForUpload(3072L, 3)).thenReturn(List.of(
+                node("datanode1"), node("datanode2")));
+        when(dataNodeRegistry.chooseNodesForUpload(5000L, 1)).thenReturn(List.of(node("datanode1")));
+
+        InitiateUploadResult result = uploadService.initiateUpload(filePath, 5000L, false);
+
+        assertThat(result.getStripe()).isNull();
+        assertThat(result.getDataNodeAddress()).isEqualTo("datanode1:50051");
+    }
+
     @Test
     void updateUploadProgressShouldUpdateMetadataAndPersist() {
         String uploadId = "upload-1";
@@ -197,10 +283,12 @@ class UploadServiceTest {
         GetUploadStatsResponse stats = GetUploadStatsResponse.newBuilder()
                 .setBytesWritten(100L)
                 .setChunksCount(3)
+                .setChunkSize(40)
+                .setCompositeCrc32C(0xCAFEBABE)
                 .build();
 
-        when(dataNodeControlClient.getUploadStats("datanode1", 50051, uploadId))
-                .thenReturn(stats);
+        when(dataNodeControlClient.getUploadStatsBatch("datanode1", 50051, List.of(uploadId)))
+                .thenReturn(List.of(stats));
 
         uploadService.finalizeUpload(uploadId, filePath);
 
@@ -213,6 +301,9 @@ class UploadServiceTest {
         assertThat(saved.getLastChunkIndex()).isEqualTo(2);
         assertThat(saved.getFinalizedAt()).isNotNull();
         assertThat(saved.getFinalizedAt()).isGreaterThan(0L);
+        // контрольная сумма файла сохраняется для проверки при скачивании
+        assertThat(saved.getChunkSize()).isEqualTo(40);
+        assertThat(saved.getCompositeCrc32c()).isEqualTo(0xCAFEBABE);
     }
 
     @Test
@@ -236,8 +327,8 @@ class UploadServiceTest {
                 .setChunksCount(3)
                 .build();
 
-        when(dataNodeControlClient.getUploadStats("datanode1", 50051, uploadId))
-                .thenReturn(stats);
+        when(dataNodeControlClient.getUploadStatsBatch("datanode1", 50051, List.of(uploadId)))
+                .thenReturn(List.of(stats));
 
         assertThatThrownBy(() -> uploadService.finalizeUpload(uploadId, filePath))
                 .isInstanceOf(IllegalStateException.class)
@@ -246,6 +337,69 @@ class UploadServiceTest {
         verify(metadataStore, never()).save(any());
     }
 
+    @Test
+    void finalizeUploadShouldFailWhenReplicaIsIncomplete() {
+        String uploadId = "upload-1";
+        String filePath = "/remote/test.txt";
+
+        FileMetadata existing = FileMetadata.builder()
+                .uploadId(uploadId)
+                .filePath(filePath)
+                .dataNodeAddress("datanode1:50051")
+                .replicaAddresses(List.of("datanode1:50051", "datanode2:50051"))
+                .status(FileStatus.UPLOADING)
+                .fileSize(100L)
+                .createdAt(1_000L)
+                .build();
+
+        when(metadataStore.findByUploadId(uploadId)).thenReturn(Optional.of(existing));
+        when(dataNodeControlClient.getUploadStatsBatch("datanode1", 50051, List.of(uploadId)))
+                .thenReturn(List.of(GetUploadStatsResponse.newBuilder().setBytesWritten(100L).setChunksCount(3).build()));
+        // вторая реплика отстала по цепочке
+        when(dataNodeControlClient.getUploadStatsBatch("datanode2", 50051, List.of(uploadId)))
+                .thenReturn(List.of(GetUploadStatsResponse.newBuilder().setBytesWritten(60L).setChunksCount(2).build()));
+
+        assertThatThrownBy(() -> uploadService.finalizeUpload(uploadId, filePath))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("File size mismatch on datanode2:50051");
+
+        verify(metadataStore, never()).save(any());
+    }
+
+    @Test
+    void finalizeStripedUploadShouldRequireEveryShard() {
+        String uploadId = "upload-1";
+        String filePath = "/remote/archive.tar";
+
+        FileMetadata existing = FileMetadata.builder()
+                .uploadId(uploadId)
+                .filePath(filePath)
+                .dataNodeAddress("datanode1:50051")
+                .status(FileStatus.UPLOADING)
+                .fileSize(5000L)
+                .createdAt(1_000L)
+                .chunkSize(1024)
+                .dataShards(2)
+                .parityShards(1)
+                .shardAddresses(List.of("datanode1:50051", "datanode2:50051", "datanode3:50051"))
+                .build();
+
+        when(metadataStore.findByUploadId(uploadId)).thenReturn(Optional.of(existing));
+        when(dataNodeControlClient.getUploadStatsBatch("datanode1", 50051, List.of(uploadId + "-shard-0")))
+                .thenReturn(List.of(GetUploadStatsResponse.newBuilder().setBytesWritten(3072L).build()));
+        when(dataNodeControlClient.getUploadStatsBatch("datanode2", 50051, List.of(uploadId + "-shard-1")))
+                .thenReturn(List.of(GetUploadStatsResponse.newBuilder().setBytesWritten(3072L).build()));
+        // чётность дописана не до конца
+        when(dataNodeControlClient.getUploadStatsBatch("datanode3", 50051, List.of(uploadId + "-shard-2")))
+                .thenReturn(List.of(GetUploadStatsResponse.newBuilder().setBytesWritten(2048L).build()));
+
+        assertThatThrownBy(() -> uploadService.finalizeUpload(uploadId, filePath))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Shard 2 size mismatch on datanode3:50051");
+
+        verify(metadataStore, never()).save(any());
+    }
+
     @Test
     void getUploadStatusShouldReturnDataFromMetadata() {
         String uploadId = "upload-1";
@@ -271,4 +425,8 @@ class UploadServiceTest {
         assertThat(status.getBytesUploaded()).isEqualTo(10240L);
     }
 
+    private static DataNodeInfo node(String host) {
+        return DataNodeInfo.builder().nodeId(host).host(host).port(50051).build();
+    }
+
 }
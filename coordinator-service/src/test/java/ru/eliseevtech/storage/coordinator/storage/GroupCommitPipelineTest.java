@@ -0,0 +1,65 @@
+package ru.eliseevtech.storage.coordinator.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GroupCommitPipelineTest {
+
+    @Test
+    void concurrentSubmissionsShouldBeFlushedInFewBatches() throws Exception {
+        List<Integer> flushed = new CopyOnWriteArrayList<>();
+        GroupCommitPipeline<Integer> pipeline = new GroupCommitPipeline<>("test-writer", 1024, batch -> {
+            Thread.sleep(5);
+            flushed.addAll(batch);
+        });
+
+        int threads = 16;
+        int perThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int base = t * perThread;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    GroupCommitPipeline.await(pipeline.submit(base + i));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        pipeline.close();
+
+        assertThat(flushed).hasSize(threads * perThread).doesNotHaveDuplicates();
+        assertThat(pipeline.mutationCount()).isEqualTo(threads * perThread);
+        assertThat(pipeline.flushCount()).isLessThan(threads * perThread / 2);
+    }
+
+    @Test
+    void flushFailureShouldFailPendingAndLaterSubmissions() {
+        GroupCommitPipeline<String> pipeline = new GroupCommitPipeline<>("test-writer", 16, batch -> {
+            throw new IOException("disk full");
+        });
+
+        CompletableFuture<Void> first = pipeline.submit("a");
+
+        assertThatThrownBy(() -> GroupCommitPipeline.await(first))
+                .hasMessageContaining("Failed to persist metadata")
+                .hasRootCauseMessage("disk full");
+        assertThat(pipeline.submit("b")).isCompletedExceptionally();
+        pipeline.close();
+    }
+
+}
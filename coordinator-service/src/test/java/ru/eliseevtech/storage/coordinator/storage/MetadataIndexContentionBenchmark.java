@@ -0,0 +1,124 @@
+package ru.eliseevtech.storage.coordinator.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.eliseevtech.storage.coordinator.model.FileMetadata;
+import ru.eliseevtech.storage.coordinator.model.FileStatus;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetadataIndexContentionBenchmark {
+
+    private static final int FILES = 100_000;
+
+    private final LockedIndex locked = new LockedIndex();
+    private final MetadataIndex striped = new MetadataIndex();
+    private FileMetadata[] files;
+
+    @Setup
+    public void setUp() {
+        files = new FileMetadata[FILES];
+        for (int i = 0; i < FILES; i++) {
+            files[i] = FileMetadata.builder()
+                    .uploadId("upload-" + i)
+                    .filePath("/remote/file-" + i)
+                    .dataNodeAddress("datanode1:50051")
+                    .status(FileStatus.UPLOADING)
+                    .createdAt(i)
+                    .build();
+            locked.put(files[i]);
+            striped.put(files[i]);
+        }
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(6)
+    public Optional<FileMetadata> lockedRead() {
+        return locked.findByFilePath(randomFile().getFilePath());
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(2)
+    public void lockedWrite() {
+        locked.put(randomFile());
+    }
+
+    @Benchmark
+    @Group("striped")
+    @GroupThreads(6)
+    public Optional<FileMetadata> stripedRead() {
+        return striped.findByFilePath(randomFile().getFilePath());
+    }
+
+    @Benchmark
+    @Group("striped")
+    @GroupThreads(2)
+    public void stripedWrite() {
+        striped.put(randomFile());
+    }
+
+    private FileMetadata randomFile() {
+        return files[ThreadLocalRandom.current().nextInt(FILES)];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MetadataIndexContentionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    private static final class LockedIndex {
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<String, FileMetadata> byFilePath = new HashMap<>();
+        private final Map<String, FileMetadata> byUploadId = new HashMap<>();
+
+        Optional<FileMetadata> findByFilePath(String filePath) {
+            lock.readLock().lock();
+            try {
+                return Optional.ofNullable(byFilePath.get(filePath));
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void put(FileMetadata meta) {
+            lock.writeLock().lock();
+            try {
+                byFilePath.put(meta.getFilePath(), meta);
+                byUploadId.put(meta.getUploadId(), meta);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,74 @@
+package ru.eliseevtech.storage.coordinator.storage;
+
+import org.junit.jupiter.api.Test;
+import ru.eliseevtech.storage.coordinator.model.FileMetadata;
+import ru.eliseevtech.storage.coordinator.model.FileStatus;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetadataIndexTest {
+
+    private FileMetadata metadata(String uploadId, String filePath) {
+        return FileMetadata.builder()
+                .uploadId(uploadId)
+                .filePath(filePath)
+                .status(FileStatus.UPLOADING)
+                .build();
+    }
+
+    @Test
+    void deleteOfReplacedUploadShouldKeepNewerPathMapping() {
+        MetadataIndex index = new MetadataIndex();
+        FileMetadata stale = metadata("upload-1", "/remote/test.txt");
+        FileMetadata current = metadata("upload-2", "/remote/test.txt");
+        index.put(stale);
+        index.put(current);
+
+        index.remove(stale);
+
+        assertThat(index.findByUploadId("upload-1")).isEmpty();
+        assertThat(index.findByFilePath("/remote/test.txt")).contains(current);
+    }
+
+    @Test
+    void movingUploadToAnotherPathShouldDropOldPathMapping() {
+        MetadataIndex index = new MetadataIndex();
+        index.put(metadata("upload-1", "/remote/old.txt"));
+
+        index.put(metadata("upload-1", "/remote/new.txt"));
+
+        assertThat(index.findByFilePath("/remote/old.txt")).isEmpty();
+        assertThat(index.findByFilePath("/remote/new.txt")).isPresent();
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    void findUploadingOlderThanShouldFollowStatusAndCreatedAtChanges() {
+        MetadataIndex index = new MetadataIndex();
+        FileMetadata finalized = metadata("upload-1", "/remote/a.txt");
+        finalized.setCreatedAt(1000L);
+        FileMetadata stale = metadata("upload-2", "/remote/b.txt");
+        stale.setCreatedAt(2000L);
+        FileMetadata fresh = metadata("upload-3", "/remote/c.txt");
+        fresh.setCreatedAt(9000L);
+        index.put(finalized);
+        index.put(stale);
+        index.put(fresh);
+
+        finalized.setStatus(FileStatus.FINALIZED);
+        index.put(finalized);
+        index.put(fresh.toBuilder().createdAt(500L).build());
+        index.put(fresh.toBuilder().createdAt(9500L).build());
+
+        List<FileMetadata> result = index.findUploadingOlderThan(5000L);
+
+        assertThat(result).extracting(FileMetadata::getUploadId).containsExactly("upload-2");
+        index.remove(stale);
+        assertThat(index.findUploadingOlderThan(Long.MAX_VALUE))
+                .extracting(FileMetadata::getUploadId)
+                .containsExactly("upload-3");
+    }
+
+}
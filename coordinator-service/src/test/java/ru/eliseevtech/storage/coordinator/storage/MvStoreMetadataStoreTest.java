@@ -0,0 +1,105 @@
+package ru.eliseevtech.storage.coordinator.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.eliseevtech.storage.coordinator.model.FileMetadata;
+import ru.eliseevtech.storage.coordinator.model.FileStatus;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MvStoreMetadataStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private MvStoreMetadataStore open() {
+        return new MvStoreMetadataStore(tempDir.resolve("metadata.mv.db"), 4);
+    }
+
+    private FileMetadata metadata(String uploadId, FileStatus status, long createdAt) {
+        return FileMetadata.builder()
+                .uploadId(uploadId)
+                .filePath("/remote/" + uploadId + ".txt")
+                .dataNodeAddress("datanode1:50051")
+                .status(status)
+                .fileSize(100L)
+                .createdAt(createdAt)
+                .bytesUploaded(0L)
+                .lastChunkIndex(-1)
+                .build();
+    }
+
+    @Test
+    void saveShouldAllowFindingByFilePathAndUploadId() {
+        MvStoreMetadataStore store = open();
+        store.save(metadata("upload-1", FileStatus.UPLOADING, 1000L));
+
+        Optional<FileMetadata> byPath = store.findByFilePath("/remote/upload-1.txt");
+        Optional<FileMetadata> byId = store.findByUploadId("upload-1");
+
+        assertThat(byPath).isPresent();
+        assertThat(byPath.get().getUploadId()).isEqualTo("upload-1");
+        assertThat(byId).isPresent();
+        assertThat(byId.get().getFilePath()).isEqualTo("/remote/upload-1.txt");
+        store.close();
+    }
+
+    @Test
+    void dataShouldBeLoadedFromDiskOnReopen() {
+        MvStoreMetadataStore store1 = open();
+        FileMetadata kept = metadata("upload-1", FileStatus.UPLOADING, 1000L);
+        FileMetadata removed = metadata("upload-2", FileStatus.UPLOADING, 1000L);
+        store1.save(kept);
+        store1.save(removed);
+        store1.save(kept.toBuilder().status(FileStatus.FINALIZED).finalizedAt(2000L).build());
+        store1.delete(removed);
+        store1.close();
+
+        MvStoreMetadataStore store2 = open();
+
+        assertThat(store2.findAll()).hasSize(1);
+        FileMetadata loaded = store2.findByFilePath("/remote/upload-1.txt").orElseThrow();
+        assertThat(loaded.getStatus()).isEqualTo(FileStatus.FINALIZED);
+        assertThat(loaded.getFinalizedAt()).isEqualTo(2000L);
+        assertThat(store2.findByFilePath("/remote/upload-2.txt")).isEmpty();
+        store2.close();
+    }
+
+    @Test
+    void findUploadingOlderThanShouldReturnOnlyMatchingEntries() {
+        MvStoreMetadataStore store = open();
+        store.save(metadata("old-uploading", FileStatus.UPLOADING, 1000L));
+        store.save(metadata("fresh-uploading", FileStatus.UPLOADING, 9000L));
+        store.save(metadata("finalized", FileStatus.FINALIZED, 1000L));
+
+        List<FileMetadata> result = store.findUploadingOlderThan(5000L);
+
+        assertThat(result).extracting(FileMetadata::getUploadId).containsExactly("old-uploading");
+        store.close();
+    }
+
+    @Test
+    void uploadingIndexShouldSurviveReopenAndFollowStatusChanges() {
+        MvStoreMetadataStore store1 = open();
+        FileMetadata finalized = metadata("finalized-later", FileStatus.UPLOADING, 1000L);
+        store1.save(finalized);
+        store1.save(metadata("deleted", FileStatus.UPLOADING, 1500L));
+        store1.save(metadata("stale", FileStatus.UPLOADING, 2000L));
+        store1.save(finalized.toBuilder().status(FileStatus.FINALIZED).build());
+        store1.delete(metadata("deleted", FileStatus.UPLOADING, 1500L));
+        store1.close();
+
+        MvStoreMetadataStore store2 = open();
+
+        assertThat(store2.findUploadingOlderThan(5000L))
+                .extracting(FileMetadata::getUploadId)
+                .containsExactly("stale");
+        assertThat(store2.findUploadingOlderThan(2000L)).isEmpty();
+        store2.close();
+    }
+
+}
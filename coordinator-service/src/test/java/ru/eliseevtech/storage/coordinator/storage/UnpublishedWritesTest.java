@@ -0,0 +1,70 @@
+package ru.eliseevtech.storage.coordinator.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UnpublishedWritesTest {
+
+    private final Map<String, String> live = new HashMap<>();
+    private final UnpublishedWrites<String, String> unpublished = new UnpublishedWrites<>();
+
+    private void write(String key, String value) {
+        unpublished.record(key, live.get(key));
+        live.put(key, value);
+    }
+
+    private String read(String key) {
+        return unpublished.read(key, live.get(key));
+    }
+
+    @Test
+    void writeShouldStayHiddenUntilCommitIsPublished() {
+        live.put("a", "v1");
+
+        write("a", "v2");
+        write("b", "v1");
+        Runnable publish = unpublished.committed(live::get);
+
+        assertThat(read("a")).isEqualTo("v1");
+        assertThat(read("b")).isNull();
+
+        publish.run();
+
+        assertThat(read("a")).isEqualTo("v2");
+        assertThat(read("b")).isEqualTo("v1");
+        assertThat(unpublished.snapshot()).isEmpty();
+    }
+
+    @Test
+    void writeAfterCommitStartedShouldWaitForNextCommit() {
+        live.put("a", "v1");
+        write("a", "v2");
+        Runnable publish = unpublished.committed(live::get);
+
+        // запись пришла между commit и sync: первая запись уже на диске, вторая ещё нет
+        write("a", "v3");
+        publish.run();
+
+        assertThat(read("a")).isEqualTo("v2");
+        unpublished.committed(live::get).run();
+        assertThat(read("a")).isEqualTo("v3");
+    }
+
+    @Test
+    void failedCommitShouldKeepDurableValues() {
+        live.put("a", "v1");
+        write("a", "v2");
+        write("b", "v1");
+
+        // sync не прошёл, публикация не запускалась: читатели видят последнее сохранённое состояние
+        unpublished.committed(live::get);
+
+        assertThat(read("a")).isEqualTo("v1");
+        assertThat(read("b")).isNull();
+    }
+
+}
@@ -0,0 +1,216 @@
+package ru.eliseevtech.storage.coordinator.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.eliseevtech.storage.coordinator.model.FileMetadata;
+import ru.eliseevtech.storage.coordinator.model.FileStatus;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WalMetadataStoreTest {
+
+    private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private ObjectMapper objectMapper() {
+        return JsonMapper.builder().findAndAddModules().build();
+    }
+
+    private WalMetadataStore open(long segmentSize) {
+        return new WalMetadataStore(tempDir.resolve("wal"), segmentSize,
+                tempDir.resolve("metadata.json"), objectMapper());
+    }
+
+    private FileMetadata metadata(String uploadId, FileStatus status) {
+        return FileMetadata.builder()
+                .uploadId(uploadId)
+                .filePath("/remote/" + uploadId + ".txt")
+                .dataNodeAddress("datanode1:50051")
+                .status(status)
+                .fileSize(100L)
+                .createdAt(1000L)
+                .bytesUploaded(0L)
+                .lastChunkIndex(-1)
+                .build();
+    }
+
+    private List<Path> list(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(tempDir.resolve("wal"))) {
+            return files.filter(p -> p.getFileName().toString().startsWith(prefix)).toList();
+        }
+    }
+
+    @Test
+    void mutationsShouldSurviveRestart() throws IOException {
+        WalMetadataStore store1 = open(SEGMENT_SIZE);
+        FileMetadata kept = metadata("upload-1", FileStatus.UPLOADING);
+        FileMetadata removed = metadata("upload-2", FileStatus.UPLOADING);
+        store1.save(kept);
+        store1.save(removed);
+        store1.save(kept.toBuilder().status(FileStatus.FINALIZED).finalizedAt(2000L).build());
+        store1.delete(removed);
+        store1.close();
+
+        WalMetadataStore store2 = open(SEGMENT_SIZE);
+
+        assertThat(store2.findAll()).hasSize(1);
+        Optional<FileMetadata> byPath = store2.findByFilePath("/remote/upload-1.txt");
+        assertThat(byPath).isPresent();
+        assertThat(byPath.get().getStatus()).isEqualTo(FileStatus.FINALIZED);
+        assertThat(byPath.get().getFinalizedAt()).isEqualTo(2000L);
+        assertThat(store2.findByUploadId("upload-2")).isEmpty();
+        store2.close();
+    }
+
+    @Test
+    void callerMutationsShouldNotLeakIntoStore() throws IOException {
+        WalMetadataStore store = open(SEGMENT_SIZE);
+        FileMetadata meta = metadata("upload-1", FileStatus.UPLOADING);
+        store.save(meta);
+
+        // изменения объекта без save не видны читателям
+        meta.setStatus(FileStatus.FINALIZED);
+        store.findByUploadId("upload-1").orElseThrow().setBytesUploaded(42L);
+
+        FileMetadata stored = store.findByUploadId("upload-1").orElseThrow();
+        assertThat(stored.getStatus()).isEqualTo(FileStatus.UPLOADING);
+        assertThat(stored.getBytesUploaded()).isZero();
+        store.close();
+    }
+
+    @Test
+    void rejectedWriteShouldNotBecomeVisible() throws IOException {
+        WalMetadataStore store = open(SEGMENT_SIZE);
+        store.save(metadata("upload-1", FileStatus.UPLOADING));
+        store.close();
+
+        // журнал уже не принимает записи: изменение не должно попасть в индекс
+        assertThatThrownBy(() -> store.save(metadata("upload-2", FileStatus.UPLOADING)))
+                .hasMessageContaining("Failed to persist metadata");
+        assertThatThrownBy(() -> store.delete(metadata("upload-1", FileStatus.UPLOADING)))
+                .hasMessageContaining("Failed to persist metadata");
+
+        assertThat(store.findByUploadId("upload-2")).isEmpty();
+        assertThat(store.findByUploadId("upload-1")).isPresent();
+    }
+
+    @Test
+    void checksumShouldSurviveRestartAndCompaction() throws IOException {
+        WalMetadataStore store1 = open(256);
+        FileMetadata withChecksum = metadata("upload-1", FileStatus.FINALIZED).toBuilder()
+                .chunkSize(1024)
+                .compositeCrc32c(0xCAFEBABE)
+                .replicaAddresses(List.of("datanode1:50051", "datanode2:50051"))
+                .staleReplicaAddresses(List.of("datanode3:50051"))
+                .build();
+        store1.save(withChecksum);
+        for (int i = 2; i < 20; i++) {
+            store1.save(metadata("upload-" + i, FileStatus.UPLOADING));
+        }
+        store1.close();
+
+        // часть записей восстанавливается из снапшота, часть из журнала
+        WalMetadataStore store2 = open(256);
+        assertThat(store2.findByUploadId("upload-1")).contains(withChecksum);
+        assertThat(store2.findByUploadId("upload-2").orElseThrow().getCompositeCrc32c()).isNull();
+        store2.close();
+    }
+
+    @Test
+    void unknownRecordVersionShouldBeRejected() {
+        byte[] record = FileMetadataCodec.toBytes(metadata("upload-1", FileStatus.UPLOADING));
+        record[0] = (byte) (FileMetadataCodec.VERSION + 1);
+
+        assertThatThrownBy(() -> FileMetadataCodec.fromBytes(record)).isInstanceOf(UncheckedIOException.class);
+    }
+
+    @Test
+    void stripeLayoutShouldSurviveRestartAndCompaction() throws IOException {
+        WalMetadataStore store1 = open(256);
+        FileMetadata striped = metadata("upload-1", FileStatus.FINALIZED).toBuilder()
+                .chunkSize(1024)
+                .dataShards(2)
+                .parityShards(1)
+                .shardAddresses(List.of("datanode1:50051", "datanode2:50051", "datanode3:50051"))
+                .build();
+        store1.save(striped);
+        for (int i = 2; i < 20; i++) {
+            store1.save(metadata("upload-" + i, FileStatus.UPLOADING));
+        }
+        store1.close();
+
+        WalMetadataStore store2 = open(256);
+        assertThat(store2.findByUploadId("upload-1")).contains(striped);
+        assertThat(store2.findByUploadId("upload-2").orElseThrow().erasureCoded()).isFalse();
+        store2.close();
+    }
+
+    @Test
+    void tornTailRecordShouldBeDiscardedOnRecovery() throws IOException {
+        WalMetadataStore store1 = open(SEGMENT_SIZE);
+        store1.save(metadata("upload-1", FileStatus.UPLOADING));
+        store1.close();
+
+        Path segment = list("wal-").get(0);
+        Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        WalMetadataStore store2 = open(SEGMENT_SIZE);
+        assertThat(store2.findAll()).extracting(FileMetadata::getUploadId).containsExactly("upload-1");
+        store2.save(metadata("upload-2", FileStatus.UPLOADING));
+        store2.close();
+
+        WalMetadataStore store3 = open(SEGMENT_SIZE);
+
+        assertThat(store3.findAll()).extracting(FileMetadata::getUploadId)
+                .containsExactlyInAnyOrder("upload-1", "upload-2");
+        store3.close();
+    }
+
+    @Test
+    void compactionShouldReplaceSegmentsWithSnapshot() throws IOException {
+        WalMetadataStore store1 = open(256);
+        for (int i = 0; i < 20; i++) {
+            store1.save(metadata("upload-" + i, FileStatus.UPLOADING));
+        }
+        store1.compact();
+        store1.delete(metadata("upload-0", FileStatus.UPLOADING));
+        store1.close();
+
+        assertThat(list("snapshot-")).hasSize(1);
+
+        WalMetadataStore store2 = open(256);
+
+        assertThat(store2.findAll()).hasSize(19);
+        assertThat(store2.findByUploadId("upload-0")).isEmpty();
+        assertThat(store2.findByUploadId("upload-19")).isPresent();
+        store2.close();
+    }
+
+    @Test
+    void legacyJsonFileShouldBeImportedOnFirstStart() throws IOException {
+        JsonFileMetadataStore legacy = new JsonFileMetadataStore(tempDir.resolve("metadata.json"), objectMapper());
+        legacy.save(metadata("legacy-1", FileStatus.FINALIZED));
+
+        WalMetadataStore store = open(SEGMENT_SIZE);
+
+        assertThat(store.findByUploadId("legacy-1")).isPresent();
+        assertThat(list("snapshot-")).hasSize(1);
+        store.close();
+    }
+
+}
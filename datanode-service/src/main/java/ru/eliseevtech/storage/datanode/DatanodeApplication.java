@@ -3,10 +3,12 @@ package ru.eliseevtech.storage.datanode;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import ru.eliseevtech.storage.datanode.lifecycle.CoordinatorClientProperties;
 import ru.eliseevtech.storage.datanode.service.DatanodeProperties;
 
 @SpringBootApplication
+@EnableScheduling
 @EnableConfigurationProperties({DatanodeProperties.class, CoordinatorClientProperties.class})
 public class DatanodeApplication {
 
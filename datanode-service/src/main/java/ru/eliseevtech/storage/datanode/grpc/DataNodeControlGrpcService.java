@@ -1,16 +1,27 @@
 package ru.eliseevtech.storage.datanode.grpc;
 
+import com.google.protobuf.ByteString;
 import io.grpc.stub.StreamObserver;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import net.devh.boot.grpc.server.service.GrpcService;
+import ru.eliseevtech.storage.datanode.model.ChunkSummary;
 import ru.eliseevtech.storage.datanode.model.UploadStats;
 import ru.eliseevtech.storage.datanode.proto.DataNodeControlServiceGrpc;
 import ru.eliseevtech.storage.datanode.proto.DeleteUploadRequest;
 import ru.eliseevtech.storage.datanode.proto.DeleteUploadResponse;
+import ru.eliseevtech.storage.datanode.proto.DeleteUploadsRequest;
+import ru.eliseevtech.storage.datanode.proto.DeleteUploadsResponse;
+import ru.eliseevtech.storage.datanode.proto.GetUploadStatsBatchRequest;
+import ru.eliseevtech.storage.datanode.proto.GetUploadStatsBatchResponse;
 import ru.eliseevtech.storage.datanode.proto.GetUploadStatsRequest;
 import ru.eliseevtech.storage.datanode.proto.GetUploadStatsResponse;
+import ru.eliseevtech.storage.datanode.proto.ReplicateUploadRequest;
+import ru.eliseevtech.storage.datanode.proto.ReplicateUploadResponse;
+import ru.eliseevtech.storage.datanode.replication.UploadReplicator;
 import ru.eliseevtech.storage.datanode.service.FileStorageService;
 
+@Slf4j
 @GrpcService
 @RequiredArgsConstructor
 public class DataNodeControlGrpcService
@@ -18,6 +29,8 @@ public class DataNodeControlGrpcService
 
     private final FileStorageService storageService;
 
+    private final UploadReplicator uploadReplicator;
+
     @Override
     public void deleteUpload(DeleteUploadRequest request,
                              StreamObserver<DeleteUploadResponse> responseObserver) {
@@ -32,14 +45,63 @@ public class DataNodeControlGrpcService
     @Override
     public void getUploadStats(GetUploadStatsRequest request,
                                StreamObserver<GetUploadStatsResponse> responseObserver) {
-        UploadStats stats = storageService.getUploadStats(request.getUploadId());
-        GetUploadStatsResponse response = GetUploadStatsResponse.newBuilder()
-                .setUploadId(stats.getUploadId())
-                .setChunksCount(stats.getChunksCount())
-                .setBytesWritten(stats.getBytesWritten())
+        responseObserver.onNext(toResponse(request.getUploadId()));
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void deleteUploads(DeleteUploadsRequest request,
+                              StreamObserver<DeleteUploadsResponse> responseObserver) {
+        for (String uploadId : request.getUploadIdsList()) {
+            storageService.deleteUpload(uploadId);
+        }
+        DeleteUploadsResponse response = DeleteUploadsResponse.newBuilder()
+                .setDeletedCount(request.getUploadIdsCount())
                 .build();
         responseObserver.onNext(response);
         responseObserver.onCompleted();
     }
 
+    @Override
+    public void getUploadStatsBatch(GetUploadStatsBatchRequest request,
+                                    StreamObserver<GetUploadStatsBatchResponse> responseObserver) {
+        GetUploadStatsBatchResponse.Builder response = GetUploadStatsBatchResponse.newBuilder();
+        for (String uploadId : request.getUploadIdsList()) {
+            response.addStats(toResponse(uploadId));
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void replicateUpload(ReplicateUploadRequest request,
+                                StreamObserver<ReplicateUploadResponse> responseObserver) {
+        ReplicateUploadResponse.Builder response = ReplicateUploadResponse.newBuilder();
+        try {
+            long copied = uploadReplicator.replicate(request.getUploadId(), request.getTargetAddress(),
+                    request.getRateLimitBytesPerSecond());
+            response.setSuccess(true).setBytesCopied(copied);
+        } catch (RuntimeException e) {
+            log.warn("Replication of upload {} to {} failed", request.getUploadId(), request.getTargetAddress(), e);
+            response.setSuccess(false).setErrorMessage(String.valueOf(e.getMessage()));
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    private GetUploadStatsResponse toResponse(String uploadId) {
+        UploadStats stats = storageService.getUploadStats(uploadId);
+        ChunkSummary chunks = storageService.getChunkSummary(uploadId);
+        GetUploadStatsResponse.Builder response = GetUploadStatsResponse.newBuilder()
+                .setUploadId(stats.getUploadId())
+                .setChunksCount(stats.getChunksCount())
+                .setBytesWritten(stats.getBytesWritten())
+                .setChunkBitmap(ByteString.copyFrom(chunks.getChunks().toByteArray()))
+                .setChunkSize(chunks.getChunkSize());
+        if (chunks.getCompositeCrc32c() != null) {
+            response.setCompositeCrc32C(chunks.getCompositeCrc32c());
+        }
+        return response.build();
+    }
+
 }
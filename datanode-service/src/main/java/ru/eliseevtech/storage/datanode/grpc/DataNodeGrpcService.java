@@ -1,40 +1,84 @@
 package ru.eliseevtech.storage.datanode.grpc;
 
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import lombok.RequiredArgsConstructor;
 import net.devh.boot.grpc.server.service.GrpcService;
+import ru.eliseevtech.storage.datanode.model.StoredChecksums;
 import ru.eliseevtech.storage.datanode.proto.DataNodeServiceGrpc;
 import ru.eliseevtech.storage.datanode.proto.DownloadChunk;
+import ru.eliseevtech.storage.datanode.proto.DownloadRangeRequest;
 import ru.eliseevtech.storage.datanode.proto.DownloadRequest;
 import ru.eliseevtech.storage.datanode.proto.UploadChunk;
 import ru.eliseevtech.storage.datanode.proto.UploadResponse;
+import ru.eliseevtech.storage.datanode.replication.ReplicaChannelPool;
+import ru.eliseevtech.storage.datanode.service.BufferPool;
 import ru.eliseevtech.storage.datanode.service.FileStorageService;
+import ru.eliseevtech.storage.datanode.service.NodeLoadTracker;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Optional;
 
 @GrpcService
 @RequiredArgsConstructor
 public class DataNodeGrpcService extends DataNodeServiceGrpc.DataNodeServiceImplBase {
 
+    private static final int DOWNLOAD_CHUNK_SIZE = 1024 * 1024;
+
     private final FileStorageService storageService;
 
+    private final BufferPool bufferPool;
+
+    private final NodeLoadTracker loadTracker;
+
+    private final ReplicaChannelPool replicaChannels;
+
     @Override
     public StreamObserver<UploadChunk> uploadFileStream(StreamObserver<UploadResponse> responseObserver) {
-        return new UploadStreamObserver(storageService, responseObserver);
+        return new UploadStreamObserver(storageService, loadTracker, replicaChannels, responseObserver);
     }
 
     @Override
     public void downloadFileStream(DownloadRequest request,
                                    StreamObserver<DownloadChunk> responseObserver) {
-        storageService.streamChunks(request.getUploadId(), 1024 * 1024, (index, data, isLast) -> {
-            DownloadChunk chunk = DownloadChunk.newBuilder()
-                    .setChunkIndex(index)
-                    .setData(com.google.protobuf.ByteString.copyFrom(data))
-                    .setIsLast(isLast)
-                    .build();
-            responseObserver.onNext(chunk);
-            if (isLast) {
-                responseObserver.onCompleted();
+        startDownload(request.getUploadId(), 0, -1, responseObserver);
+    }
+
+    @Override
+    public void downloadRange(DownloadRangeRequest request,
+                              StreamObserver<DownloadChunk> responseObserver) {
+        startDownload(request.getUploadId(), request.getOffset(), request.getLength(), responseObserver);
+    }
+
+    private void startDownload(String uploadId, long offset, long length,
+                               StreamObserver<DownloadChunk> responseObserver) {
+        Optional<StoredChecksums> checksums;
+        FileChannel channel;
+        long end;
+        try {
+            checksums = storageService.getStoredChecksums(uploadId);
+            channel = storageService.openForRead(uploadId);
+            long size = channel.size();
+            if (offset < 0 || offset > size) {
+                channel.close();
+                throw new IllegalArgumentException("Offset " + offset + " is outside of file of size " + size);
             }
-        });
+            end = length < 0 ? size : Math.min(size, offset + length);
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        } catch (IOException | RuntimeException e) {
+            responseObserver.onError(Status.INTERNAL.withDescription(e.getMessage()).withCause(e).asRuntimeException());
+            return;
+        }
+        ServerCallStreamObserver<DownloadChunk> call = (ServerCallStreamObserver<DownloadChunk>) responseObserver;
+        if (checksums.isPresent()) {
+            DownloadPump.start(call, channel, bufferPool, loadTracker, offset, end, checksums.get());
+        } else {
+            DownloadPump.start(call, channel, bufferPool, loadTracker, offset, end, DOWNLOAD_CHUNK_SIZE);
+        }
     }
 
 }
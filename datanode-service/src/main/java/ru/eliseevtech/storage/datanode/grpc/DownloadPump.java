@@ -0,0 +1,184 @@
+package ru.eliseevtech.storage.datanode.grpc;
+
+import com.google.protobuf.UnsafeByteOperations;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import lombok.extern.slf4j.Slf4j;
+import ru.eliseevtech.storage.datanode.model.StoredChecksums;
+import ru.eliseevtech.storage.datanode.proto.DownloadChunk;
+import ru.eliseevtech.storage.datanode.service.BufferPool;
+import ru.eliseevtech.storage.datanode.service.NodeLoadTracker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
+
+@Slf4j
+public class DownloadPump implements Runnable {
+
+    private final ServerCallStreamObserver<DownloadChunk> responseObserver;
+    private final FileChannel channel;
+    private final BufferPool bufferPool;
+    private final NodeLoadTracker loadTracker;
+    private final long end;
+    private final ByteBuffer buffer;
+    private final int chunkSize;
+    private final BitSet storedChunks;
+    private final int[] storedCrcs;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final CRC32C crc = new CRC32C();
+
+    private long position;
+    private int index;
+    private boolean finished;
+    private volatile boolean cancelled;
+
+    private DownloadPump(ServerCallStreamObserver<DownloadChunk> responseObserver,
+                         FileChannel channel, BufferPool bufferPool, NodeLoadTracker loadTracker,
+                         long offset, long end, int chunkSize, BitSet storedChunks, int[] storedCrcs) {
+        this.responseObserver = responseObserver;
+        this.channel = channel;
+        this.bufferPool = bufferPool;
+        this.loadTracker = loadTracker;
+        this.position = offset;
+        this.end = end;
+        this.buffer = bufferPool.acquire(chunkSize);
+        this.chunkSize = chunkSize;
+        this.storedChunks = storedChunks;
+        this.storedCrcs = storedCrcs;
+    }
+
+    public static void start(ServerCallStreamObserver<DownloadChunk> responseObserver,
+                             FileChannel channel, BufferPool bufferPool, NodeLoadTracker loadTracker,
+                             long offset, long end, int chunkSize) {
+        start(new DownloadPump(responseObserver, channel, bufferPool, loadTracker, offset, end, chunkSize,
+                null, null));
+    }
+
+    public static void start(ServerCallStreamObserver<DownloadChunk> responseObserver,
+                             FileChannel channel, BufferPool bufferPool, NodeLoadTracker loadTracker,
+                             long offset, long end, StoredChecksums checksums) {
+        start(new DownloadPump(responseObserver, channel, bufferPool, loadTracker, offset, end,
+                checksums.getChunkSize(), checksums.getChunks(), checksums.getCrc32c()));
+    }
+
+    private static void start(DownloadPump pump) {
+        pump.loadTracker.downloadStarted();
+        pump.responseObserver.setOnCancelHandler(pump::cancel);
+        pump.responseObserver.setOnReadyHandler(pump);
+        pump.run();
+    }
+
+    @Override
+    public void run() {
+        if (pending.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            drain();
+        } while (pending.decrementAndGet() != 0);
+    }
+
+    private void cancel() {
+        cancelled = true;
+        run();
+    }
+
+    private void drain() {
+        if (finished) {
+            return;
+        }
+        try {
+            while (!cancelled) {
+                if (position >= end) {
+                    finish();
+                    responseObserver.onCompleted();
+                    return;
+                }
+                if (!responseObserver.isReady()) {
+                    return;
+                }
+                int chunkIndex = (int) (position / chunkSize);
+                long chunkStart = (long) chunkIndex * chunkSize;
+                long pieceEnd = Math.min(chunkStart + chunkSize, end);
+                ByteBuffer data;
+                int crc32c;
+                if (storedChunks == null || !storedChunks.get(chunkIndex)) {
+                    data = read(position, pieceEnd, pieceEnd);
+                    crc32c = crc32c(data);
+                } else {
+                    ByteBuffer chunk = read(chunkStart, chunkStart + chunkSize, pieceEnd);
+                    data = chunk.duplicate()
+                            .limit((int) (pieceEnd - chunkStart))
+                            .position((int) (position - chunkStart));
+                    if (data.remaining() == chunk.remaining()) {
+                        crc32c = storedCrcs[chunkIndex];
+                    } else if (crc32c(chunk) != storedCrcs[chunkIndex]) {
+                        log.warn("Chunk {} at offset {} does not match its stored checksum", chunkIndex, chunkStart);
+                        finish();
+                        responseObserver.onError(Status.DATA_LOSS
+                                .withDescription("Checksum mismatch in chunk " + chunkIndex)
+                                .asRuntimeException());
+                        return;
+                    } else {
+                        crc32c = crc32c(data);
+                    }
+                }
+                long chunkOffset = position;
+                position = pieceEnd;
+                loadTracker.recordRead(data.remaining());
+                responseObserver.onNext(DownloadChunk.newBuilder()
+                        .setChunkIndex(index++)
+                        .setOffset(chunkOffset)
+                        .setData(UnsafeByteOperations.unsafeWrap(data))
+                        .setCrc32C(crc32c)
+                        .setIsLast(position >= end)
+                        .build());
+            }
+            if (cancelled) {
+                finish();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Download stream failed at offset {}", position, e);
+            finish();
+            responseObserver.onError(Status.INTERNAL.withDescription(e.getMessage()).withCause(e).asRuntimeException());
+        }
+    }
+
+    private ByteBuffer read(long from, long to, long required) throws IOException {
+        buffer.clear().limit((int) (to - from));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, from + buffer.position()) < 0) {
+                if (from + buffer.position() < required) {
+                    throw new IOException("File truncated at " + (from + buffer.position()));
+                }
+                break;
+            }
+        }
+        return buffer.flip();
+    }
+
+    private int crc32c(ByteBuffer data) {
+        crc.reset();
+        crc.update(data.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        bufferPool.release(buffer);
+        loadTracker.downloadFinished();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close download channel", e);
+        }
+    }
+
+}
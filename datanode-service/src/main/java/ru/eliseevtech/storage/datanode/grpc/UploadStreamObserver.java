@@ -1,52 +1,173 @@
 package ru.eliseevtech.storage.datanode.grpc;
 
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
 import io.grpc.stub.StreamObserver;
 import lombok.extern.slf4j.Slf4j;
 import ru.eliseevtech.storage.datanode.proto.UploadChunk;
 import ru.eliseevtech.storage.datanode.proto.UploadResponse;
+import ru.eliseevtech.storage.datanode.replication.ReplicaChannelPool;
+import ru.eliseevtech.storage.datanode.replication.ReplicaForwarder;
+import ru.eliseevtech.storage.datanode.service.ChunkChecksums;
 import ru.eliseevtech.storage.datanode.service.FileStorageService;
+import ru.eliseevtech.storage.datanode.service.NodeLoadTracker;
+
+import java.nio.ByteBuffer;
+import java.util.List;
 
 @Slf4j
 public class UploadStreamObserver implements StreamObserver<UploadChunk> {
 
     private final FileStorageService storageService;
+    private final NodeLoadTracker loadTracker;
+    private final ReplicaChannelPool replicaChannels;
     private final StreamObserver<UploadResponse> responseObserver;
 
     private String uploadId;
+    private ReplicaForwarder forwarder;
     private int lastChunkIndex = -1;
     private long totalBytes = 0;
+    private boolean failed;
 
-    public UploadStreamObserver(FileStorageService storageService,
-                                StreamObserver<UploadResponse> responseObserver) {
+    public UploadStreamObserver(FileStorageService storageService, NodeLoadTracker loadTracker,
+                                ReplicaChannelPool replicaChannels, StreamObserver<UploadResponse> responseObserver) {
         this.storageService = storageService;
+        this.loadTracker = loadTracker;
+        this.replicaChannels = replicaChannels;
         this.responseObserver = responseObserver;
     }
 
     @Override
     public void onNext(UploadChunk chunk) {
+        if (failed) {
+            return;
+        }
+        try {
+            write(chunk);
+        } catch (StatusRuntimeException e) {
+            fail(e.getStatus());
+        } catch (RuntimeException e) {
+            fail(Status.INTERNAL.withDescription(e.getMessage()).withCause(e));
+        }
+    }
+
+    private void write(UploadChunk chunk) {
         if (uploadId == null) {
             uploadId = chunk.getUploadId();
+            storageService.openSession(uploadId);
+            loadTracker.uploadStarted();
+            if (chunk.getPipelineCount() > 0) {
+                forwarder = replicaChannels.openForwarder(chunk.getPipeline(0));
+                chunk = chunk.toBuilder()
+                        .clearPipeline()
+                        .addAllPipeline(chunk.getPipelineList().subList(1, chunk.getPipelineCount()))
+                        .build();
+            }
+        }
+        if (chunk.getChunkSize() > 0) {
+            if (chunk.hasOffset() && chunk.getOffset() != (long) chunk.getChunkIndex() * chunk.getChunkSize()) {
+                throw Status.INVALID_ARGUMENT.withDescription("Chunk " + chunk.getChunkIndex()
+                        + " has offset " + chunk.getOffset() + " not matching chunk size " + chunk.getChunkSize())
+                        .asRuntimeException();
+            }
+            List<ByteBuffer> data = chunk.getData().asReadOnlyByteBufferList();
+            int crc32c = ChunkChecksums.crc32c(data);
+            if (chunk.hasCrc32C() && chunk.getCrc32C() != crc32c) {
+                throw Status.DATA_LOSS.withDescription("Checksum mismatch in chunk " + chunk.getChunkIndex()
+                        + " of upload " + chunk.getUploadId()).asRuntimeException();
+            }
+            forward(chunk);
+            storageService.writeChunk(chunk.getUploadId(), chunk.getChunkIndex(), chunk.getChunkSize(), data, crc32c);
+        } else if (chunk.hasOffset()) {
+            forward(chunk);
+            storageService.writeChunkAt(chunk.getUploadId(), chunk.getChunkIndex(), chunk.getOffset(),
+                    chunk.getData().asReadOnlyByteBufferList());
+        } else {
+            forward(chunk);
+            storageService.appendChunk(chunk.getUploadId(), chunk.getChunkIndex(),
+                    chunk.getData().asReadOnlyByteBufferList());
         }
-        storageService.appendChunk(chunk.getUploadId(), chunk.getChunkIndex(), chunk.getData().toByteArray());
         lastChunkIndex = chunk.getChunkIndex();
         totalBytes += chunk.getData().size();
+        loadTracker.recordWrite(chunk.getData().size());
+    }
+
+    private void forward(UploadChunk chunk) {
+        if (forwarder == null) {
+            return;
+        }
+        try {
+            forwarder.send(chunk);
+        } catch (IllegalStateException e) {
+            throw Status.UNAVAILABLE.withDescription(e.getMessage()).withCause(e).asRuntimeException();
+        }
+    }
+
+    private void fail(Status status) {
+        failed = true;
+        log.warn("Upload {} failed: {}", uploadId, status);
+        if (forwarder != null) {
+            forwarder.fail(status.asRuntimeException());
+        }
+        finish();
+        responseObserver.onError(status.asRuntimeException());
     }
 
     @Override
     public void onError(Throwable t) {
+        if (failed) {
+            return;
+        }
         log.warn("Upload stream error", t);
+        if (forwarder != null) {
+            forwarder.fail(t);
+        }
+        finish();
     }
 
     @Override
     public void onCompleted() {
-        UploadResponse response = UploadResponse.newBuilder()
+        if (failed) {
+            return;
+        }
+        finish();
+        UploadResponse.Builder response = UploadResponse.newBuilder()
                 .setUploadId(uploadId == null ? "" : uploadId)
                 .setUploadedChunks(lastChunkIndex + 1)
                 .setUploadedBytes(totalBytes)
-                .setSuccess(true)
-                .build();
-        responseObserver.onNext(response);
+                .setSuccess(true);
+        if (forwarder != null) {
+            String replicaError = replicaError();
+            if (replicaError != null) {
+                response.setSuccess(false).setErrorMessage(replicaError);
+            }
+        }
+        responseObserver.onNext(response.build());
         responseObserver.onCompleted();
     }
 
+    private String replicaError() {
+        try {
+            UploadResponse replica = forwarder.complete();
+            if (!replica.getSuccess()) {
+                return "Replica " + forwarder.address() + " failed: " + replica.getErrorMessage();
+            }
+            if (replica.getUploadedBytes() != totalBytes) {
+                return "Replica " + forwarder.address() + " acknowledged " + replica.getUploadedBytes()
+                        + " of " + totalBytes + " bytes";
+            }
+            return null;
+        } catch (IllegalStateException e) {
+            log.warn("Replication of upload {} failed", uploadId, e);
+            return e.getMessage();
+        }
+    }
+
+    private void finish() {
+        if (uploadId != null) {
+            storageService.closeSession(uploadId);
+            loadTracker.uploadFinished();
+        }
+    }
+
 }
@@ -2,16 +2,25 @@ package ru.eliseevtech.storage.datanode.lifecycle;
 
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.StatusRuntimeException;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import ru.eliseevtech.storage.coordinator.proto.DataNodeRegistryServiceGrpc;
+import ru.eliseevtech.storage.coordinator.proto.HeartbeatRequest;
+import ru.eliseevtech.storage.coordinator.proto.HeartbeatResponse;
+import ru.eliseevtech.storage.coordinator.proto.NodeLoad;
 import ru.eliseevtech.storage.coordinator.proto.RegisterDataNodeRequest;
 import ru.eliseevtech.storage.coordinator.proto.RegisterDataNodeResponse;
 import ru.eliseevtech.storage.coordinator.proto.UnregisterDataNodeRequest;
 import ru.eliseevtech.storage.datanode.service.DatanodeProperties;
+import ru.eliseevtech.storage.datanode.service.FileStorageService;
+import ru.eliseevtech.storage.datanode.service.NodeLoadTracker;
+
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Component
@@ -20,8 +29,10 @@ public class DataNodeLifecycle {
 
     private final DatanodeProperties properties;
     private final CoordinatorClientProperties coordinatorClientProperties;
+    private final FileStorageService storageService;
+    private final NodeLoadTracker loadTracker;
 
-    private String nodeId;
+    private volatile String nodeId;
     private ManagedChannel channel;
     private DataNodeRegistryServiceGrpc.DataNodeRegistryServiceBlockingStub stub;
 
@@ -32,6 +43,42 @@ public class DataNodeLifecycle {
                 .usePlaintext()
                 .build();
         stub = DataNodeRegistryServiceGrpc.newBlockingStub(channel);
+        registerWithCoordinator();
+    }
+
+    @Scheduled(fixedDelayString = "${datanode.heartbeat.interval-ms:5000}")
+    public void heartbeat() {
+        if (stub == null) {
+            return;
+        }
+        try {
+            HeartbeatResponse response = stub
+                    .withDeadlineAfter(properties.getHeartbeat().getIntervalMs(), TimeUnit.MILLISECONDS)
+                    .heartbeat(HeartbeatRequest.newBuilder()
+                    .setNodeId(nodeId)
+                    .setLoad(currentLoad())
+                    .build());
+            if (!response.getKnown()) {
+                log.warn("Coordinator does not know datanode {}, registering again", nodeId);
+                registerWithCoordinator();
+            }
+        } catch (StatusRuntimeException e) {
+            log.warn("Heartbeat to coordinator failed: {}", e.getStatus());
+        }
+    }
+
+    private NodeLoad currentLoad() {
+        NodeLoadTracker.Throughput throughput = loadTracker.sampleThroughput();
+        return NodeLoad.newBuilder()
+                .setFreeSpaceBytes(storageService.getUsableSpace())
+                .setActiveUploads(loadTracker.activeUploads())
+                .setActiveDownloads(loadTracker.activeDownloads())
+                .setWriteBytesPerSecond(throughput.writeBytesPerSecond())
+                .setReadBytesPerSecond(throughput.readBytesPerSecond())
+                .build();
+    }
+
+    private void registerWithCoordinator() {
         RegisterDataNodeResponse response = stub.registerDataNode(
                 RegisterDataNodeRequest.newBuilder()
                         .setHost(coordinatorClientProperties.getAdvertisedHost())
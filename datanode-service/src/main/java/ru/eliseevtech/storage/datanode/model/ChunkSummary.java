@@ -0,0 +1,20 @@
+package ru.eliseevtech.storage.datanode.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.BitSet;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkSummary {
+
+    private int chunkSize;
+    private BitSet chunks;
+    private Integer compositeCrc32c;
+
+}
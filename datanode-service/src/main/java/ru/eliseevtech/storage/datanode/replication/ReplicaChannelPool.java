@@ -0,0 +1,43 @@
+package ru.eliseevtech.storage.datanode.replication;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.eliseevtech.storage.datanode.proto.DataNodeServiceGrpc;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Slf4j
+@Component
+public class ReplicaChannelPool {
+
+    private final Map<String, ManagedChannel> channels = new ConcurrentHashMap<>();
+
+    public ReplicaForwarder openForwarder(String address) {
+        ReplicaForwarder forwarder = new ReplicaForwarder(address);
+        DataNodeServiceGrpc.newStub(channelFor(address)).uploadFileStream(forwarder);
+        return forwarder;
+    }
+
+    private ManagedChannel channelFor(String address) {
+        return channels.compute(address, (key, existing) -> {
+            if (existing != null && !existing.isShutdown()) {
+                return existing;
+            }
+            log.info("Opening replication channel to datanode {}", key);
+            return ManagedChannelBuilder.forTarget(key)
+                    .usePlaintext()
+                    .build();
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        channels.values().forEach(ManagedChannel::shutdown);
+        channels.clear();
+    }
+
+}
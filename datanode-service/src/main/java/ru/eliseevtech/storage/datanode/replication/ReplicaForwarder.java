@@ -0,0 +1,99 @@
+package ru.eliseevtech.storage.datanode.replication;
+
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import ru.eliseevtech.storage.datanode.proto.UploadChunk;
+import ru.eliseevtech.storage.datanode.proto.UploadResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public class ReplicaForwarder implements ClientResponseObserver<UploadChunk, UploadResponse> {
+
+    private static final long READY_POLL_MS = 1000;
+
+    private final String address;
+    private final CompletableFuture<UploadResponse> response = new CompletableFuture<>();
+    private final Object readyLock = new Object();
+    private ClientCallStreamObserver<UploadChunk> requestStream;
+
+    ReplicaForwarder(String address) {
+        this.address = address;
+    }
+
+    public String address() {
+        return address;
+    }
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<UploadChunk> requestStream) {
+        this.requestStream = requestStream;
+        requestStream.setOnReadyHandler(this::signal);
+    }
+
+    public void send(UploadChunk chunk) {
+        synchronized (readyLock) {
+            while (!requestStream.isReady()) {
+                if (response.isDone()) {
+                    throw new IllegalStateException("Replica " + address + " closed upload stream early",
+                            failureOf(response));
+                }
+                try {
+                    readyLock.wait(READY_POLL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    requestStream.cancel("Replication interrupted", e);
+                    throw new IllegalStateException("Replication to " + address + " interrupted", e);
+                }
+            }
+        }
+        requestStream.onNext(chunk);
+    }
+
+    public UploadResponse complete() {
+        requestStream.onCompleted();
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Replica " + address + " failed: " + e.getCause().getMessage(),
+                    e.getCause());
+        }
+    }
+
+    public void fail(Throwable t) {
+        requestStream.cancel("Upstream upload failed", t);
+    }
+
+    @Override
+    public void onNext(UploadResponse value) {
+        response.complete(value);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        response.completeExceptionally(t);
+        signal();
+    }
+
+    @Override
+    public void onCompleted() {
+        response.completeExceptionally(new IllegalStateException("Upload stream closed without response"));
+        signal();
+    }
+
+    private void signal() {
+        synchronized (readyLock) {
+            readyLock.notifyAll();
+        }
+    }
+
+    private static Throwable failureOf(CompletableFuture<UploadResponse> future) {
+        try {
+            future.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause();
+        }
+    }
+
+}
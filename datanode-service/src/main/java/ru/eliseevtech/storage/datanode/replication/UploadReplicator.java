@@ -0,0 +1,114 @@
+package ru.eliseevtech.storage.datanode.replication;
+
+import com.google.protobuf.UnsafeByteOperations;
+import io.grpc.Context;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.eliseevtech.storage.datanode.model.ChunkSummary;
+import ru.eliseevtech.storage.datanode.proto.UploadChunk;
+import ru.eliseevtech.storage.datanode.proto.UploadResponse;
+import ru.eliseevtech.storage.datanode.service.BufferPool;
+import ru.eliseevtech.storage.datanode.service.ChunkChecksums;
+import ru.eliseevtech.storage.datanode.service.FileStorageService;
+import ru.eliseevtech.storage.datanode.service.NodeLoadTracker;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UploadReplicator {
+
+    private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private final FileStorageService storageService;
+    private final ReplicaChannelPool replicaChannels;
+    private final BufferPool bufferPool;
+    private final NodeLoadTracker loadTracker;
+
+    public long replicate(String uploadId, String targetAddress, long rateLimitBytesPerSecond) {
+        ChunkSummary summary = storageService.getChunkSummary(uploadId);
+        int chunkSize = summary.getChunkSize() > 0 ? summary.getChunkSize() : DEFAULT_CHUNK_SIZE;
+        ReplicaForwarder forwarder = null;
+        ByteBuffer buffer = bufferPool.acquire(chunkSize);
+        loadTracker.downloadStarted();
+        try (FileChannel channel = storageService.openForRead(uploadId)) {
+            long size = channel.size();
+            log.info("Replicating upload {} ({} bytes) to {}", uploadId, size, targetAddress);
+            forwarder = replicaChannels.openForwarder(targetAddress);
+            long startNanos = System.nanoTime();
+            long position = 0;
+            for (int chunkIndex = 0; position < size; chunkIndex++) {
+                if (Context.current().isCancelled()) {
+                    throw new IllegalStateException("Replication of upload " + uploadId + " was cancelled");
+                }
+                buffer.clear();
+                buffer.limit((int) Math.min(chunkSize, size - position));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new IOException("File truncated at " + (position + buffer.position()));
+                    }
+                }
+                buffer.flip();
+                int length = buffer.remaining();
+                forwarder.send(UploadChunk.newBuilder()
+                        .setUploadId(uploadId)
+                        .setChunkIndex(chunkIndex)
+                        .setChunkSize(chunkSize)
+                        .setOffset(position)
+                        .setData(UnsafeByteOperations.unsafeWrap(buffer))
+                        .setCrc32C(ChunkChecksums.crc32c(List.of(buffer)))
+                        .build());
+                position += length;
+                loadTracker.recordRead(length);
+                throttle(startNanos, position, rateLimitBytesPerSecond);
+            }
+            UploadResponse response = forwarder.complete();
+            if (!response.getSuccess()) {
+                throw new IllegalStateException("Replica " + targetAddress + " rejected upload " + uploadId + ": "
+                        + response.getErrorMessage());
+            }
+            if (response.getUploadedBytes() != size) {
+                throw new IllegalStateException("Replica " + targetAddress + " acknowledged "
+                        + response.getUploadedBytes() + " of " + size + " bytes");
+            }
+            return size;
+        } catch (IOException e) {
+            if (forwarder != null) {
+                forwarder.fail(e);
+            }
+            throw new UncheckedIOException("Failed to read upload " + uploadId, e);
+        } catch (RuntimeException e) {
+            if (forwarder != null) {
+                forwarder.fail(e);
+            }
+            throw e;
+        } finally {
+            bufferPool.release(buffer);
+            loadTracker.downloadFinished();
+        }
+    }
+
+    private static void throttle(long startNanos, long bytesSent, long rateLimitBytesPerSecond) {
+        if (rateLimitBytesPerSecond <= 0) {
+            return;
+        }
+        long aheadNanos = (long) (bytesSent * 1e9 / rateLimitBytesPerSecond) - (System.nanoTime() - startNanos);
+        if (aheadNanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(aheadNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Replication interrupted", e);
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+package ru.eliseevtech.storage.datanode.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component
+public class BufferPool {
+
+    private static final int MIN_BUFFER_SIZE = 4096;
+
+    private final int maxBufferSize;
+    private final int maxPooledPerClass;
+    private final SizeClass[] classes;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final Counter hits;
+    private final Counter misses;
+
+    public BufferPool(DatanodeProperties properties, MeterRegistry registry) {
+        DatanodeProperties.BufferPoolProperties config = properties.getBufferPool();
+        this.maxBufferSize = Math.max(MIN_BUFFER_SIZE, roundUp(config.getMaxBufferSize()));
+        this.maxPooledPerClass = config.getMaxPooledPerClass();
+        this.classes = new SizeClass[classIndex(maxBufferSize) + 1];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new SizeClass(MIN_BUFFER_SIZE << i);
+        }
+        this.hits = Counter.builder("datanode.buffer.pool.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("datanode.buffer.pool.requests").tag("result", "miss").register(registry);
+        Gauge.builder("datanode.buffer.pool.outstanding", outstanding, AtomicInteger::get).register(registry);
+        Gauge.builder("datanode.buffer.pool.pooled.bytes", this, BufferPool::pooledBytes).register(registry);
+    }
+
+    public ByteBuffer acquire(int size) {
+        outstanding.incrementAndGet();
+        if (size > maxBufferSize) {
+            misses.increment();
+            return ByteBuffer.allocateDirect(size);
+        }
+        SizeClass sizeClass = classes[classIndex(size)];
+        ByteBuffer buffer = sizeClass.free.poll();
+        if (buffer != null) {
+            sizeClass.pooled.decrementAndGet();
+            hits.increment();
+        } else {
+            misses.increment();
+            buffer = ByteBuffer.allocateDirect(sizeClass.bufferSize);
+        }
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        outstanding.decrementAndGet();
+        int capacity = buffer.capacity();
+        if (!buffer.isDirect() || capacity > maxBufferSize || capacity != Integer.highestOneBit(capacity)
+                || capacity < MIN_BUFFER_SIZE) {
+            return;
+        }
+        SizeClass sizeClass = classes[classIndex(capacity)];
+        if (sizeClass.pooled.incrementAndGet() > maxPooledPerClass) {
+            sizeClass.pooled.decrementAndGet();
+            return;
+        }
+        sizeClass.free.offer(buffer.clear());
+    }
+
+    public int maxBufferSize() {
+        return maxBufferSize;
+    }
+
+    public int outstanding() {
+        return outstanding.get();
+    }
+
+    public double hitRate() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private double pooledBytes() {
+        double total = 0;
+        for (SizeClass sizeClass : classes) {
+            total += (double) sizeClass.pooled.get() * sizeClass.bufferSize;
+        }
+        return total;
+    }
+
+    private static int classIndex(int size) {
+        return Integer.numberOfTrailingZeros(roundUp(Math.max(size, MIN_BUFFER_SIZE)))
+                - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    }
+
+    private static int roundUp(int size) {
+        int highest = Integer.highestOneBit(size);
+        return highest == size ? size : highest << 1;
+    }
+
+    private static final class SizeClass {
+
+        private final int bufferSize;
+        private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pooled = new AtomicInteger();
+
+        private SizeClass(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+    }
+
+}
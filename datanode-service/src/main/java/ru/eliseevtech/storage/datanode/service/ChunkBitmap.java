@@ -0,0 +1,134 @@
+package ru.eliseevtech.storage.datanode.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Optional;
+
+class ChunkBitmap {
+
+    static final String FILE_NAME = "chunks.bitmap";
+
+    private static final int MAGIC = 0x43484B42;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final FileChannel channel;
+    private final int chunkSize;
+    private final BitSet chunks;
+    private final BitSet dirtyBytes = new BitSet();
+
+    private int unpersisted;
+
+    private ChunkBitmap(FileChannel channel, int chunkSize, BitSet chunks) {
+        this.channel = channel;
+        this.chunkSize = chunkSize;
+        this.chunks = chunks;
+    }
+
+    static ChunkBitmap open(Path dir, int chunkSize) throws IOException {
+        Path file = dir.resolve(FILE_NAME);
+        Optional<Header> existing = read(file);
+        if (existing.isPresent() && existing.get().chunkSize != chunkSize) {
+            throw new IllegalStateException("Upload was started with chunk size " + existing.get().chunkSize
+                    + ", got " + chunkSize);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (existing.isEmpty()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(chunkSize).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+        return new ChunkBitmap(channel, chunkSize, existing.map(h -> h.chunks).orElseGet(BitSet::new));
+    }
+
+    static Optional<Header> load(Path dir) throws IOException {
+        return read(dir.resolve(FILE_NAME));
+    }
+
+    int chunkSize() {
+        return chunkSize;
+    }
+
+    synchronized boolean contains(int chunkIndex) {
+        return chunks.get(chunkIndex);
+    }
+
+    synchronized boolean mark(int chunkIndex) {
+        if (chunks.get(chunkIndex)) {
+            return false;
+        }
+        chunks.set(chunkIndex);
+        dirtyBytes.set(chunkIndex / Byte.SIZE);
+        unpersisted++;
+        return true;
+    }
+
+    synchronized int unpersisted() {
+        return unpersisted;
+    }
+
+    synchronized Pending takePending() {
+        Pending pending = new Pending((BitSet) chunks.clone(), (BitSet) dirtyBytes.clone());
+        dirtyBytes.clear();
+        unpersisted = 0;
+        return pending;
+    }
+
+    void persist(Pending pending) throws IOException {
+        BitSet bytes = pending.bytes();
+        for (int byteIndex = bytes.nextSetBit(0); byteIndex >= 0; byteIndex = bytes.nextSetBit(byteIndex + 1)) {
+            int value = 0;
+            for (int bit = 0; bit < Byte.SIZE; bit++) {
+                if (pending.chunks().get(byteIndex * Byte.SIZE + bit)) {
+                    value |= 1 << bit;
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(new byte[]{(byte) value});
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, HEADER_BYTES + byteIndex);
+            }
+        }
+    }
+
+    synchronized BitSet snapshot() {
+        return (BitSet) chunks.clone();
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    private static Optional<Header> read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException("Corrupted chunk bitmap " + file);
+        }
+        int chunkSize = buffer.getInt();
+        return Optional.of(new Header(chunkSize, BitSet.valueOf(buffer)));
+    }
+
+    record Header(int chunkSize, BitSet chunks) {
+    }
+
+    record Pending(BitSet chunks, BitSet bytes) {
+
+        boolean isEmpty() {
+            return bytes.isEmpty();
+        }
+
+    }
+
+}
@@ -0,0 +1,80 @@
+package ru.eliseevtech.storage.datanode.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+
+public class ChunkChecksums {
+
+    static final String FILE_NAME = "chunks.crc";
+
+    private final FileChannel channel;
+
+    private ChunkChecksums(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    static ChunkChecksums open(Path dir) throws IOException {
+        return new ChunkChecksums(FileChannel.open(dir.resolve(FILE_NAME),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+    }
+
+    public static int crc32c(List<ByteBuffer> data) {
+        CRC32C crc = new CRC32C();
+        for (ByteBuffer segment : data) {
+            crc.update(segment.duplicate());
+        }
+        return (int) crc.getValue();
+    }
+
+    static Optional<Integer> composite(Path dir, int chunks) throws IOException {
+        return read(dir, chunks).map(values -> {
+            ByteBuffer crcs = ByteBuffer.allocate(values.length * Integer.BYTES);
+            crcs.asIntBuffer().put(values);
+            CRC32C crc = new CRC32C();
+            crc.update(crcs);
+            return (int) crc.getValue();
+        });
+    }
+
+    static Optional<int[]> read(Path dir, int chunks) throws IOException {
+        Path file = dir.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        ByteBuffer crcs = ByteBuffer.allocate(chunks * Integer.BYTES);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (crcs.hasRemaining()) {
+                if (channel.read(crcs, crcs.position()) < 0) {
+                    return Optional.empty();
+                }
+            }
+        }
+        int[] values = new int[chunks];
+        crcs.flip().asIntBuffer().get(values);
+        return Optional.of(values);
+    }
+
+    void record(int chunkIndex, int crc32c) throws IOException {
+        ByteBuffer value = ByteBuffer.allocate(Integer.BYTES).putInt(0, crc32c);
+        long position = (long) chunkIndex * Integer.BYTES;
+        while (value.hasRemaining()) {
+            channel.write(value, position + value.position());
+        }
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -9,10 +9,25 @@ public class DatanodeProperties {
 
     private StorageProperties storage = new StorageProperties();
     private GrpcProperties grpc = new GrpcProperties();
+    private BufferPoolProperties bufferPool = new BufferPoolProperties();
+    private HeartbeatProperties heartbeat = new HeartbeatProperties();
 
     @Data
     public static class StorageProperties {
         private String path;
+        private long sessionIdleTimeoutMs = 60000;
+        private int bitmapPersistChunks = 64;
+    }
+
+    @Data
+    public static class BufferPoolProperties {
+        private int maxBufferSize = 4 * 1024 * 1024;
+        private int maxPooledPerClass = 16;
+    }
+
+    @Data
+    public static class HeartbeatProperties {
+        private long intervalMs = 5000;
     }
 
     @Data
@@ -1,19 +1,32 @@
 package ru.eliseevtech.storage.datanode.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import ru.eliseevtech.storage.datanode.model.ChunkSummary;
+import ru.eliseevtech.storage.datanode.model.StoredChecksums;
 import ru.eliseevtech.storage.datanode.model.UploadStats;
+import ru.eliseevtech.storage.datanode.service.UploadSession.WriteResult;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -22,57 +35,192 @@ public class FileStorageService {
 
     private final DatanodeProperties properties;
 
+    private final BufferPool bufferPool;
+
     private final ConcurrentMap<String, UploadStats> statsMap = new ConcurrentHashMap<>();
 
-    public synchronized void appendChunk(String uploadId, int chunkIndex, byte[] data) {
+    private final ConcurrentMap<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    public void openSession(String uploadId) {
+        session(uploadId).acquire();
+    }
+
+    public void closeSession(String uploadId) {
+        UploadSession session = sessions.get(uploadId);
+        if (session != null && session.release()) {
+            closeSession(session);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${datanode.storage.session-idle-check-ms:10000}")
+    public void closeIdleSessions() {
+        long now = System.nanoTime();
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(properties.getStorage().getSessionIdleTimeoutMs());
+        for (UploadSession session : sessions.values()) {
+            if (session.isIdle(now, idleTimeoutNanos)) {
+                log.info("Closing idle upload session {}", session.uploadId());
+                closeSession(session);
+            }
+        }
+    }
+
+    int openSessions() {
+        return sessions.size();
+    }
+
+    @PreDestroy
+    public void closeAllSessions() {
+        sessions.values().forEach(this::closeSession);
+    }
+
+    @PostConstruct
+    public void loadStats() {
+        Path root = Path.of(properties.getStorage().getPath());
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        long started = System.nanoTime();
+        List<Path> uploadDirs;
+        try (Stream<Path> entries = Files.list(root)) {
+            uploadDirs = entries.filter(Files::isDirectory).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to scan storage directory " + root, e);
+        }
+        uploadDirs.parallelStream().forEach(dir -> {
+            String uploadId = dir.getFileName().toString();
+            try {
+                recoverStats(uploadId, dir).ifPresent(stats -> statsMap.putIfAbsent(uploadId, stats));
+            } catch (IOException e) {
+                log.warn("Failed to recover stats of upload {}", uploadId, e);
+            }
+        });
+        log.info("Recovered stats of {} uploads in {} ms", statsMap.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    public void appendChunk(String uploadId, int chunkIndex, byte[] data) {
+        appendChunk(uploadId, chunkIndex, List.of(ByteBuffer.wrap(data)));
+    }
+
+    public void appendChunk(String uploadId, int chunkIndex, List<ByteBuffer> data) {
+        long length = remaining(data);
+        try {
+            write(uploadId, data, length, (session, buffers) -> session.append(buffers, length));
+            recordStats(uploadId, chunkIndex, bytes -> bytes + length, true);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to append chunk", e);
+        }
+    }
+
+    public void writeChunkAt(String uploadId, int chunkIndex, long offset, byte[] data) {
+        writeChunkAt(uploadId, chunkIndex, offset, List.of(ByteBuffer.wrap(data)));
+    }
+
+    public void writeChunkAt(String uploadId, int chunkIndex, long offset, List<ByteBuffer> data) {
+        long length = remaining(data);
+        try {
+            write(uploadId, data, length, (session, buffers) -> session.writeAt(buffers, offset));
+            recordStats(uploadId, chunkIndex, bytes -> Math.max(bytes, offset + length), false);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write chunk", e);
+        }
+    }
+
+    public boolean writeChunk(String uploadId, int chunkIndex, int chunkSize, byte[] data) {
+        List<ByteBuffer> buffers = List.of(ByteBuffer.wrap(data));
+        return writeChunk(uploadId, chunkIndex, chunkSize, buffers, ChunkChecksums.crc32c(buffers));
+    }
+
+    public boolean writeChunk(String uploadId, int chunkIndex, int chunkSize, List<ByteBuffer> data, int crc32c) {
+        long length = remaining(data);
+        if (chunkIndex < 0 || chunkSize <= 0 || length > chunkSize) {
+            throw new IllegalArgumentException("Chunk " + chunkIndex + " of " + length
+                    + " bytes does not fit chunk size " + chunkSize);
+        }
+        try {
+            WriteResult result = write(uploadId, data, length,
+                    (session, buffers) -> session.writeChunk(buffers, chunkIndex, chunkSize, crc32c));
+            if (result == WriteResult.DUPLICATE) {
+                log.debug("Chunk {} of upload {} is already stored, skipping", chunkIndex, uploadId);
+                return false;
+            }
+            recordStats(uploadId, chunkIndex, bytes -> bytes + length, false);
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write chunk", e);
+        }
+    }
+
+    public BitSet getChunkBitmap(String uploadId) {
+        return getChunkSummary(uploadId).getChunks();
+    }
+
+    public ChunkSummary getChunkSummary(String uploadId) {
         Path dir = getUploadDir(uploadId);
-        Path file = dir.resolve("file.bin");
+        UploadSession session = sessions.get(uploadId);
         try {
-            Files.createDirectories(dir);
-            FileChannel channel = FileChannel.open(file,
-                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
-            try (channel) {
-                channel.write(ByteBuffer.wrap(data));
+            ChunkBitmap.Header header = session != null ? session.chunks() : null;
+            if (header == null) {
+                header = ChunkBitmap.load(dir).orElse(null);
             }
-            UploadStats stats = statsMap.getOrDefault(uploadId,
-                    UploadStats.builder().uploadId(uploadId).chunksCount(0).bytesWritten(0L).build());
-            stats.setChunksCount(chunkIndex + 1);
-            stats.setBytesWritten(stats.getBytesWritten() + data.length);
-            statsMap.put(uploadId, stats);
+            if (header == null) {
+                return ChunkSummary.builder().chunks(new BitSet()).build();
+            }
+            BitSet chunks = header.chunks();
+            int count = chunks.length();
+            Integer composite = count > 0 && chunks.cardinality() == count
+                    ? ChunkChecksums.composite(dir, count).orElse(null)
+                    : null;
+            return ChunkSummary.builder()
+                    .chunkSize(header.chunkSize())
+                    .chunks(chunks)
+                    .compositeCrc32c(composite)
+                    .build();
         } catch (IOException e) {
-            throw new RuntimeException("Failed to append chunk", e);
+            throw new UncheckedIOException("Failed to read chunk bitmap of " + uploadId, e);
         }
     }
 
-    public void streamChunks(String uploadId, int chunkSize, ChunkConsumer consumer) {
+    public Optional<StoredChecksums> getStoredChecksums(String uploadId) {
+        Path dir = getUploadDir(uploadId);
+        UploadSession session = sessions.get(uploadId);
+        try {
+            ChunkBitmap.Header header = session != null ? session.chunks() : null;
+            if (header == null) {
+                header = ChunkBitmap.load(dir).orElse(null);
+            }
+            if (header == null) {
+                return Optional.empty();
+            }
+            BitSet chunks = header.chunks();
+            int chunkSize = header.chunkSize();
+            return ChunkChecksums.read(dir, chunks.length()).map(crcs -> StoredChecksums.builder()
+                    .chunkSize(chunkSize)
+                    .chunks(chunks)
+                    .crc32c(crcs)
+                    .build());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read chunk checksums of " + uploadId, e);
+        }
+    }
+
+    public FileChannel openForRead(String uploadId) {
         Path file = getUploadDir(uploadId).resolve("file.bin");
         if (!Files.exists(file)) {
             throw new IllegalArgumentException("File not found for uploadId: " + uploadId);
         }
-        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
-            long position = 0;
-            int index = 0;
-            ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
-            while (true) {
-                buffer.clear();
-                int read = channel.read(buffer, position);
-                if (read <= 0) {
-                    break;
-                }
-                buffer.flip();
-                byte[] data = new byte[read];
-                buffer.get(data);
-                boolean isLast = (position + read) >= channel.size();
-                consumer.accept(index, data, isLast);
-                position += read;
-                index++;
-            }
+        try {
+            return FileChannel.open(file, StandardOpenOption.READ);
         } catch (IOException e) {
-            throw new RuntimeException("Failed to read file", e);
+            throw new RuntimeException("Failed to open file", e);
         }
     }
 
     public void deleteUpload(String uploadId) {
+        UploadSession session = sessions.get(uploadId);
+        if (session != null) {
+            closeSession(session);
+        }
         Path dir = getUploadDir(uploadId);
         try {
             if (Files.exists(dir)) {
@@ -97,13 +245,128 @@ public class FileStorageService {
                 UploadStats.builder().uploadId(uploadId).chunksCount(0).bytesWritten(0L).build());
     }
 
+    private UploadSession session(String uploadId) {
+        return sessions.computeIfAbsent(uploadId, id -> {
+            try {
+                return UploadSession.open(id, getUploadDir(id), properties.getStorage().getBitmapPersistChunks());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open upload session " + id, e);
+            }
+        });
+    }
+
+    private WriteResult write(String uploadId, List<ByteBuffer> data, long length,
+                              SessionWrite operation) throws IOException {
+        ByteBuffer staged = null;
+        ByteBuffer[] buffers;
+        if (length <= bufferPool.maxBufferSize() && !allDirect(data)) {
+            staged = bufferPool.acquire((int) length);
+            for (ByteBuffer segment : data) {
+                staged.put(segment.duplicate());
+            }
+            buffers = new ByteBuffer[]{staged.flip()};
+        } else {
+            buffers = data.toArray(new ByteBuffer[0]);
+        }
+        try {
+            WriteResult result;
+            while ((result = operation.apply(session(uploadId), buffers)) == WriteResult.CLOSED) {
+                log.debug("Upload session {} was closed concurrently, reopening", uploadId);
+            }
+            return result;
+        } finally {
+            if (staged != null) {
+                bufferPool.release(staged);
+            }
+        }
+    }
+
+    private void recordStats(String uploadId, int chunkIndex, LongUnaryOperator bytesWritten, boolean append) {
+        statsMap.compute(uploadId, (id, stats) -> {
+            int chunksCount = stats != null ? stats.getChunksCount() : 0;
+            long bytes = stats != null ? stats.getBytesWritten() : 0L;
+            return UploadStats.builder()
+                    .uploadId(id)
+                    .chunksCount(append ? chunkIndex + 1 : Math.max(chunksCount, chunkIndex + 1))
+                    .bytesWritten(bytesWritten.applyAsLong(bytes))
+                    .build();
+        });
+        try {
+            while (session(uploadId).writeStats(() -> statsMap.get(uploadId)) == WriteResult.CLOSED) {
+                log.debug("Upload session {} was closed concurrently, reopening", uploadId);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to persist stats of upload {}", uploadId, e);
+        }
+    }
+
+    private Optional<UploadStats> recoverStats(String uploadId, Path dir) throws IOException {
+        Path file = dir.resolve("file.bin");
+        long fileSize = Files.exists(file) ? Files.size(file) : 0;
+        Optional<ChunkBitmap.Header> bitmap = ChunkBitmap.load(dir);
+        if (bitmap.isPresent()) {
+            BitSet chunks = bitmap.get().chunks();
+            long chunkSize = bitmap.get().chunkSize();
+            long bytes = 0;
+            for (int i = chunks.nextSetBit(0); i >= 0; i = chunks.nextSetBit(i + 1)) {
+                bytes += Math.max(0, Math.min(chunkSize, fileSize - i * chunkSize));
+            }
+            return Optional.of(UploadStats.builder()
+                    .uploadId(uploadId)
+                    .chunksCount(chunks.length())
+                    .bytesWritten(bytes)
+                    .build());
+        }
+        Optional<UploadStats> recorded = UploadStatsFile.read(uploadId, dir);
+        if (recorded.isPresent() || !Files.exists(file)) {
+            return recorded;
+        }
+        return Optional.of(UploadStats.builder().uploadId(uploadId).chunksCount(0).bytesWritten(fileSize).build());
+    }
+
+    private static long remaining(List<ByteBuffer> buffers) {
+        long total = 0;
+        for (ByteBuffer buffer : buffers) {
+            total += buffer.remaining();
+        }
+        return total;
+    }
+
+    private static boolean allDirect(List<ByteBuffer> buffers) {
+        for (ByteBuffer buffer : buffers) {
+            if (!buffer.isDirect()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void closeSession(UploadSession session) {
+        sessions.remove(session.uploadId(), session);
+        try {
+            session.close();
+        } catch (IOException e) {
+            log.warn("Failed to close upload session {}", session.uploadId(), e);
+        }
+    }
+
+    public long getUsableSpace() {
+        Path root = Path.of(properties.getStorage().getPath());
+        try {
+            Files.createDirectories(root);
+            return Files.getFileStore(root).getUsableSpace();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read free space of " + root, e);
+        }
+    }
+
     private Path getUploadDir(String uploadId) {
         return Path.of(properties.getStorage().getPath()).resolve(uploadId);
     }
 
     @FunctionalInterface
-    public interface ChunkConsumer {
-        void accept(int index, byte[] data, boolean isLast);
+    private interface SessionWrite {
+        WriteResult apply(UploadSession session, ByteBuffer[] buffers) throws IOException;
     }
 
 }
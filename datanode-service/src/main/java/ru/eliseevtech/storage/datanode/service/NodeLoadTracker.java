@@ -0,0 +1,83 @@
+package ru.eliseevtech.storage.datanode.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class NodeLoadTracker {
+
+    private final AtomicInteger activeUploads = new AtomicInteger();
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+
+    private long sampledAtNanos = System.nanoTime();
+    private long sampledWritten;
+    private long sampledRead;
+
+    public NodeLoadTracker(MeterRegistry registry) {
+        Gauge.builder("datanode.streams.active", activeUploads, AtomicInteger::get)
+                .tag("direction", "upload").register(registry);
+        Gauge.builder("datanode.streams.active", activeDownloads, AtomicInteger::get)
+                .tag("direction", "download").register(registry);
+    }
+
+    public void uploadStarted() {
+        activeUploads.incrementAndGet();
+    }
+
+    public void uploadFinished() {
+        activeUploads.decrementAndGet();
+    }
+
+    public void downloadStarted() {
+        activeDownloads.incrementAndGet();
+    }
+
+    public void downloadFinished() {
+        activeDownloads.decrementAndGet();
+    }
+
+    public void recordWrite(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    public void recordRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    public int activeUploads() {
+        return activeUploads.get();
+    }
+
+    public int activeDownloads() {
+        return activeDownloads.get();
+    }
+
+    public synchronized Throughput sampleThroughput() {
+        long now = System.nanoTime();
+        long written = bytesWritten.sum();
+        long read = bytesRead.sum();
+        long elapsedNanos = Math.max(1, now - sampledAtNanos);
+        Throughput throughput = new Throughput(
+                perSecond(written - sampledWritten, elapsedNanos),
+                perSecond(read - sampledRead, elapsedNanos));
+        sampledAtNanos = now;
+        sampledWritten = written;
+        sampledRead = read;
+        return throughput;
+    }
+
+    private static long perSecond(long bytes, long elapsedNanos) {
+        return (long) (bytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos);
+    }
+
+    public record Throughput(long writeBytesPerSecond, long readBytesPerSecond) {
+    }
+
+}
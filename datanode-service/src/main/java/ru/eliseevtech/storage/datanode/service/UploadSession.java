@@ -0,0 +1,234 @@
+package ru.eliseevtech.storage.datanode.service;
+
+import ru.eliseevtech.storage.datanode.model.UploadStats;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+class UploadSession {
+
+    private final String uploadId;
+    private final Path dir;
+    private final FileChannel channel;
+    private final int persistEveryChunks;
+    private final AtomicLong appendPosition;
+    private final AtomicInteger streams = new AtomicInteger();
+    private final ReadWriteLock lifecycleLock = new ReentrantReadWriteLock();
+    private final Object persistLock = new Object();
+
+    private volatile long lastAccessNanos = System.nanoTime();
+    private boolean closed;
+    private ChunkBitmap bitmap;
+    private ChunkChecksums checksums;
+    private FileChannel statsChannel;
+
+    private UploadSession(String uploadId, Path dir, FileChannel channel, int persistEveryChunks) throws IOException {
+        this.uploadId = uploadId;
+        this.dir = dir;
+        this.channel = channel;
+        this.persistEveryChunks = persistEveryChunks;
+        this.appendPosition = new AtomicLong(channel.size());
+    }
+
+    static UploadSession open(String uploadId, Path dir, int persistEveryChunks) throws IOException {
+        Files.createDirectories(dir);
+        FileChannel channel = FileChannel.open(dir.resolve("file.bin"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        return new UploadSession(uploadId, dir, channel, persistEveryChunks);
+    }
+
+    String uploadId() {
+        return uploadId;
+    }
+
+    WriteResult append(ByteBuffer[] data, long length) throws IOException {
+        lifecycleLock.readLock().lock();
+        try {
+            if (closed) {
+                return WriteResult.CLOSED;
+            }
+            write(data, appendPosition.getAndAdd(length));
+            return WriteResult.WRITTEN;
+        } finally {
+            lifecycleLock.readLock().unlock();
+        }
+    }
+
+    WriteResult writeAt(ByteBuffer[] data, long position) throws IOException {
+        lifecycleLock.readLock().lock();
+        try {
+            if (closed) {
+                return WriteResult.CLOSED;
+            }
+            write(data, position);
+            return WriteResult.WRITTEN;
+        } finally {
+            lifecycleLock.readLock().unlock();
+        }
+    }
+
+    WriteResult writeChunk(ByteBuffer[] data, int chunkIndex, int chunkSize, int crc32c) throws IOException {
+        lifecycleLock.readLock().lock();
+        try {
+            if (closed) {
+                return WriteResult.CLOSED;
+            }
+            ChunkBitmap chunks = bitmap(chunkSize);
+            if (chunks.contains(chunkIndex)) {
+                return WriteResult.DUPLICATE;
+            }
+            write(data, (long) chunkIndex * chunkSize);
+            checksums().record(chunkIndex, crc32c);
+            if (!chunks.mark(chunkIndex)) {
+                return WriteResult.DUPLICATE;
+            }
+            if (chunks.unpersisted() >= persistEveryChunks) {
+                persist(chunks);
+            }
+            return WriteResult.WRITTEN;
+        } finally {
+            lifecycleLock.readLock().unlock();
+        }
+    }
+
+    WriteResult writeStats(Supplier<UploadStats> latest) throws IOException {
+        lifecycleLock.readLock().lock();
+        try {
+            if (closed) {
+                return WriteResult.CLOSED;
+            }
+            FileChannel channel = statsChannel();
+            synchronized (channel) {
+                UploadStats stats = latest.get();
+                if (stats == null) {
+                    return WriteResult.WRITTEN;
+                }
+                ByteBuffer record = UploadStatsFile.encode(stats.getChunksCount(), stats.getBytesWritten());
+                while (record.hasRemaining()) {
+                    channel.write(record, record.position());
+                }
+            }
+            return WriteResult.WRITTEN;
+        } finally {
+            lifecycleLock.readLock().unlock();
+        }
+    }
+
+    synchronized ChunkBitmap.Header chunks() {
+        return bitmap == null ? null : new ChunkBitmap.Header(bitmap.chunkSize(), bitmap.snapshot());
+    }
+
+    void acquire() {
+        streams.incrementAndGet();
+        lastAccessNanos = System.nanoTime();
+    }
+
+    boolean release() {
+        return streams.decrementAndGet() <= 0;
+    }
+
+    boolean isIdle(long nowNanos, long idleTimeoutNanos) {
+        return streams.get() <= 0 && nowNanos - lastAccessNanos >= idleTimeoutNanos;
+    }
+
+    void close() throws IOException {
+        lifecycleLock.writeLock().lock();
+        try {
+            if (!closed) {
+                closed = true;
+                force();
+                channel.close();
+                synchronized (this) {
+                    if (bitmap != null) {
+                        bitmap.close();
+                    }
+                    if (checksums != null) {
+                        checksums.close();
+                    }
+                    if (statsChannel != null) {
+                        statsChannel.close();
+                    }
+                }
+            }
+        } finally {
+            lifecycleLock.writeLock().unlock();
+        }
+    }
+
+    private void persist(ChunkBitmap chunks) throws IOException {
+        synchronized (persistLock) {
+            ChunkBitmap.Pending pending = chunks.takePending();
+            if (pending.isEmpty()) {
+                return;
+            }
+            channel.force(false);
+            checksums().force();
+            chunks.persist(pending);
+        }
+    }
+
+    private synchronized void force() throws IOException {
+        ChunkBitmap.Pending pending = bitmap != null ? bitmap.takePending() : null;
+        channel.force(false);
+        if (checksums != null) {
+            checksums.force();
+        }
+        if (bitmap != null) {
+            bitmap.persist(pending);
+            bitmap.force();
+        }
+        if (statsChannel != null) {
+            statsChannel.force(false);
+        }
+    }
+
+    private synchronized ChunkBitmap bitmap(int chunkSize) throws IOException {
+        if (bitmap == null) {
+            bitmap = ChunkBitmap.open(dir, chunkSize);
+        } else if (bitmap.chunkSize() != chunkSize) {
+            throw new IllegalStateException("Upload " + uploadId + " uses chunk size " + bitmap.chunkSize()
+                    + ", got " + chunkSize);
+        }
+        return bitmap;
+    }
+
+    private synchronized ChunkChecksums checksums() throws IOException {
+        if (checksums == null) {
+            checksums = ChunkChecksums.open(dir);
+        }
+        return checksums;
+    }
+
+    private synchronized FileChannel statsChannel() throws IOException {
+        if (statsChannel == null) {
+            statsChannel = FileChannel.open(dir.resolve(UploadStatsFile.FILE_NAME),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        return statsChannel;
+    }
+
+    private void write(ByteBuffer[] data, long position) throws IOException {
+        lastAccessNanos = System.nanoTime();
+        for (ByteBuffer buffer : data) {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    enum WriteResult {
+        WRITTEN,
+        DUPLICATE,
+        CLOSED
+    }
+
+}
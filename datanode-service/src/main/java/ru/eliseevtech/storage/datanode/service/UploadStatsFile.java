@@ -0,0 +1,45 @@
+package ru.eliseevtech.storage.datanode.service;
+
+import ru.eliseevtech.storage.datanode.model.UploadStats;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+final class UploadStatsFile {
+
+    static final String FILE_NAME = "upload.stats";
+
+    private static final int MAGIC = 0x55505354;
+    private static final int RECORD_BYTES = 2 * Integer.BYTES + Long.BYTES;
+
+    private UploadStatsFile() {
+    }
+
+    static ByteBuffer encode(int chunksCount, long bytesWritten) {
+        return ByteBuffer.allocate(RECORD_BYTES)
+                .putInt(MAGIC)
+                .putInt(chunksCount)
+                .putLong(bytesWritten)
+                .flip();
+    }
+
+    static Optional<UploadStats> read(String uploadId, Path dir) throws IOException {
+        Path file = dir.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() < RECORD_BYTES || buffer.getInt() != MAGIC) {
+            return Optional.empty();
+        }
+        return Optional.of(UploadStats.builder()
+                .uploadId(uploadId)
+                .chunksCount(buffer.getInt())
+                .bytesWritten(buffer.getLong())
+                .build());
+    }
+
+}
@@ -1,5 +1,10 @@
 package ru.eliseevtech.storage.datanode;
 
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
@@ -9,9 +14,16 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import ru.eliseevtech.storage.datanode.grpc.DataNodeGrpcService;
 import ru.eliseevtech.storage.datanode.model.UploadStats;
+import ru.eliseevtech.storage.datanode.proto.DataNodeServiceGrpc;
+import ru.eliseevtech.storage.datanode.proto.DownloadRequest;
+import ru.eliseevtech.storage.datanode.replication.ReplicaChannelPool;
+import ru.eliseevtech.storage.datanode.service.BufferPool;
+import ru.eliseevtech.storage.datanode.service.ChunkChecksums;
 import ru.eliseevtech.storage.datanode.service.DatanodeProperties;
 import ru.eliseevtech.storage.datanode.service.FileStorageService;
+import ru.eliseevtech.storage.datanode.service.NodeLoadTracker;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -31,6 +43,9 @@ class FileStorageServiceIntegrationTest {
     @Autowired
     private FileStorageService fileStorageService;
 
+    @Autowired
+    private DataNodeGrpcService dataNodeGrpcService;
+
     private Path getBaseDir() {
         String base = System.getProperty("java.io.tmpdir");
         return Path.of(base).resolve("datanode-it");
@@ -52,7 +67,7 @@ class FileStorageServiceIntegrationTest {
     }
 
     @Test
-    void uploadAndDownload_shouldTransferDataCorrectly() {
+    void uploadAndDownload_shouldTransferDataCorrectly() throws IOException {
         String uploadId = UUID.randomUUID().toString();
         byte[] originalData = "Hello gRPC data node!".getBytes(StandardCharsets.UTF_8);
 
@@ -69,17 +84,26 @@ class FileStorageServiceIntegrationTest {
         assertThat(stats.getChunksCount()).isEqualTo(2);
         assertThat(stats.getBytesWritten()).isEqualTo(originalData.length);
 
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        fileStorageService.streamChunks(uploadId, 8, (index, data, isLast) -> {
-            try {
-                out.write(data);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        });
-        byte[] downloaded = out.toByteArray();
+        Server server = ServerBuilder.forPort(0).addService(dataNodeGrpcService).build().start();
+        ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", server.getPort())
+                .usePlaintext()
+                .build();
+        ByteArrayOutputStream downloaded = new ByteArrayOutputStream();
+        try {
+            DataNodeServiceGrpc.newBlockingStub(channel)
+                    .downloadFileStream(DownloadRequest.newBuilder().setUploadId(uploadId).build())
+                    .forEachRemaining(chunk -> {
+                        // каждый чанк приходит со своей CRC32C
+                        assertThat(chunk.getCrc32C())
+                                .isEqualTo(ChunkChecksums.crc32c(chunk.getData().asReadOnlyByteBufferList()));
+                        downloaded.writeBytes(chunk.getData().toByteArray());
+                    });
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow();
+        }
 
-        assertThat(downloaded).containsExactly(originalData);
+        assertThat(downloaded.toByteArray()).containsExactly(originalData);
 
         fileStorageService.deleteUpload(uploadId);
         UploadStats afterDelete = fileStorageService.getUploadStats(uploadId);
@@ -99,8 +123,19 @@ class FileStorageServiceIntegrationTest {
         }
 
         @Bean
-        public FileStorageService fileStorageService(DatanodeProperties props) {
-            return new FileStorageService(props);
+        public BufferPool bufferPool(DatanodeProperties props) {
+            return new BufferPool(props, new SimpleMeterRegistry());
+        }
+
+        @Bean
+        public FileStorageService fileStorageService(DatanodeProperties props, BufferPool bufferPool) {
+            return new FileStorageService(props, bufferPool);
+        }
+
+        @Bean
+        public DataNodeGrpcService dataNodeGrpcService(FileStorageService storageService, BufferPool bufferPool) {
+            return new DataNodeGrpcService(storageService, bufferPool,
+                    new NodeLoadTracker(new SimpleMeterRegistry()), new ReplicaChannelPool());
         }
     }
 
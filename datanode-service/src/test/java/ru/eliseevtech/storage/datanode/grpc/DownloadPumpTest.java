@@ -0,0 +1,245 @@
+package ru.eliseevtech.storage.datanode.grpc;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.eliseevtech.storage.datanode.model.StoredChecksums;
+import ru.eliseevtech.storage.datanode.proto.DownloadChunk;
+import ru.eliseevtech.storage.datanode.service.BufferPool;
+import ru.eliseevtech.storage.datanode.service.ChunkChecksums;
+import ru.eliseevtech.storage.datanode.service.DatanodeProperties;
+import ru.eliseevtech.storage.datanode.service.NodeLoadTracker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownloadPumpTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final BufferPool bufferPool = new BufferPool(new DatanodeProperties(), new SimpleMeterRegistry());
+
+    private final NodeLoadTracker loadTracker = new NodeLoadTracker(new SimpleMeterRegistry());
+
+    @AfterEach
+    void noLeakedBuffers() {
+        assertThat(bufferPool.outstanding()).isZero();
+        assertThat(loadTracker.activeDownloads()).isZero();
+    }
+
+    private FileChannel open(String content) throws IOException {
+        Path file = tempDir.resolve("file.bin");
+        Files.writeString(file, content);
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    @Test
+    void pumpShouldSendOnlyWhileTransportIsReady() throws IOException {
+        FileChannel channel = open("0123456789");
+        FakeServerCall call = new FakeServerCall();
+        call.readyBudget = 2;
+
+        DownloadPump.start(call, channel, bufferPool, loadTracker, 0, 10, 3);
+
+        // транспорт принял только два чанка — дальше файл не читается
+        assertThat(call.chunks).hasSize(2);
+        assertThat(call.completed).isFalse();
+        assertThat(loadTracker.activeDownloads()).isEqualTo(1);
+
+        call.readyBudget = Integer.MAX_VALUE;
+        call.onReadyHandler.run();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        call.chunks.forEach(chunk -> out.writeBytes(chunk.getData().toByteArray()));
+        assertThat(out.toString()).isEqualTo("0123456789");
+        assertThat(call.chunks).extracting(DownloadChunk::getOffset).containsExactly(0L, 3L, 6L, 9L);
+        assertThat(call.chunks.get(3).getIsLast()).isTrue();
+        assertThat(call.completed).isTrue();
+        assertThat(loadTracker.sampleThroughput().readBytesPerSecond()).isPositive();
+        assertThat(channel.isOpen()).isFalse();
+    }
+
+    @Test
+    void cancelledStreamShouldReleaseFile() throws IOException {
+        FileChannel channel = open("0123456789");
+        FakeServerCall call = new FakeServerCall();
+        call.readyBudget = 1;
+
+        DownloadPump.start(call, channel, bufferPool, loadTracker, 2, 10, 3);
+        call.onCancelHandler.run();
+
+        assertThat(call.chunks).extracting(DownloadChunk::getOffset).containsExactly(2L);
+        assertThat(call.completed).isFalse();
+        assertThat(channel.isOpen()).isFalse();
+    }
+
+    @Test
+    void pumpShouldSendOnlyRequestedRange() throws IOException {
+        FileChannel channel = open("0123456789");
+        FakeServerCall call = new FakeServerCall();
+
+        DownloadPump.start(call, channel, bufferPool, loadTracker, 3, 8, 2);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        call.chunks.forEach(chunk -> out.writeBytes(chunk.getData().toByteArray()));
+        assertThat(out.toString()).isEqualTo("34567");
+        assertThat(call.chunks).extracting(DownloadChunk::getChunkIndex).containsExactly(0, 1, 2);
+        assertThat(call.chunks).extracting(DownloadChunk::getIsLast).containsExactly(false, false, true);
+        assertThat(call.completed).isTrue();
+    }
+
+    @Test
+    void emptyRangeShouldCompleteImmediately() throws IOException {
+        FileChannel channel = open("");
+        FakeServerCall call = new FakeServerCall();
+
+        DownloadPump.start(call, channel, bufferPool, loadTracker, 0, 0, 3);
+
+        assertThat(call.chunks).isEmpty();
+        assertThat(call.completed).isTrue();
+    }
+
+    @Test
+    void storedChecksumsShouldExposeDiskCorruption() throws IOException {
+        StoredChecksums checksums = checksums(4, "0123", "4567", "89");
+        FileChannel channel = open("0123x56789");
+        FakeServerCall call = new FakeServerCall();
+
+        DownloadPump.start(call, channel, bufferPool, loadTracker, 0, 10, checksums);
+
+        // сервер отдаёт сохранённую при загрузке сумму, поэтому испорченный на диске чанк не сойдётся у клиента
+        assertThat(call.completed).isTrue();
+        assertThat(call.chunks).extracting(DownloadChunk::getOffset).containsExactly(0L, 4L, 8L);
+        assertThat(call.chunks).extracting(DownloadChunk::getCrc32C)
+                .containsExactly(checksums.getCrc32c()[0], checksums.getCrc32c()[1], checksums.getCrc32c()[2]);
+        assertThat(crc32c(call.chunks.get(0))).isEqualTo(call.chunks.get(0).getCrc32C());
+        assertThat(crc32c(call.chunks.get(1))).isNotEqualTo(call.chunks.get(1).getCrc32C());
+    }
+
+    @Test
+    void partialChunkShouldBeVerifiedAgainstStoredChecksum() throws IOException {
+        FileChannel channel = open("0123x56789");
+        FakeServerCall call = new FakeServerCall();
+
+        DownloadPump.start(call, channel, bufferPool, loadTracker, 6, 10, checksums(4, "0123", "4567", "89"));
+
+        // диапазон начинается с середины испорченного чанка — сервер проверяет чанк целиком и обрывает поток
+        assertThat(call.chunks).isEmpty();
+        assertThat(call.completed).isFalse();
+        assertThat(Status.fromThrowable(call.error).getCode()).isEqualTo(Status.Code.DATA_LOSS);
+        assertThat(channel.isOpen()).isFalse();
+    }
+
+    @Test
+    void intactPartialChunkShouldCarryChecksumOfSentSlice() throws IOException {
+        FileChannel channel = open("0123456789");
+        FakeServerCall call = new FakeServerCall();
+
+        DownloadPump.start(call, channel, bufferPool, loadTracker, 6, 9, checksums(4, "0123", "4567", "89"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        call.chunks.forEach(chunk -> out.writeBytes(chunk.getData().toByteArray()));
+        assertThat(out.toString()).isEqualTo("678");
+        assertThat(call.chunks).extracting(DownloadChunk::getOffset).containsExactly(6L, 8L);
+        assertThat(call.chunks).allSatisfy(chunk -> assertThat(crc32c(chunk)).isEqualTo(chunk.getCrc32C()));
+        assertThat(call.completed).isTrue();
+    }
+
+    private static StoredChecksums checksums(int chunkSize, String... chunks) {
+        BitSet stored = new BitSet();
+        stored.set(0, chunks.length);
+        int[] crcs = new int[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            crcs[i] = ChunkChecksums.crc32c(List.of(ByteBuffer.wrap(chunks[i].getBytes(StandardCharsets.UTF_8))));
+        }
+        return StoredChecksums.builder().chunkSize(chunkSize).chunks(stored).crc32c(crcs).build();
+    }
+
+    private static int crc32c(DownloadChunk chunk) {
+        return ChunkChecksums.crc32c(chunk.getData().asReadOnlyByteBufferList());
+    }
+
+    private static class FakeServerCall extends ServerCallStreamObserver<DownloadChunk> {
+
+        private final List<DownloadChunk> chunks = new ArrayList<>();
+        private int readyBudget = Integer.MAX_VALUE;
+        private boolean completed;
+        private Throwable error;
+        private Runnable onReadyHandler;
+        private Runnable onCancelHandler;
+
+        @Override
+        public boolean isReady() {
+            return readyBudget > chunks.size();
+        }
+
+        @Override
+        public void onNext(DownloadChunk value) {
+            // как и транспорт, сериализуем сообщение сразу: буфер чанка переиспользуется
+            try {
+                chunks.add(DownloadChunk.parseFrom(value.toByteArray()));
+            } catch (InvalidProtocolBufferException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onCompleted() {
+            completed = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public void setOnCancelHandler(Runnable onCancelHandler) {
+            this.onCancelHandler = onCancelHandler;
+        }
+
+        @Override
+        public void setOnReadyHandler(Runnable onReadyHandler) {
+            this.onReadyHandler = onReadyHandler;
+        }
+
+        @Override
+        public void setCompression(String compression) {
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl() {
+        }
+
+        @Override
+        public void request(int count) {
+        }
+
+        @Override
+        public void setMessageCompression(boolean enable) {
+        }
+
+    }
+
+}
@@ -0,0 +1,197 @@
+package ru.eliseevtech.storage.datanode.grpc;
+
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.eliseevtech.storage.datanode.proto.DataNodeServiceGrpc;
+import ru.eliseevtech.storage.datanode.proto.UploadChunk;
+import ru.eliseevtech.storage.datanode.proto.UploadResponse;
+import ru.eliseevtech.storage.datanode.replication.ReplicaChannelPool;
+import ru.eliseevtech.storage.datanode.service.BufferPool;
+import ru.eliseevtech.storage.datanode.service.DatanodeProperties;
+import ru.eliseevtech.storage.datanode.service.FileStorageService;
+import ru.eliseevtech.storage.datanode.service.NodeLoadTracker;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UploadStreamObserverTest {
+
+    private static final int CHUNK_SIZE = 4;
+
+    @TempDir
+    Path tempDir;
+
+    private final NodeLoadTracker loadTracker = new NodeLoadTracker(new SimpleMeterRegistry());
+
+    private final ReplicaChannelPool replicaChannels = new ReplicaChannelPool();
+
+    private FileStorageService head;
+    private FileStorageService tail;
+    private Server tailServer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        head = storage("head");
+        tail = storage("tail");
+        BufferPool bufferPool = new BufferPool(new DatanodeProperties(), new SimpleMeterRegistry());
+        tailServer = ServerBuilder.forPort(0)
+                .addService(new DataNodeGrpcService(tail, bufferPool, loadTracker, replicaChannels))
+                .build()
+                .start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        replicaChannels.close();
+        tailServer.shutdownNow();
+    }
+
+    private FileStorageService storage(String name) throws IOException {
+        DatanodeProperties properties = new DatanodeProperties();
+        properties.getStorage().setPath(Files.createDirectories(tempDir.resolve(name)).toString());
+        return new FileStorageService(properties, new BufferPool(properties, new SimpleMeterRegistry()));
+    }
+
+    private static UploadChunk chunk(int index, String data) {
+        return UploadChunk.newBuilder()
+                .setUploadId("upload-1")
+                .setChunkIndex(index)
+                .setChunkSize(CHUNK_SIZE)
+                .setOffset((long) index * CHUNK_SIZE)
+                .setData(ByteString.copyFromUtf8(data))
+                .build();
+    }
+
+    @Test
+    void chunksShouldBeForwardedAlongPipeline() throws IOException {
+        RecordingObserver response = new RecordingObserver();
+        UploadStreamObserver observer = new UploadStreamObserver(head, loadTracker, replicaChannels, response);
+
+        // адрес следующей реплики приходит только в первом чанке
+        observer.onNext(chunk(0, "0123").toBuilder().addPipeline("localhost:" + tailServer.getPort()).build());
+        observer.onNext(chunk(1, "4567"));
+        observer.onNext(chunk(2, "89"));
+        observer.onCompleted();
+
+        assertThat(response.error).isNull();
+        assertThat(response.values).singleElement().satisfies(r -> {
+            assertThat(r.getSuccess()).isTrue();
+            assertThat(r.getUploadedBytes()).isEqualTo(10);
+        });
+        assertThat(head.getUploadStats("upload-1").getBytesWritten()).isEqualTo(10);
+        assertThat(tail.getUploadStats("upload-1").getBytesWritten()).isEqualTo(10);
+        assertThat(tail.getChunkSummary("upload-1").getCompositeCrc32c())
+                .isEqualTo(head.getChunkSummary("upload-1").getCompositeCrc32c());
+        assertThat(loadTracker.activeUploads()).isZero();
+    }
+
+    @Test
+    void unreachableReplicaShouldFailUpload() throws IOException {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        RecordingObserver response = new RecordingObserver();
+        UploadStreamObserver observer = new UploadStreamObserver(head, loadTracker, replicaChannels, response);
+
+        observer.onNext(chunk(0, "0123").toBuilder().addPipeline("localhost:" + closedPort).build());
+        observer.onNext(chunk(1, "4567"));
+
+        assertThat(response.values).isEmpty();
+        assertThat(response.error).isInstanceOf(StatusRuntimeException.class)
+                .hasMessageContaining("UNAVAILABLE");
+        // чанк не записан локально, пока его не принял следующий узел цепочки
+        assertThat(head.getUploadStats("upload-1").getBytesWritten()).isZero();
+        assertThat(loadTracker.activeUploads()).isZero();
+    }
+
+    @Test
+    void corruptedChunkShouldFailUploadWithDataLossBeforeForwarding() throws Exception {
+        Server headServer = ServerBuilder.forPort(0)
+                .addService(new DataNodeGrpcService(head,
+                        new BufferPool(new DatanodeProperties(), new SimpleMeterRegistry()),
+                        loadTracker, replicaChannels))
+                .build()
+                .start();
+        ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", headServer.getPort())
+                .usePlaintext()
+                .build();
+        try {
+            CompletableFuture<UploadResponse> result = new CompletableFuture<>();
+            StreamObserver<UploadChunk> upload = DataNodeServiceGrpc.newStub(channel)
+                    .uploadFileStream(new StreamObserver<>() {
+                        @Override
+                        public void onNext(UploadResponse value) {
+                            result.complete(value);
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                            result.completeExceptionally(t);
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                        }
+                    });
+
+            // сумма не совпадает с данными: чанк не должен уйти дальше по цепочке
+            upload.onNext(chunk(0, "0123").toBuilder()
+                    .addPipeline("localhost:" + tailServer.getPort())
+                    .setCrc32C(42)
+                    .build());
+
+            assertThatThrownBy(() -> result.get(10, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(StatusRuntimeException.class)
+                    .satisfies(e -> assertThat(Status.fromThrowable(e.getCause()).getCode())
+                            .isEqualTo(Status.Code.DATA_LOSS));
+            assertThat(head.getUploadStats("upload-1").getBytesWritten()).isZero();
+            assertThat(tail.getUploadStats("upload-1").getBytesWritten()).isZero();
+        } finally {
+            channel.shutdownNow();
+            headServer.shutdownNow();
+        }
+    }
+
+    private static class RecordingObserver implements StreamObserver<UploadResponse> {
+
+        final List<UploadResponse> values = new ArrayList<>();
+        Throwable error;
+
+        @Override
+        public void onNext(UploadResponse value) {
+            values.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+
+    }
+
+}
@@ -0,0 +1,103 @@
+package ru.eliseevtech.storage.datanode.replication;
+
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.eliseevtech.storage.datanode.grpc.DataNodeGrpcService;
+import ru.eliseevtech.storage.datanode.service.BufferPool;
+import ru.eliseevtech.storage.datanode.service.DatanodeProperties;
+import ru.eliseevtech.storage.datanode.service.FileStorageService;
+import ru.eliseevtech.storage.datanode.service.NodeLoadTracker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UploadReplicatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final BufferPool bufferPool = new BufferPool(new DatanodeProperties(), new SimpleMeterRegistry());
+
+    private final NodeLoadTracker loadTracker = new NodeLoadTracker(new SimpleMeterRegistry());
+
+    private final ReplicaChannelPool replicaChannels = new ReplicaChannelPool();
+
+    private FileStorageService source;
+    private FileStorageService target;
+    private Server targetServer;
+    private UploadReplicator replicator;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        source = storage("source");
+        target = storage("target");
+        targetServer = ServerBuilder.forPort(0)
+                .addService(new DataNodeGrpcService(target, bufferPool, loadTracker, replicaChannels))
+                .build()
+                .start();
+        replicator = new UploadReplicator(source, replicaChannels, bufferPool, loadTracker);
+    }
+
+    @AfterEach
+    void tearDown() {
+        replicaChannels.close();
+        targetServer.shutdownNow();
+        assertThat(bufferPool.outstanding()).isZero();
+        assertThat(loadTracker.activeDownloads()).isZero();
+    }
+
+    private FileStorageService storage(String name) throws IOException {
+        DatanodeProperties properties = new DatanodeProperties();
+        properties.getStorage().setPath(Files.createDirectories(tempDir.resolve(name)).toString());
+        return new FileStorageService(properties, bufferPool);
+    }
+
+    @Test
+    void uploadShouldBeCopiedWithSameChunkLayout() {
+        source.writeChunk("upload-1", 0, 4, "0123".getBytes());
+        source.writeChunk("upload-1", 1, 4, "4567".getBytes());
+        source.writeChunk("upload-1", 2, 4, "89".getBytes());
+        source.closeSession("upload-1");
+
+        long copied = replicator.replicate("upload-1", "localhost:" + targetServer.getPort(), 0);
+
+        assertThat(copied).isEqualTo(10);
+        assertThat(target.getUploadStats("upload-1").getBytesWritten()).isEqualTo(10);
+        // совпадение составной суммы означает, что реплика побайтно равна исходнику
+        assertThat(target.getChunkSummary("upload-1").getCompositeCrc32c())
+                .isNotNull()
+                .isEqualTo(source.getChunkSummary("upload-1").getCompositeCrc32c());
+    }
+
+    @Test
+    void copyShouldRespectRateLimit() {
+        for (int i = 0; i < 5; i++) {
+            source.writeChunk("upload-1", i, 4, "abcd".getBytes());
+        }
+        source.closeSession("upload-1");
+
+        long started = System.nanoTime();
+        replicator.replicate("upload-1", "localhost:" + targetServer.getPort(), 40);
+
+        // 20 байт при лимите 40 байт/с занимают не меньше полсекунды
+        assertThat(System.nanoTime() - started).isGreaterThanOrEqualTo(450_000_000L);
+        assertThat(target.getUploadStats("upload-1").getBytesWritten()).isEqualTo(20);
+    }
+
+    @Test
+    void missingUploadShouldFail() {
+        assertThatThrownBy(() -> replicator.replicate("missing", "localhost:" + targetServer.getPort(), 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("File not found");
+    }
+
+}
@@ -0,0 +1,72 @@
+package ru.eliseevtech.storage.datanode.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BufferPoolTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private BufferPool pool(int maxBufferSize, int maxPooledPerClass) {
+        DatanodeProperties properties = new DatanodeProperties();
+        properties.getBufferPool().setMaxBufferSize(maxBufferSize);
+        properties.getBufferPool().setMaxPooledPerClass(maxPooledPerClass);
+        return new BufferPool(properties, registry);
+    }
+
+    @Test
+    void acquireShouldRoundUpToSizeClassAndReuseReleasedBuffers() {
+        BufferPool pool = pool(1024 * 1024, 4);
+
+        ByteBuffer first = pool.acquire(5000);
+        assertThat(first.isDirect()).isTrue();
+        assertThat(first.capacity()).isEqualTo(8192);
+        assertThat(first.limit()).isEqualTo(5000);
+        assertThat(pool.outstanding()).isEqualTo(1);
+
+        pool.release(first);
+        ByteBuffer second = pool.acquire(8000);
+
+        assertThat(second).isSameAs(first);
+        assertThat(second.position()).isZero();
+        assertThat(second.limit()).isEqualTo(8000);
+        assertThat(pool.hitRate()).isEqualTo(0.5);
+
+        pool.release(second);
+        assertThat(pool.outstanding()).isZero();
+        assertThat(registry.get("datanode.buffer.pool.requests").tag("result", "hit").counter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("datanode.buffer.pool.pooled.bytes").gauge().value()).isEqualTo(8192);
+    }
+
+    @Test
+    void oversizedBuffersShouldNotBePooled() {
+        BufferPool pool = pool(64 * 1024, 4);
+
+        ByteBuffer large = pool.acquire(100 * 1024);
+        assertThat(large.capacity()).isEqualTo(100 * 1024);
+        pool.release(large);
+
+        assertThat(pool.acquire(100 * 1024)).isNotSameAs(large);
+        assertThat(registry.get("datanode.buffer.pool.pooled.bytes").gauge().value()).isZero();
+    }
+
+    @Test
+    void poolShouldKeepAtMostConfiguredBuffersPerClass() {
+        BufferPool pool = pool(64 * 1024, 1);
+
+        ByteBuffer a = pool.acquire(4096);
+        ByteBuffer b = pool.acquire(4096);
+        pool.release(a);
+        pool.release(b);
+
+        // второй буфер сверх лимита класса отбрасывается
+        assertThat(registry.get("datanode.buffer.pool.pooled.bytes").gauge().value()).isEqualTo(4096);
+        assertThat(pool.outstanding()).isZero();
+    }
+
+}
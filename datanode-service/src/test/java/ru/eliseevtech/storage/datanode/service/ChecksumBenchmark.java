@@ -0,0 +1,116 @@
+package ru.eliseevtech.storage.datanode.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChecksumBenchmark {
+
+    private static final int CHUNKS_PER_UPLOAD = 256;
+
+    @Param({"65536", "1048576"})
+    int chunkSize;
+
+    Path root;
+    FileStorageService service;
+    List<ByteBuffer> heapChunk;
+    List<ByteBuffer> directChunk;
+    String uploadId;
+    int chunkIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("datanode-crc-bench");
+        DatanodeProperties properties = new DatanodeProperties();
+        properties.getStorage().setPath(root.toString());
+        service = new FileStorageService(properties, new BufferPool(properties, new SimpleMeterRegistry()));
+        byte[] data = new byte[chunkSize];
+        ThreadLocalRandom.current().nextBytes(data);
+        heapChunk = List.of(ByteBuffer.wrap(data));
+        directChunk = List.of(ByteBuffer.allocateDirect(chunkSize).put(data).flip());
+    }
+
+    @Setup(Level.Iteration)
+    public void nextUpload() {
+        if (uploadId != null) {
+            service.deleteUpload(uploadId);
+        }
+        uploadId = UUID.randomUUID().toString();
+        chunkIndex = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        service.closeAllSessions();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public int crc32cHeap() {
+        return ChunkChecksums.crc32c(heapChunk);
+    }
+
+    @Benchmark
+    public int crc32cDirect() {
+        return ChunkChecksums.crc32c(directChunk);
+    }
+
+    @Benchmark
+    public boolean writeChunkWithChecksum() {
+        int index = nextChunk();
+        return service.writeChunk(uploadId, index, chunkSize, directChunk, ChunkChecksums.crc32c(directChunk));
+    }
+
+    @Benchmark
+    public void writeChunkAtWithoutChecksum() {
+        int index = nextChunk();
+        service.writeChunkAt(uploadId, index, (long) index * chunkSize, directChunk);
+    }
+
+    private int nextChunk() {
+        if (chunkIndex == CHUNKS_PER_UPLOAD) {
+            nextUpload();
+        }
+        return chunkIndex++;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ChecksumBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
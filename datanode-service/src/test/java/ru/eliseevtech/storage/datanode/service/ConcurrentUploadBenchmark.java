@@ -0,0 +1,116 @@
+package ru.eliseevtech.storage.datanode.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentUploadBenchmark {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int CHUNKS_PER_UPLOAD = 1024;
+
+    @State(Scope.Benchmark)
+    public static class Storage {
+
+        Path root;
+        FileStorageService service;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            root = Files.createTempDirectory("datanode-bench");
+            DatanodeProperties properties = new DatanodeProperties();
+            properties.getStorage().setPath(root.toString());
+            service = new FileStorageService(properties, new BufferPool(properties, new SimpleMeterRegistry()));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            service.closeAllSessions();
+            try (Stream<Path> paths = Files.walk(root)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class Upload {
+
+        final byte[] chunk = new byte[CHUNK_SIZE];
+        String uploadId;
+        int chunkIndex;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            ThreadLocalRandom.current().nextBytes(chunk);
+        }
+
+        @Setup(Level.Iteration)
+        public void nextUpload(Storage storage) {
+            if (uploadId != null) {
+                storage.service.deleteUpload(uploadId);
+            }
+            uploadId = UUID.randomUUID().toString();
+            chunkIndex = 0;
+        }
+
+        int nextChunk(Storage storage) {
+            if (chunkIndex == CHUNKS_PER_UPLOAD) {
+                nextUpload(storage);
+            }
+            return chunkIndex++;
+        }
+
+    }
+
+    @Benchmark
+    public void perUpload(Storage storage, Upload upload) {
+        int index = upload.nextChunk(storage);
+        storage.service.appendChunk(upload.uploadId, index, upload.chunk);
+    }
+
+    @Benchmark
+    public void globalLock(Storage storage, Upload upload) {
+        int index = upload.nextChunk(storage);
+        synchronized (storage.service) {
+            storage.service.appendChunk(upload.uploadId, index, upload.chunk);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 8, 64}) {
+            new Runner(new OptionsBuilder()
+                    .include(ConcurrentUploadBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+
+}
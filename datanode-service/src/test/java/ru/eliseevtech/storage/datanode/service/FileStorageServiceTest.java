@@ -1,22 +1,31 @@
 package ru.eliseevtech.storage.datanode.service;
 
+import com.google.protobuf.ByteString;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import ru.eliseevtech.storage.datanode.model.ChunkSummary;
 import ru.eliseevtech.storage.datanode.model.UploadStats;
-import ru.eliseevtech.storage.datanode.service.FileStorageService.ChunkConsumer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32C;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,11 +40,18 @@ class FileStorageServiceTest {
     @Mock
     private DatanodeProperties.StorageProperties storageProperties;
 
+    private final BufferPool bufferPool = new BufferPool(new DatanodeProperties(), new SimpleMeterRegistry());
+
     private FileStorageService fileStorageService;
 
     @BeforeEach
     void setUp() {
-        fileStorageService = new FileStorageService(properties);
+        fileStorageService = new FileStorageService(properties, bufferPool);
+    }
+
+    @AfterEach
+    void noLeakedBuffers() {
+        assertThat(bufferPool.outstanding()).isZero();
     }
 
     private void stubStoragePath() {
@@ -43,8 +59,14 @@ class FileStorageServiceTest {
         when(storageProperties.getPath()).thenReturn(tempDir.toString());
     }
 
+    private static int crc32c(String data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data.getBytes());
+        return (int) crc.getValue();
+    }
+
     @Test
-    void appendChunkShouldWriteDataAndUpdateStatsAndStreamChunksShouldReadSameData() throws IOException {
+    void appendChunkShouldWriteDataAndUpdateStats() throws IOException {
         stubStoragePath();
 
         String uploadId = "upload-1";
@@ -76,39 +98,6 @@ class FileStorageServiceTest {
         assertThat(stats.getChunksCount()).isEqualTo(expectedChunks);
         assertThat(stats.getBytesWritten()).isEqualTo(data.length);
 
-        // проверяем streamChunks
-        int chunkSizeForRead = 4;
-        List<Integer> indices = new ArrayList<>();
-        List<Boolean> lastFlags = new ArrayList<>();
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-
-        ChunkConsumer consumer = (chunkIndex, chunkData, isLast) -> {
-            indices.add(chunkIndex);
-            lastFlags.add(isLast);
-            try {
-                out.write(chunkData);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        };
-
-        fileStorageService.streamChunks(uploadId, chunkSizeForRead, consumer);
-
-        byte[] streamed = out.toByteArray();
-        assertThat(streamed).isEqualTo(data);
-
-        // индексы чанков должны идти по возрастанию с 0
-        assertThat(indices).isNotEmpty();
-        for (int i = 0; i < indices.size(); i++) {
-            assertThat(indices.get(i)).isEqualTo(i);
-        }
-
-        // флаг isLast должен быть true только у последнего чанка
-        assertThat(lastFlags).isNotEmpty();
-        for (int i = 0; i < lastFlags.size() - 1; i++) {
-            assertThat(lastFlags.get(i)).isFalse();
-        }
-        assertThat(lastFlags.get(lastFlags.size() - 1)).isTrue();
     }
 
     @Test
@@ -140,6 +129,283 @@ class FileStorageServiceTest {
         assertThat(after.getBytesWritten()).isZero();
     }
 
+    @Test
+    void writeChunkAtShouldPlaceOutOfOrderChunksByOffset() throws IOException {
+        stubStoragePath();
+
+        String uploadId = "upload-3";
+
+        // чанки приходят из разных потоков в произвольном порядке
+        fileStorageService.writeChunkAt(uploadId, 2, 8, "ij".getBytes());
+        fileStorageService.writeChunkAt(uploadId, 0, 0, "abcd".getBytes());
+        fileStorageService.writeChunkAt(uploadId, 1, 4, "efgh".getBytes());
+
+        byte[] fromDisk = Files.readAllBytes(tempDir.resolve(uploadId).resolve("file.bin"));
+        assertThat(fromDisk).isEqualTo("abcdefghij".getBytes());
+
+        UploadStats stats = fileStorageService.getUploadStats(uploadId);
+        assertThat(stats.getChunksCount()).isEqualTo(3);
+        assertThat(stats.getBytesWritten()).isEqualTo(10);
+    }
+
+    @Test
+    void retriedWriteChunkAtShouldNotBeCountedTwice() {
+        stubStoragePath();
+
+        String uploadId = "upload-3r";
+        fileStorageService.writeChunkAt(uploadId, 0, 0, "abcd".getBytes());
+        fileStorageService.writeChunkAt(uploadId, 1, 4, "efgh".getBytes());
+        // клиент повторил чанк после обрыва потока
+        fileStorageService.writeChunkAt(uploadId, 1, 4, "efgh".getBytes());
+
+        UploadStats stats = fileStorageService.getUploadStats(uploadId);
+        assertThat(stats.getChunksCount()).isEqualTo(2);
+        assertThat(stats.getBytesWritten()).isEqualTo(8);
+    }
+
+    @Test
+    void uploadSessionShouldKeepOneChannelUntilStreamCloses() throws IOException {
+        stubStoragePath();
+
+        String uploadId = "upload-5";
+        fileStorageService.openSession(uploadId);
+        fileStorageService.appendChunk(uploadId, 0, "abc".getBytes());
+        fileStorageService.appendChunk(uploadId, 1, "def".getBytes());
+        assertThat(fileStorageService.openSessions()).isEqualTo(1);
+
+        fileStorageService.closeSession(uploadId);
+        assertThat(fileStorageService.openSessions()).isZero();
+
+        // после закрытия сессии дозапись продолжается с конца файла
+        fileStorageService.appendChunk(uploadId, 2, "gh".getBytes());
+        byte[] fromDisk = Files.readAllBytes(tempDir.resolve(uploadId).resolve("file.bin"));
+        assertThat(fromDisk).isEqualTo("abcdefgh".getBytes());
+    }
+
+    @Test
+    void chunkWritesShouldBeIdempotentAndOutOfOrder() throws IOException {
+        stubStoragePath();
+
+        String uploadId = "upload-8";
+        assertThat(fileStorageService.writeChunk(uploadId, 2, 4, "ij".getBytes())).isTrue();
+        assertThat(fileStorageService.writeChunk(uploadId, 0, 4, "abcd".getBytes())).isTrue();
+        // повтор уже записанного чанка не меняет ни файл, ни статистику
+        assertThat(fileStorageService.writeChunk(uploadId, 0, 4, "XXXX".getBytes())).isFalse();
+
+        assertThat(fileStorageService.getChunkBitmap(uploadId).stream()).containsExactly(0, 2);
+        assertThat(fileStorageService.getUploadStats(uploadId).getBytesWritten()).isEqualTo(6);
+
+        // битовая карта переживает закрытие сессии и читается с диска
+        fileStorageService.closeAllSessions();
+        assertThat(fileStorageService.getChunkBitmap(uploadId).stream()).containsExactly(0, 2);
+
+        assertThat(fileStorageService.writeChunk(uploadId, 2, 4, "ij".getBytes())).isFalse();
+        assertThat(fileStorageService.writeChunk(uploadId, 1, 4, "efgh".getBytes())).isTrue();
+
+        byte[] fromDisk = Files.readAllBytes(tempDir.resolve(uploadId).resolve("file.bin"));
+        assertThat(new String(fromDisk)).isEqualTo("abcdefghij");
+        assertThat(fileStorageService.getChunkBitmap(uploadId).cardinality()).isEqualTo(3);
+    }
+
+    @Test
+    void chunkBitsShouldReachDiskOnlyAfterTheirDataIsForced() throws IOException {
+        stubStoragePath();
+        when(storageProperties.getBitmapPersistChunks()).thenReturn(2);
+
+        String uploadId = "upload-batch";
+        Path dir = tempDir.resolve(uploadId);
+        fileStorageService.writeChunk(uploadId, 0, 4, "abcd".getBytes());
+
+        // чанк уже учтён в памяти, но его бит не пишется на диск, пока данные не сброшены вместе с пачкой
+        assertThat(fileStorageService.getChunkBitmap(uploadId).stream()).containsExactly(0);
+        assertThat(ChunkBitmap.load(dir).orElseThrow().chunks().isEmpty()).isTrue();
+
+        fileStorageService.writeChunk(uploadId, 1, 4, "efgh".getBytes());
+        assertThat(ChunkBitmap.load(dir).orElseThrow().chunks().stream()).containsExactly(0, 1);
+
+        fileStorageService.writeChunk(uploadId, 2, 4, "ij".getBytes());
+        assertThat(ChunkBitmap.load(dir).orElseThrow().chunks().stream()).containsExactly(0, 1);
+
+        fileStorageService.closeSession(uploadId);
+        assertThat(ChunkBitmap.load(dir).orElseThrow().chunks().stream()).containsExactly(0, 1, 2);
+    }
+
+    @Test
+    void statsShouldSurviveRestart() {
+        stubStoragePath();
+
+        fileStorageService.writeChunk("indexed", 0, 4, "abcd".getBytes());
+        fileStorageService.writeChunk("indexed", 2, 4, "ij".getBytes());
+        fileStorageService.appendChunk("appended", 0, "abc".getBytes());
+        fileStorageService.appendChunk("appended", 1, "defg".getBytes());
+        fileStorageService.closeAllSessions();
+
+        // новый экземпляр сервиса восстанавливает статистику сканированием каталога
+        FileStorageService restarted = new FileStorageService(properties, bufferPool);
+        restarted.loadStats();
+
+        UploadStats indexed = restarted.getUploadStats("indexed");
+        assertThat(indexed.getChunksCount()).isEqualTo(3);
+        assertThat(indexed.getBytesWritten()).isEqualTo(6);
+        assertThat(restarted.getChunkBitmap("indexed").stream()).containsExactly(0, 2);
+
+        UploadStats appended = restarted.getUploadStats("appended");
+        assertThat(appended.getChunksCount()).isEqualTo(2);
+        assertThat(appended.getBytesWritten()).isEqualTo(7);
+    }
+
+    @Test
+    void compositeChecksumShouldBeReportedOnlyForCompleteUploads() {
+        stubStoragePath();
+
+        String uploadId = "upload-crc";
+        fileStorageService.writeChunk(uploadId, 0, 4, "abcd".getBytes());
+        fileStorageService.writeChunk(uploadId, 2, 4, "ij".getBytes());
+        assertThat(fileStorageService.getChunkSummary(uploadId).getCompositeCrc32c()).isNull();
+
+        fileStorageService.writeChunk(uploadId, 1, 4, "efgh".getBytes());
+        fileStorageService.closeAllSessions();
+
+        // составная сумма — CRC32C от сумм чанков в порядке индексов
+        ByteBuffer crcs = ByteBuffer.allocate(3 * Integer.BYTES)
+                .putInt(crc32c("abcd")).putInt(crc32c("efgh")).putInt(crc32c("ij")).flip();
+        CRC32C expected = new CRC32C();
+        expected.update(crcs);
+
+        ChunkSummary summary = fileStorageService.getChunkSummary(uploadId);
+        assertThat(summary.getChunkSize()).isEqualTo(4);
+        assertThat(summary.getCompositeCrc32c()).isEqualTo((int) expected.getValue());
+    }
+
+    @Test
+    void chunkSizeShouldNotChangeWithinUpload() {
+        stubStoragePath();
+
+        fileStorageService.writeChunk("upload-9", 0, 4, "abcd".getBytes());
+
+        assertThatThrownBy(() -> fileStorageService.writeChunk("upload-9", 1, 8, "efgh".getBytes()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("chunk size");
+    }
+
+    @Test
+    void segmentedChunksShouldBeGatheredIntoFile() throws IOException {
+        stubStoragePath();
+
+        String uploadId = "upload-7";
+        byte[] first = new byte[300];
+        byte[] second = new byte[500];
+        Arrays.fill(first, (byte) 1);
+        Arrays.fill(second, (byte) 2);
+        // конкатенация крупных ByteString даёт rope из нескольких сегментов
+        List<ByteBuffer> segments = ByteString.copyFrom(first).concat(ByteString.copyFrom(second))
+                .asReadOnlyByteBufferList();
+        assertThat(segments).hasSize(2);
+
+        fileStorageService.appendChunk(uploadId, 0, segments);
+        fileStorageService.writeChunkAt(uploadId, 1, 800,
+                ByteString.copyFrom(second).concat(ByteString.copyFrom(first)).asReadOnlyByteBufferList());
+
+        byte[] fromDisk = Files.readAllBytes(tempDir.resolve(uploadId).resolve("file.bin"));
+        assertThat(fromDisk).hasSize(1600);
+        assertThat(fromDisk[299]).isEqualTo((byte) 1);
+        assertThat(fromDisk[300]).isEqualTo((byte) 2);
+        assertThat(fromDisk[1299]).isEqualTo((byte) 2);
+        assertThat(fromDisk[1300]).isEqualTo((byte) 1);
+        assertThat(fileStorageService.getUploadStats(uploadId).getBytesWritten()).isEqualTo(1600);
+    }
+
+    @Test
+    void concurrentUploadsShouldNotInterfere() throws IOException {
+        stubStoragePath();
+
+        int uploads = 8;
+        int chunks = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(uploads);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int u = 0; u < uploads; u++) {
+                String uploadId = "parallel-" + u;
+                byte[] chunk = new byte[]{(byte) u, (byte) u, (byte) u};
+                futures.add(CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < chunks; i++) {
+                        fileStorageService.appendChunk(uploadId, i, chunk);
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int u = 0; u < uploads; u++) {
+            String uploadId = "parallel-" + u;
+            UploadStats stats = fileStorageService.getUploadStats(uploadId);
+            assertThat(stats.getChunksCount()).isEqualTo(chunks);
+            assertThat(stats.getBytesWritten()).isEqualTo(chunks * 3L);
+
+            byte[] fromDisk = Files.readAllBytes(tempDir.resolve(uploadId).resolve("file.bin"));
+            byte value = (byte) u;
+            assertThat(fromDisk).hasSize(chunks * 3).containsOnly(value);
+        }
+    }
+
+    @Test
+    void persistedStatsShouldMatchMemoryAfterConcurrentWrites() {
+        stubStoragePath();
+
+        String uploadId = "shared";
+        int chunks = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < chunks; i++) {
+                int index = i;
+                futures.add(CompletableFuture.runAsync(
+                        () -> fileStorageService.writeChunkAt(uploadId, index, index * 4L, "abcd".getBytes()), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdownNow();
+        }
+        fileStorageService.closeAllSessions();
+
+        // на диске должна остаться последняя версия статистики, а не запись, обогнанную соседним потоком
+        FileStorageService restarted = new FileStorageService(properties, bufferPool);
+        restarted.loadStats();
+
+        assertThat(restarted.getUploadStats(uploadId)).isEqualTo(fileStorageService.getUploadStats(uploadId));
+        assertThat(restarted.getUploadStats(uploadId).getBytesWritten()).isEqualTo(chunks * 4L);
+    }
+
+    @Test
+    void idleSessionsShouldBeClosed() {
+        stubStoragePath();
+
+        fileStorageService.appendChunk("upload-6", 0, "abc".getBytes());
+        assertThat(fileStorageService.openSessions()).isEqualTo(1);
+
+        // таймаут простоя в заглушке свойств равен нулю
+        fileStorageService.closeIdleSessions();
+
+        assertThat(fileStorageService.openSessions()).isZero();
+    }
+
+    @Test
+    void sessionWithOpenStreamShouldNotBeClosedAsIdle() {
+        stubStoragePath();
+
+        fileStorageService.openSession("upload-8");
+        fileStorageService.appendChunk("upload-8", 0, "abc".getBytes());
+
+        // поток загрузки ещё открыт, хотя данных давно не было
+        fileStorageService.closeIdleSessions();
+        assertThat(fileStorageService.openSessions()).isEqualTo(1);
+
+        fileStorageService.closeSession("upload-8");
+        assertThat(fileStorageService.openSessions()).isZero();
+    }
+
     @Test
     void getUploadStatsForUnknownUploadIdShouldReturnZeroValues() {
         String uploadId = "unknown";